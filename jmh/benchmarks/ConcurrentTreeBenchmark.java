@@ -0,0 +1,103 @@
+package benchmarks;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Multi-threaded lookups on one shared tree.
+ *
+ * impl=ConcurrentAVLTree is the optimistic-read tree; impl=SynchronizedAVLTree is an
+ * AVLTree behind Collections.synchronizedCollection, i.e. one global lock.
+ *
+ * search scales with the thread count given on the command line, e.g.
+ *     java -jar target/benchmarks.jar ConcurrentTreeBenchmark.search -t 1 -t 4 -t 8
+ * The readMostly group runs seven readers against one writer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class ConcurrentTreeBenchmark {
+    static final int NUM_PROBES = 1 << 16; // Must be a power of two
+
+    @Param({"ConcurrentAVLTree", "SynchronizedAVLTree"})
+    public String impl;
+
+    @Param({"1000000"})
+    public int treeSize;
+
+    private Collection<Integer> tree;
+    private Integer[] probes;
+    private Integer[] missing;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws ReflectiveOperationException {
+        Random rand = new Random(50);
+        if (impl.equals("SynchronizedAVLTree"))
+            tree = Collections.synchronizedCollection(
+                    (Collection<Integer>)Class.forName("AVLTree").getConstructor().newInstance());
+        else
+            tree = (Collection<Integer>)Class.forName(impl).getConstructor().newInstance();
+
+        for (int key : KeyDistribution.RANDOM.insertionOrder(treeSize, rand))
+            tree.add(key);
+
+        probes = new Integer[NUM_PROBES];
+        missing = new Integer[NUM_PROBES];
+        int[] keys = KeyDistribution.RANDOM.probes(treeSize, NUM_PROBES, rand);
+        for (int i = 0; i < NUM_PROBES; i++) {
+            probes[i] = keys[i];
+            missing[i] = keys[i] + 1; // Odd keys are not in the tree
+        }
+    }
+
+    /** Each thread walks the probes from its own starting point */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next = new Random().nextInt(NUM_PROBES);
+
+        int nextProbe() {
+            return next++ & (NUM_PROBES - 1);
+        }
+    }
+
+    @Benchmark
+    public boolean search(Cursor cursor) {
+        return tree.contains(probes[cursor.nextProbe()]);
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(7)
+    public boolean readers(Cursor cursor) {
+        return tree.contains(probes[cursor.nextProbe()]);
+    }
+
+    /** Add and remove keys that are not otherwise in the tree */
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(1)
+    public boolean writer(Cursor cursor) {
+        Integer key = missing[cursor.nextProbe()];
+        return tree.add(key) & tree.remove(key);
+    }
+}
@@ -0,0 +1,68 @@
+package benchmarks;
+
+import java.util.Random;
+
+/** How benchmark keys are ordered when they are inserted and when they are looked up.
+ * All trees hold the even keys 0, 2, ..., 2(n - 1), so any odd key is a guaranteed miss. */
+public enum KeyDistribution {
+    /** Keys inserted in random order, probes drawn uniformly */
+    RANDOM,
+    /** Keys inserted in ascending order, probes sweep the key range in order */
+    SORTED,
+    /** Keys inserted in random order, probes skewed towards a small hot set (Zipf, s = 0.99) */
+    ZIPFIAN;
+
+    static final double ZIPF_EXPONENT = 0.99;
+
+    /** Return the n tree keys in the order they should be inserted */
+    public int[] insertionOrder(int n, Random rand) {
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++)
+            keys[i] = 2 * i;
+        if (this != SORTED)
+            shuffle(keys, rand);
+        return keys;
+    }
+
+    /** Return count present keys to probe, drawn from a tree of n keys */
+    public int[] probes(int n, int count, Random rand) {
+        int[] probes = new int[count];
+        switch (this) {
+            case RANDOM:
+                for (int i = 0; i < count; i++)
+                    probes[i] = 2 * rand.nextInt(n);
+                break;
+            case SORTED:
+                for (int i = 0; i < count; i++)
+                    probes[i] = 2 * (int)((long)i * n / count);
+                break;
+            case ZIPFIAN:
+                // Rank r is hit with probability proportional to 1 / r^s.
+                // Ranks are mapped to shuffled keys so the hot set is spread over the tree.
+                double[] cdf = new double[n];
+                double sum = 0;
+                for (int r = 0; r < n; r++) {
+                    sum += 1.0 / Math.pow(r + 1, ZIPF_EXPONENT);
+                    cdf[r] = sum;
+                }
+                int[] keyOfRank = insertionOrder(n, rand);
+                for (int i = 0; i < count; i++) {
+                    int r = java.util.Arrays.binarySearch(cdf, rand.nextDouble() * sum);
+                    if (r < 0)
+                        r = -r - 1;
+                    probes[i] = keyOfRank[Math.min(r, n - 1)];
+                }
+                break;
+        }
+        return probes;
+    }
+
+    private static void shuffle(int[] a, Random rand) {
+        for (int i = a.length - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package benchmarks;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Lookups and updates with keys that are expensive to compare:  names that
+ * share a long prefix and are ordered case-insensitively, so each comparison
+ * walks the prefix a character at a time.  The score is dominated by the
+ * number of comparisons per level.
+ *
+ * ordering=NATURAL uses Key.compareTo through the trees' no-argument
+ * constructor; COMPARATOR passes the same order as a Comparator.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class StringKeyBenchmark {
+    static final int NUM_PROBES = 1 << 16; // Must be a power of two
+    static final String PREFIX = "tenant-000042/region-eu-west-1/warehouse-0007/sku-";
+
+    public enum Ordering { NATURAL, COMPARATOR }
+
+    @Param({"AVLTree", "AVLTreeWithFastIterator"})
+    public String impl;
+
+    @Param({"100000"})
+    public int treeSize;
+
+    @Param({"NATURAL", "COMPARATOR"})
+    public Ordering ordering;
+
+    /** A name ordered ignoring case */
+    public static final class Key implements Comparable<Key> {
+        static final Comparator<Key> ORDER =
+                Comparator.comparing((Key k) -> k.name, String.CASE_INSENSITIVE_ORDER);
+
+        final String name;
+
+        Key(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            return String.CASE_INSENSITIVE_ORDER.compare(name, other.name);
+        }
+    }
+
+    private Collection<Key> tree;
+    private Key[] probes;
+    private Key[] missProbes;
+    private int next;
+
+    /** Key i of the tree; odd i are never inserted */
+    static Key key(int i) {
+        return new Key(PREFIX + String.format("%010d", i));
+    }
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws ReflectiveOperationException {
+        Random rand = new Random(50);
+        Class<?> treeClass = Class.forName(impl);
+        if (ordering == Ordering.NATURAL)
+            tree = (Collection<Key>)treeClass.getConstructor().newInstance();
+        else
+            tree = (Collection<Key>)treeClass.getConstructor(Comparator.class).newInstance(Key.ORDER);
+
+        for (int k : KeyDistribution.RANDOM.insertionOrder(treeSize, rand))
+            tree.add(key(k));
+
+        int[] keys = KeyDistribution.RANDOM.probes(treeSize, NUM_PROBES, rand);
+        probes = new Key[NUM_PROBES];
+        missProbes = new Key[NUM_PROBES];
+        for (int i = 0; i < NUM_PROBES; i++) {
+            probes[i] = key(keys[i]);
+            missProbes[i] = key(keys[i] + 1);
+        }
+    }
+
+    private int nextProbe() {
+        return next++ & (NUM_PROBES - 1);
+    }
+
+    @Benchmark
+    public boolean search() {
+        return tree.contains(probes[nextProbe()]);
+    }
+
+    @Benchmark
+    public boolean searchMiss() {
+        return tree.contains(missProbes[nextProbe()]);
+    }
+
+    /** Insert and delete a key that is not otherwise in the tree */
+    @Benchmark
+    public boolean insertAndDelete() {
+        Key key = missProbes[nextProbe()];
+        return tree.add(key) & tree.remove(key);
+    }
+}
@@ -0,0 +1,151 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks insert, search, delete, iterator() and iterator(int) on the trees.
+ *
+ * The trees live in the default package, which JMH cannot generate code for, so they
+ * are created reflectively and driven through java.util.Collection (add, contains and
+ * remove delegate to insert, search and delete).  iterator(int) is reached through a
+ * MethodHandle bound to the tree.
+ *
+ * BST is not in the default impl list:  with SORTED keys it degenerates into a list and
+ * building it takes quadratic time.  Run it explicitly with -p impl=BST.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class TreeBenchmark {
+    static final int NUM_PROBES = 1 << 16; // Must be a power of two
+    static final int FIRST_FEW = 10; // Elements read from each new iterator
+
+    @Param({"AVLTree", "AVLTreeWithFastIterator"})
+    public String impl;
+
+    @Param({"1000", "100000", "1000000"})
+    public int treeSize;
+
+    @Param({"RANDOM", "SORTED", "ZIPFIAN"})
+    public KeyDistribution distribution;
+
+    private Class<?> treeClass;
+    private Integer[] insertionOrder;
+    private Integer[] probes;
+    private Integer[] missProbes;
+    private int[] indexProbes;
+    private Collection<Integer> tree;
+    private MethodHandle iteratorAt;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        Random rand = new Random(50);
+        treeClass = Class.forName(impl);
+
+        int[] order = distribution.insertionOrder(treeSize, rand);
+        insertionOrder = new Integer[treeSize];
+        for (int i = 0; i < treeSize; i++)
+            insertionOrder[i] = order[i];
+
+        int[] keys = distribution.probes(treeSize, NUM_PROBES, rand);
+        probes = new Integer[NUM_PROBES];
+        missProbes = new Integer[NUM_PROBES];
+        indexProbes = new int[NUM_PROBES];
+        for (int i = 0; i < NUM_PROBES; i++) {
+            probes[i] = keys[i];
+            missProbes[i] = keys[i] + 1; // Odd keys are never in the tree
+            indexProbes[i] = keys[i] / 2; // Key 2i is at index i
+        }
+
+        tree = build();
+        iteratorAt = MethodHandles.publicLookup()
+                .findVirtual(treeClass, "iterator", MethodType.methodType(Iterator.class, int.class))
+                .bindTo(tree);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Collection<Integer> newTree() throws ReflectiveOperationException {
+        return (Collection<Integer>)treeClass.getConstructor().newInstance();
+    }
+
+    private Collection<Integer> build() throws ReflectiveOperationException {
+        Collection<Integer> t = newTree();
+        for (Integer key : insertionOrder)
+            t.add(key);
+        return t;
+    }
+
+    private int nextProbe() {
+        return next++ & (NUM_PROBES - 1);
+    }
+
+    /** Build a new tree of treeSize elements; the score is for all treeSize inserts */
+    @Benchmark
+    public Collection<Integer> insert() throws ReflectiveOperationException {
+        return build();
+    }
+
+    @Benchmark
+    public boolean search() {
+        return tree.contains(probes[nextProbe()]);
+    }
+
+    @Benchmark
+    public boolean searchMiss() {
+        return tree.contains(missProbes[nextProbe()]);
+    }
+
+    /** Delete a present key and put it back, so the tree keeps its size */
+    @Benchmark
+    public boolean deleteAndReinsert() {
+        Integer key = probes[nextProbe()];
+        return tree.remove(key) & tree.add(key);
+    }
+
+    /** Open an iterator and read the first few elements */
+    @Benchmark
+    public void iteratorFirstFew(Blackhole bh) {
+        Iterator<Integer> iter = tree.iterator();
+        for (int i = 0; i < FIRST_FEW && iter.hasNext(); i++)
+            bh.consume(iter.next());
+    }
+
+    /** Iterate over the whole tree; the score is for all treeSize elements */
+    @Benchmark
+    public void iteratorFull(Blackhole bh) {
+        for (Iterator<Integer> iter = tree.iterator(); iter.hasNext(); )
+            bh.consume(iter.next());
+    }
+
+    /** Open iterator(index) at a probe's position and read the next few elements */
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void iteratorAtIndex(Blackhole bh) throws Throwable {
+        Iterator<Integer> iter = (Iterator<Integer>)(Iterator)iteratorAt.invokeExact(indexProbes[nextProbe()]);
+        for (int i = 0; i < FIRST_FEW && iter.hasNext(); i++)
+            bh.consume(iter.next());
+    }
+}
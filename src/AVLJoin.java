@@ -0,0 +1,356 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Join-based set operations on AVL trees (Blelloch, Ferizovic and Sun,
+ * "Just Join for Parallel Ordered Sets").
+ *
+ * Everything is built from join(l, k, r), which links two trees and a middle
+ * node whose keys are in order, in O(|height(l) - height(r)| + 1) time.
+ * split(t, k) cuts a tree into the keys below and above k using O(log n) joins.
+ * union, intersection and difference split the receiving tree t1 by the root
+ * of the other tree t2 and recurse on both halves, which costs
+ * O(m log(n/m + 1)) for trees of sizes m <= n.  The two halves are independent
+ * so large ones run in parallel on the common ForkJoinPool.
+ *
+ * t1's nodes are relinked in place and t2 is only read, so t2 may be shared
+ * with other readers.  Elements of t2 that end up in the result are copied
+ * into new nodes.  t2 may also be a sorted array, whose middle element stands
+ * in for the root:  a batch of k keys then shares the descents and rebalancing
+ * of t1 in O(k log(n/k + 1)) time instead of k separate updates.
+ *
+ * A subclass tells us how the receiving tree's nodes store their height.
+ * It must not touch shared state, since several threads call it. */
+abstract class AVLJoin<E> {
+    enum Operation { UNION, INTERSECTION, DIFFERENCE }
+
+    /** Only fork when t1 is at least this tall, i.e. has some hundreds of nodes */
+    private static final int PARALLEL_HEIGHT = 12;
+    /** Only fork for at least this many sorted elements */
+    private static final int MIN_PARALLEL_BATCH = 1 << 10;
+    /** Stop forking below this recursion depth, which allows about
+     * 16 tasks per core */
+    private static final int MAX_FORK_DEPTH =
+            35 - Integer.numberOfLeadingZeros(ForkJoinPool.getCommonPoolParallelism());
+
+    private final Operation operation;
+    /** The receiving tree's comparator, or null for natural ordering */
+    private final java.util.Comparator<? super E> comparator;
+    /** Nodes added by UNION, kept by INTERSECTION or removed by DIFFERENCE */
+    private final LongAdder count = new LongAdder();
+
+    AVLJoin(Operation operation, java.util.Comparator<? super E> comparator) {
+        this.operation = operation;
+        this.comparator = comparator;
+    }
+
+    /** Return the height of a node of the receiving tree, -1 for null */
+    abstract int height(BST.TreeNode<E> node);
+
+    /** Recompute the fields of a node of the receiving tree from its children */
+    abstract void update(BST.TreeNode<E> node);
+
+    /** Create a node for the receiving tree */
+    abstract BST.TreeNode<E> createNode(E e);
+
+    /** Return true if c can be the other operand of a tree ordered by
+     * comparator:  an AVL tree with the same ordering */
+    static boolean canJoin(java.util.Collection<?> c, java.util.Comparator<?> comparator) {
+        return (c instanceof AVLTree || c instanceof AVLTreeWithFastIterator)
+                && java.util.Objects.equals(((BST<?>)c).comparator, comparator);
+    }
+
+    /** Return true if a batch of k keys is large enough for apply to beat
+     * k single updates of a tree of size n.  Measured, a split and join costs
+     * a few times a single insert, and sharing pays off from about 1% of n */
+    static boolean isLargeBatch(int k, int n) {
+        return k > (n >>> 7);
+    }
+
+    /** Apply the operation to the tree t1 and the AVL tree t2 and return the root
+     * of the result */
+    BST.TreeNode<E> apply(BST.TreeNode<E> t1, BST.TreeNode<?> t2) {
+        if (height(t1) >= PARALLEL_HEIGHT)
+            return ForkJoinPool.commonPool().invoke(new Task(t1, t2, null, 0, 0, 0));
+        return apply(t1, t2, 0);
+    }
+
+    /** Apply the operation to the tree t1 and the sorted, distinct elements
+     * sorted[from] .. sorted[to - 1] and return the root of the result.
+     * The middle element plays the part of t2's root, so no tree is built for them */
+    BST.TreeNode<E> apply(BST.TreeNode<E> t1, Object[] sorted, int from, int to) {
+        if (height(t1) >= PARALLEL_HEIGHT && to - from >= MIN_PARALLEL_BATCH)
+            return ForkJoinPool.commonPool().invoke(new Task(t1, null, sorted, from, to, 0));
+        return apply(t1, sorted, from, to, 0);
+    }
+
+    /** Return the number of nodes added by UNION, kept by INTERSECTION
+     * or removed by DIFFERENCE */
+    int count() {
+        return count.intValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private BST.TreeNode<E> apply(BST.TreeNode<E> t1, BST.TreeNode<?> t2, int depth) {
+        if (t2 == null)
+            return (operation == Operation.INTERSECTION) ? null : t1;
+        if (t1 == null)
+            return (operation == Operation.UNION) ? copy(t2) : null;
+
+        E key = (E)t2.element;
+        boolean parallel = depth < MAX_FORK_DEPTH && height(t1) >= PARALLEL_HEIGHT;
+        Split<E> s = split(t1, key);
+        BST.TreeNode<E> pivot = pivot(s, key);
+
+        BST.TreeNode<E> left, right;
+        if (parallel) {
+            Task task = new Task(s.left, t2.left, null, 0, 0, depth + 1);
+            task.fork();
+            right = apply(s.right, t2.right, depth + 1);
+            left = task.join();
+        }
+        else {
+            left = apply(s.left, t2.left, depth + 1);
+            right = apply(s.right, t2.right, depth + 1);
+        }
+        return combine(left, pivot, right);
+    }
+
+    @SuppressWarnings("unchecked")
+    private BST.TreeNode<E> apply(BST.TreeNode<E> t1, Object[] sorted, int from, int to, int depth) {
+        if (from >= to)
+            return (operation == Operation.INTERSECTION) ? null : t1;
+        if (t1 == null)
+            return (operation == Operation.UNION) ? build(sorted, from, to) : null;
+
+        int mid = (from + to) >>> 1;
+        E key = (E)sorted[mid];
+        boolean parallel = depth < MAX_FORK_DEPTH && height(t1) >= PARALLEL_HEIGHT
+                && to - from >= MIN_PARALLEL_BATCH;
+        Split<E> s = split(t1, key);
+        BST.TreeNode<E> pivot = pivot(s, key);
+
+        BST.TreeNode<E> left, right;
+        if (parallel) {
+            Task task = new Task(s.left, null, sorted, from, mid, depth + 1);
+            task.fork();
+            right = apply(s.right, sorted, mid + 1, to, depth + 1);
+            left = task.join();
+        }
+        else {
+            left = apply(s.left, sorted, from, mid, depth + 1);
+            right = apply(s.right, sorted, mid + 1, to, depth + 1);
+        }
+        return combine(left, pivot, right);
+    }
+
+    /** Return the node that goes between the results for the two halves of a
+     * split by key, or null if key is not in the result */
+    private BST.TreeNode<E> pivot(Split<E> s, E key) {
+        if (operation == Operation.UNION) {
+            if (s.node != null)
+                return s.node;
+            count.increment();
+            return createNode(key);
+        }
+        if (s.node == null)
+            return null;
+        count.increment();
+        return (operation == Operation.INTERSECTION) ? s.node : null;
+    }
+
+    private BST.TreeNode<E> combine(BST.TreeNode<E> left, BST.TreeNode<E> pivot, BST.TreeNode<E> right) {
+        return (pivot == null) ? join2(left, right) : join(left, pivot, right);
+    }
+
+    /** Applies the operation to one pair of subtrees, the second given either as
+     * a tree t2 or as a range of a sorted array */
+    private class Task extends RecursiveTask<BST.TreeNode<E>> {
+        private static final long serialVersionUID = 1L;
+
+        private final BST.TreeNode<E> t1;
+        private final BST.TreeNode<?> t2;
+        private final Object[] sorted;
+        private final int from, to;
+        private final int depth;
+
+        Task(BST.TreeNode<E> t1, BST.TreeNode<?> t2, Object[] sorted, int from, int to, int depth) {
+            this.t1 = t1;
+            this.t2 = t2;
+            this.sorted = sorted;
+            this.from = from;
+            this.to = to;
+            this.depth = depth;
+        }
+
+        @Override
+        protected BST.TreeNode<E> compute() {
+            return (sorted == null) ? apply(t1, t2, depth) : apply(t1, sorted, from, to, depth);
+        }
+    }
+
+    /** Copy the subtree t into new nodes of the receiving tree */
+    @SuppressWarnings("unchecked")
+    private BST.TreeNode<E> copy(BST.TreeNode<?> t) {
+        if (t == null)
+            return null;
+        BST.TreeNode<E> node = createNode((E)t.element);
+        node.left = copy(t.left);
+        node.right = copy(t.right);
+        update(node);
+        count.increment();
+        return node;
+    }
+
+    /** Build a balanced tree of new nodes from sorted[from] .. sorted[to - 1] */
+    @SuppressWarnings("unchecked")
+    private BST.TreeNode<E> build(Object[] sorted, int from, int to) {
+        if (from >= to)
+            return null;
+        int mid = (from + to) >>> 1;
+        BST.TreeNode<E> node = createNode((E)sorted[mid]);
+        node.left = build(sorted, from, mid);
+        node.right = build(sorted, mid + 1, to);
+        update(node);
+        count.increment();
+        return node;
+    }
+
+    /** The result of a split:  the trees below and above a key,
+     * and the node holding the key itself if there was one */
+    private static final class Split<E> {
+        BST.TreeNode<E> left, node, right;
+    }
+
+    /** Split t by key.  The node holding key, if any, is detached */
+    private Split<E> split(BST.TreeNode<E> t, E key) {
+        if (t == null)
+            return new Split<>();
+        int cmp = compare(key, t.element);
+        Split<E> s;
+        if (cmp < 0) {
+            s = split(t.left, key);
+            s.right = join(s.right, t, t.right);
+        }
+        else if (cmp > 0) {
+            s = split(t.right, key);
+            s.left = join(t.left, t, s.left);
+        }
+        else {
+            s = new Split<>();
+            s.left = t.left;
+            s.right = t.right;
+            t.left = t.right = null;
+            s.node = t;
+        }
+        return s;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(E a, E b) {
+        return (comparator == null) ? ((Comparable<? super E>)a).compareTo(b)
+                : comparator.compare(a, b);
+    }
+
+    /** Detach the rightmost node of the nonempty tree t.
+     * The rest of the tree is returned in left */
+    private Split<E> splitLast(BST.TreeNode<E> t) {
+        if (t.right == null) {
+            Split<E> s = new Split<>();
+            s.left = t.left;
+            t.left = null;
+            s.node = t;
+            return s;
+        }
+        Split<E> s = splitLast(t.right);
+        s.left = join(t.left, t, s.left);
+        return s;
+    }
+
+    /** Join two trees whose keys are in order */
+    private BST.TreeNode<E> join2(BST.TreeNode<E> left, BST.TreeNode<E> right) {
+        if (left == null)
+            return right;
+        if (right == null)
+            return left;
+        Split<E> s = splitLast(left);
+        return join(s.left, s.node, right);
+    }
+
+    /** Join l, the node k and r, whose keys are in order, into one AVL tree */
+    private BST.TreeNode<E> join(BST.TreeNode<E> l, BST.TreeNode<E> k, BST.TreeNode<E> r) {
+        if (height(l) > height(r) + 1)
+            return joinRight(l, k, r);
+        if (height(r) > height(l) + 1)
+            return joinLeft(l, k, r);
+        k.left = l;
+        k.right = r;
+        update(k);
+        return k;
+    }
+
+    /** Join when l is taller:  descend l's right spine to a subtree as tall
+     * as r, link it there and rebalance on the way back */
+    private BST.TreeNode<E> joinRight(BST.TreeNode<E> l, BST.TreeNode<E> k, BST.TreeNode<E> r) {
+        BST.TreeNode<E> c = l.right;
+        if (height(c) <= height(r) + 1) {
+            k.left = c;
+            k.right = r;
+            update(k);
+            if (height(k) <= height(l.left) + 1) {
+                l.right = k;
+                update(l);
+                return l;
+            }
+            l.right = rotateRight(k);
+            update(l);
+            return rotateLeft(l);
+        }
+        l.right = joinRight(c, k, r);
+        update(l);
+        if (height(l.right) <= height(l.left) + 1)
+            return l;
+        return rotateLeft(l);
+    }
+
+    /** Join when r is taller, the mirror image of joinRight */
+    private BST.TreeNode<E> joinLeft(BST.TreeNode<E> l, BST.TreeNode<E> k, BST.TreeNode<E> r) {
+        BST.TreeNode<E> c = r.left;
+        if (height(c) <= height(l) + 1) {
+            k.left = l;
+            k.right = c;
+            update(k);
+            if (height(k) <= height(r.right) + 1) {
+                r.left = k;
+                update(r);
+                return r;
+            }
+            r.left = rotateLeft(k);
+            update(r);
+            return rotateRight(r);
+        }
+        r.left = joinLeft(l, k, c);
+        update(r);
+        if (height(r.left) <= height(r.right) + 1)
+            return r;
+        return rotateRight(r);
+    }
+
+    private BST.TreeNode<E> rotateLeft(BST.TreeNode<E> x) {
+        BST.TreeNode<E> y = x.right;
+        x.right = y.left;
+        update(x);
+        y.left = x;
+        update(y);
+        return y;
+    }
+
+    private BST.TreeNode<E> rotateRight(BST.TreeNode<E> x) {
+        BST.TreeNode<E> y = x.left;
+        x.left = y.right;
+        update(x);
+        y.right = x;
+        update(y);
+        return y;
+    }
+}
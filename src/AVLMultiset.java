@@ -0,0 +1,310 @@
+import java.util.NoSuchElementException;
+
+/** A sorted multiset:  a collection that may hold an element more than once.
+ * Each distinct element is one node of an AVLTreeWithFastIterator that keeps
+ * the element's count, so memory grows with the number of distinct elements,
+ * not with the number of occurrences.  Every node also keeps the total count
+ * of its subtree, so rank and select account for multiplicity in O(log n).
+ *
+ * size() and iteration count every occurrence:  an element added three times
+ * is returned three times in a row by the iterator. */
+public class AVLMultiset<E> extends java.util.AbstractCollection<E> {
+    private final CountTree<E> tree;
+
+    /** Create an empty multiset ordered by the natural ordering of its elements */
+    public AVLMultiset() {
+        tree = new CountTree<>(null);
+    }
+
+    /** Create an empty multiset ordered by the specified comparator */
+    public AVLMultiset(java.util.Comparator<? super E> comparator) {
+        tree = new CountTree<>(comparator);
+    }
+
+    /** Return the number of occurrences of e */
+    public int count(Object e) {
+        CountedNode<E> node = tree.find(e);
+        return (node == null) ? 0 : node.count;
+    }
+
+    /** Add n occurrences of e and return the number there were before */
+    public int add(E e, int n) {
+        if (n < 0)
+            throw new IllegalArgumentException("n < 0: " + n);
+        CountedNode<E> node = tree.find(e);
+        if (node == null) {
+            if (n > 0)
+                tree.insert(e, n);
+            return 0;
+        }
+        int oldCount = node.count;
+        if (n == 0)
+            return oldCount;
+        if (n > Integer.MAX_VALUE - oldCount)
+            throw new IllegalArgumentException("Too many occurrences: " + oldCount + " + " + n);
+        node.count += n;
+        tree.addToTotals(e, n);
+        return oldCount;
+    }
+
+    /** Remove up to n occurrences of e and return the number there were before.
+     * The node goes when the last occurrence does */
+    public int remove(Object e, int n) {
+        if (n < 0)
+            throw new IllegalArgumentException("n < 0: " + n);
+        CountedNode<E> node = tree.find(e);
+        if (node == null || n == 0)
+            return (node == null) ? 0 : node.count;
+        int oldCount = node.count;
+        if (n >= oldCount) {
+            tree.delete(node.element);
+        }
+        else {
+            node.count -= n;
+            tree.addToTotals(e, -n);
+        }
+        return oldCount;
+    }
+
+    @Override /** Add one occurrence of e */
+    public boolean add(E e) {
+        add(e, 1);
+        return true;
+    }
+
+    @Override /** Remove one occurrence of o, if there is one */
+    public boolean remove(Object o) {
+        return remove(o, 1) > 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return tree.find(o) != null;
+    }
+
+    @Override /** Return the number of occurrences of all elements,
+     * or Integer.MAX_VALUE if there are more */
+    public int size() {
+        return (int)Math.min(totalCount(), Integer.MAX_VALUE);
+    }
+
+    /** Return the number of occurrences of all elements */
+    public long totalCount() {
+        return totalOf(tree.getRoot());
+    }
+
+    /** Return the number of distinct elements */
+    public int distinctCount() {
+        return tree.getSize();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return tree.getSize() == 0;
+    }
+
+    @Override
+    public void clear() {
+        tree.clear();
+    }
+
+    /** Return the comparator ordering the elements, or null for their natural ordering */
+    public java.util.Comparator<? super E> comparator() {
+        return tree.comparator;
+    }
+
+    /** Return the number of occurrences of elements less than e.
+     * If e is in the multiset this is the index of its first occurrence */
+    public long rank(E e) {
+        long rank = 0;
+        BST.TreeNode<E> current = tree.getRoot();
+        while (current != null) {
+            int cmp = tree.compare(e, current.element);
+            if (cmp < 0) {
+                current = current.left;
+            }
+            else {
+                rank += totalOf(current.left);
+                if (cmp == 0)
+                    break;
+                rank += ((CountedNode<E>)current).count; // current is less than e too
+                current = current.right;
+            }
+        }
+        return rank;
+    }
+
+    /** Return the element at the specified position, counting each occurrence.
+     * select(rank(e)) is e for every e in the multiset */
+    public E select(long index) {
+        if (index < 0 || index >= totalCount())
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + totalCount());
+
+        BST.TreeNode<E> current = tree.getRoot();
+        while (true) {
+            long leftTotal = totalOf(current.left);
+            int count = ((CountedNode<E>)current).count;
+            if (index < leftTotal) {
+                current = current.left;
+            }
+            else if (index >= leftTotal + count) {
+                index -= leftTotal + count; // Skip the left subtree and current
+                current = current.right;
+            }
+            else
+                return current.element;
+        }
+    }
+
+    /** Return the total count of a subtree */
+    private static long totalOf(BST.TreeNode<?> node) {
+        return (node == null) ? 0 : ((CountedNode<?>)node).total;
+    }
+
+    @Override /** Obtain an iterator that returns each element as many times as it occurs */
+    public java.util.Iterator<E> iterator() {
+        return new CountingIterator();
+    }
+
+    /** Walks the nodes in order with an explicit stack, repeating each element.
+     * It fails fast if the multiset is changed other than through its own remove */
+    private class CountingIterator implements java.util.Iterator<E> {
+        private final java.util.ArrayDeque<BST.TreeNode<E>> stack = new java.util.ArrayDeque<>();
+        private E element; // The element being repeated
+        private int remaining; // Occurrences of element still to be returned
+        private boolean canRemove;
+        private int expectedModCount = tree.modCount;
+
+        CountingIterator() {
+            pushLeft(tree.getRoot());
+        }
+
+        private void pushLeft(BST.TreeNode<E> current) {
+            for (; current != null; current = current.left)
+                stack.push(current);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0 || !stack.isEmpty();
+        }
+
+        @Override
+        public E next() {
+            if (tree.modCount != expectedModCount)
+                throw new java.util.ConcurrentModificationException();
+            if (remaining == 0) {
+                if (stack.isEmpty())
+                    throw new NoSuchElementException();
+                BST.TreeNode<E> node = stack.pop();
+                pushLeft(node.right);
+                element = node.element;
+                remaining = ((CountedNode<E>)node).count;
+            }
+            remaining--;
+            canRemove = true;
+            return element;
+        }
+
+        @Override /** Remove one occurrence of the element last returned */
+        public void remove() {
+            if (!canRemove)
+                throw new IllegalStateException();
+            if (tree.modCount != expectedModCount)
+                throw new java.util.ConcurrentModificationException();
+            canRemove = false;
+            boolean countOnly = AVLMultiset.this.remove(element, 1) > 1;
+            expectedModCount = tree.modCount;
+            if (countOnly)
+                return; // The node and our stack are unchanged
+
+            // The node is gone and rotations may have moved the nodes on our
+            // stack, so find the first node after element again
+            stack.clear();
+            BST.TreeNode<E> current = tree.getRoot();
+            while (current != null) {
+                if (tree.compare(element, current.element) < 0) {
+                    stack.push(current);
+                    current = current.left;
+                }
+                else
+                    current = current.right;
+            }
+        }
+    }
+
+    /** The tree of distinct elements, whose nodes carry the counts */
+    private static final class CountTree<E> extends AVLTreeWithFastIterator<E> {
+        CountTree(java.util.Comparator<? super E> comparator) {
+            super(comparator);
+        }
+
+        /** Insert e, which is not in the tree, with count occurrences */
+        void insert(E e, int count) {
+            // The new node is empty while insertNode rebalances,
+            // so its count still has to reach the totals above it
+            ((CountedNode<E>)insertNode(e)).count = count;
+            addToTotals(e, count);
+        }
+
+        @Override /** A node starts with no occurrences; insert(e, count) sets them */
+        protected CountedNode<E> createNewNode(E e) {
+            return new CountedNode<>(e, 0);
+        }
+
+        @Override /** Keep the subtree's total count along with its height and size */
+        protected void updateHeightAndSize(AVLTreeNode<E> node) {
+            super.updateHeightAndSize(node);
+            CountedNode<E> counted = (CountedNode<E>)node;
+            counted.total = counted.count + totalOf(node.left) + totalOf(node.right);
+        }
+
+        @Override /** The count moves with its element */
+        protected void copyElement(TreeNode<E> from, TreeNode<E> to) {
+            super.copyElement(from, to);
+            ((CountedNode<E>)to).count = ((CountedNode<E>)from).count;
+        }
+
+        /** Return the node holding e, or null */
+        CountedNode<E> find(Object e) {
+            TreeNode<E> current = root;
+            while (current != null) {
+                int cmp = compare(e, current.element);
+                if (cmp < 0)
+                    current = current.left;
+                else if (cmp > 0)
+                    current = current.right;
+                else
+                    return (CountedNode<E>)current;
+            }
+            return null;
+        }
+
+        /** Add delta to the totals on the path from the root to e, which is in the tree.
+         * The multiset's size changes, so iterators over it fail fast */
+        void addToTotals(Object e, long delta) {
+            modCount++;
+            TreeNode<E> current = root;
+            while (current != null) {
+                ((CountedNode<E>)current).total += delta;
+                int cmp = compare(e, current.element);
+                if (cmp == 0)
+                    break;
+                current = (cmp < 0) ? current.left : current.right;
+            }
+        }
+    }
+
+    /** An AVL node with the number of occurrences of its element and the
+     * total of those numbers over its subtree */
+    private static final class CountedNode<E> extends AVLTreeWithFastIterator.AVLTreeNode<E> {
+        int count;
+        long total;
+
+        CountedNode(E e, int count) {
+            super(e);
+            this.count = count;
+            this.total = count;
+        }
+    }
+}
@@ -1,7 +1,17 @@
-public class AVLTree<E extends Comparable<E>> extends BST<E> {
+public class AVLTree<E> extends BST<E>
+        implements java.util.NavigableSet<E> {
+    /** An AVL tree of height h has at least fib(h + 3) - 1 nodes,
+     * so no tree with fewer than 2^31 nodes is taller than this */
+    private static final int MAX_HEIGHT = 48;
+    /** Nodes on the path of the current insert or delete, reused between calls */
+    private AVLTreeNode<E>[] ancestors;
     /** Create an empty AVL tree */
     public AVLTree() {
     }
+    /** Create an empty AVL tree ordered by the specified comparator */
+    public AVLTree(java.util.Comparator<? super E> comparator) {
+        super(comparator);
+    }
     /** Create an AVL tree from an array of objects */
     public AVLTree(E[] objects) {
         super(objects);
@@ -11,14 +21,57 @@ public class AVLTree<E extends Comparable<E>> extends BST<E> {
         return new AVLTreeNode<E>(e);
     }
     @Override /** Insert an element and rebalance if necessary */
-    public boolean insert(E e) {
-        boolean successful = super.insert(e);
-        if (!successful)
-            return false; // e is already in the tree
-        else {
-            balancePath(e); // Balance from e to the root if necessary
+    protected TreeNode<E> insertNode(E e) {
+        if (root == null) {
+            compare(e, e); // Type and null check, as TreeMap does
+            root = createNewNode(e); // Create a new root
+            if (TreeMetrics.ENABLED)
+                TreeMetrics.recordInsert(0);
+            size++;
+            modCount++;
+            return root;
         }
-        return true; // e is inserted
+        // Locate the parent node, remembering the path for rebalancing
+        AVLTreeNode<E>[] path = ancestors();
+        int depth = 0;
+        TreeNode<E> current = root;
+        int cmp = 0;
+        while (current != null) {
+            cmp = compare(e, current.element);
+            if (cmp == 0) {
+                if (TreeMetrics.ENABLED)
+                    TreeMetrics.recordInsert(depth + 1);
+                return null; // Duplicate node not inserted
+            }
+            path[depth++] = (AVLTreeNode<E>)current;
+            current = (cmp < 0) ? current.left : current.right;
+        }
+        if (TreeMetrics.ENABLED)
+            TreeMetrics.recordInsert(depth);
+        // Create the new node and attach it to the parent node
+        TreeNode<E> node = createNewNode(e);
+        if (cmp < 0)
+            path[depth - 1].left = node;
+        else
+            path[depth - 1].right = node;
+        size++;
+        modCount++;
+        balancePath(path, depth); // Balance from e to the root if necessary
+        return node; // e is inserted
+    }
+    /** Return the ancestor stack:  MAX_HEIGHT slots, enough for any root-to-leaf
+     * path, which insert and delete fill on the way down and balancePath empties
+     * on the way up, stopping where a subtree's height is unchanged.
+     * It is created lazily because BST(E[]) inserts before our fields are initialized */
+    @SuppressWarnings("unchecked")
+    private AVLTreeNode<E>[] ancestors() {
+        if (ancestors == null)
+            ancestors = (AVLTreeNode<E>[])new AVLTreeNode<?>[MAX_HEIGHT];
+        return ancestors;
+    }
+    @Override /** Bulk-built nodes need their heights */
+    protected void updateBuiltNode(TreeNode<E> node) {
+        updateHeight((AVLTreeNode<E>)node);
     }
     /** Update the height of a specified node */
     private void updateHeight(AVLTreeNode<E> node) {
@@ -33,34 +86,45 @@ public class AVLTree<E extends Comparable<E>> extends BST<E> {
                     Math.max(((AVLTreeNode<E>)(node.right)).height,
                             ((AVLTreeNode<E>)(node.left)).height);
     }
-    /** Balance the nodes in the path from the specified
-     * node to the root if necessary
+    /** Balance the nodes path[depth - 1] up to path[0] if necessary.
+     * Stops as soon as a subtree ends up as tall as it was before the change,
+     * because nothing above it can have changed either
      */
-    private void balancePath(E e) {
-        java.util.ArrayList<TreeNode<E>> path = path(e);
-        for (int i = path.size() - 1; i >= 0; i--) {
-            AVLTreeNode<E> A = (AVLTreeNode<E>)(path.get(i));
+    private void balancePath(AVLTreeNode<E>[] path, int depth) {
+        for (int i = depth - 1; i >= 0; i--) {
+            AVLTreeNode<E> A = path[i];
+            path[i] = null; // Do not keep deleted or moved nodes reachable
+            int oldHeight = A.height;
             updateHeight(A);
-            AVLTreeNode<E> parentOfA = (A == root) ? null :
-                    (AVLTreeNode<E>)(path.get(i - 1));
+            AVLTreeNode<E> parentOfA = (i == 0) ? null : path[i - 1];
+            TreeNode<E> subtreeRoot = A;
             switch (balanceFactor(A)) {
                 case -2:
                     if (balanceFactor((AVLTreeNode<E>)A.left) <= 0) {
-                        balanceLL(A, parentOfA); // Perform LL rotation
+                        subtreeRoot = balanceLL(A, parentOfA); // Perform LL rotation
                     }
                     else {
-                        balanceLR(A, parentOfA); // Perform LR rotation
+                        subtreeRoot = balanceLR(A, parentOfA); // Perform LR rotation
                     }
                     break;
                 case +2:
                     if (balanceFactor((AVLTreeNode<E>)A.right) >= 0) {
-                        balanceRR(A, parentOfA); // Perform RR rotation
+                        subtreeRoot = balanceRR(A, parentOfA); // Perform RR rotation
                     }
                     else {
-                        balanceRL(A, parentOfA); // Perform RL rotation
+                        subtreeRoot = balanceRL(A, parentOfA); // Perform RL rotation
                     }
             }
+            if (((AVLTreeNode<E>)subtreeRoot).height == oldHeight) {
+                for (int j = i - 1; j >= 0; j--)
+                    path[j] = null;
+                if (TreeMetrics.ENABLED)
+                    TreeMetrics.recordBalancePath(depth - i);
+                return; // Heights above are unchanged
+            }
         }
+        if (TreeMetrics.ENABLED)
+            TreeMetrics.recordBalancePath(depth);
     }
     /** Return the balance factor of the node */
     private int balanceFactor(AVLTreeNode<E> node) {
@@ -72,8 +136,10 @@ public class AVLTree<E extends Comparable<E>> extends BST<E> {
             return ((AVLTreeNode<E>)node.right).height -
                     ((AVLTreeNode<E>)node.left).height;
     }
-    /** Balance LL (see Figure 27.1) */
-    private void balanceLL(TreeNode<E> A, TreeNode<E> parentOfA) {
+    /** Balance LL (see Figure 27.1) and return the new subtree root */
+    private TreeNode<E> balanceLL(TreeNode<E> A, TreeNode<E> parentOfA) {
+        if (TreeMetrics.ENABLED)
+            TreeMetrics.recordRotation(TreeMetrics.Rotation.LL);
         TreeNode<E> B = A.left; // A is left-heavy and B is left-heavy
         if (A == root) {
             root = B;
@@ -90,9 +156,12 @@ public class AVLTree<E extends Comparable<E>> extends BST<E> {
         B.right = A; // Make A the left child of B
         updateHeight((AVLTreeNode<E>)A);
         updateHeight((AVLTreeNode<E>)B);
+        return B;
     }
-    /** Balance LR (see Figure 27.1c) */
-    private void balanceLR(TreeNode<E> A, TreeNode<E> parentOfA) {
+    /** Balance LR (see Figure 27.1c) and return the new subtree root */
+    private TreeNode<E> balanceLR(TreeNode<E> A, TreeNode<E> parentOfA) {
+        if (TreeMetrics.ENABLED)
+            TreeMetrics.recordRotation(TreeMetrics.Rotation.LR);
         TreeNode<E> B = A.left; // A is left-heavy
         TreeNode<E> C = B.right; // B is right-heavy
         if (A == root) {
@@ -114,9 +183,12 @@ public class AVLTree<E extends Comparable<E>> extends BST<E> {
         updateHeight((AVLTreeNode<E>)A);
         updateHeight((AVLTreeNode<E>)B);
         updateHeight((AVLTreeNode<E>)C);
+        return C;
     }
-    /** Balance RR (see Figure 27.1b) */
-    private void balanceRR(TreeNode<E> A, TreeNode<E> parentOfA) {
+    /** Balance RR (see Figure 27.1b) and return the new subtree root */
+    private TreeNode<E> balanceRR(TreeNode<E> A, TreeNode<E> parentOfA) {
+        if (TreeMetrics.ENABLED)
+            TreeMetrics.recordRotation(TreeMetrics.Rotation.RR);
         TreeNode<E> B = A.right; // A is right-heavy and B is right-heavy
         if (A == root) {
             root = B;
@@ -133,9 +205,12 @@ public class AVLTree<E extends Comparable<E>> extends BST<E> {
         B.left = A;
         updateHeight((AVLTreeNode<E>)A);
         updateHeight((AVLTreeNode<E>)B);
+        return B;
     }
-    /** Balance RL (see Figure 27.1d) */
-    private void balanceRL(TreeNode<E> A, TreeNode<E> parentOfA) {
+    /** Balance RL (see Figure 27.1d) and return the new subtree root */
+    private TreeNode<E> balanceRL(TreeNode<E> A, TreeNode<E> parentOfA) {
+        if (TreeMetrics.ENABLED)
+            TreeMetrics.recordRotation(TreeMetrics.Rotation.RL);
         TreeNode<E> B = A.right; // A is right-heavy
         TreeNode<E> C = B.left; // B is left-heavy
         if (A == root) {
@@ -157,6 +232,7 @@ public class AVLTree<E extends Comparable<E>> extends BST<E> {
         updateHeight((AVLTreeNode<E>)A);
         updateHeight((AVLTreeNode<E>)B);
         updateHeight((AVLTreeNode<E>)C);
+        return C;
     }
     @Override /** Delete an element from the binary tree.
      * Return true if the element is deleted successfully
@@ -164,46 +240,50 @@ public class AVLTree<E extends Comparable<E>> extends BST<E> {
     public boolean delete(E element) {
         if (root == null)
             return false; // Element is not in the tree
-        // Locate the node to be deleted and also locate its parent node
-        TreeNode<E> parent = null;
+        // Locate the node to be deleted, remembering its ancestors
+        AVLTreeNode<E>[] path = ancestors();
+        int depth = 0;
         TreeNode<E> current = root;
+        int cmp = 0;
         while (current != null) {
-            if (element.compareTo(current.element) < 0) {
-                parent = current;
-                current = current.left;
-            }
-            else if (element.compareTo(current.element) > 0) {
-                parent = current;
-                current = current.right;
-            }
-            else
+            cmp = compare(element, current.element);
+            if (cmp == 0)
                 break; // Element is in the tree pointed by current
+            path[depth++] = (AVLTreeNode<E>)current;
+            current = (cmp < 0) ? current.left : current.right;
         }
-        if (current == null)
+        if (TreeMetrics.ENABLED)
+            TreeMetrics.recordDelete((current == null) ? depth : depth + 1);
+        if (current == null) {
+            java.util.Arrays.fill(path, 0, depth, null);
             return false; // Element is not in the tree
+        }
         // Case 1: current has no left children (See Figure 23.6)
         if (current.left == null) {
             // Connect the parent with the right child of the current node
-            if (parent == null) {
+            if (depth == 0) {
                 root = current.right;
             }
             else {
-                if (element.compareTo(parent.element) < 0)
+                TreeNode<E> parent = path[depth - 1];
+                if (parent.left == current)
                     parent.left = current.right;
                 else
                     parent.right = current.right;
                 // Balance the tree if necessary
-                balancePath(parent.element);
+                balancePath(path, depth);
             }
         }
         else {
             // Case 2: The current node has a left child
             // Locate the rightmost node in the left subtree of
             // the current node and also its parent
+            path[depth++] = (AVLTreeNode<E>)current;
             TreeNode<E> parentOfRightMost = current;
             TreeNode<E> rightMost = current.left;
             while (rightMost.right != null) {
                 parentOfRightMost = rightMost;
+                path[depth++] = (AVLTreeNode<E>)rightMost;
                 rightMost = rightMost.right; // Keep going to the right
             }
             // Replace the element in current by the element in rightMost
@@ -215,10 +295,623 @@ public class AVLTree<E extends Comparable<E>> extends BST<E> {
                 // Special case: parentOfRightMost is current
                 parentOfRightMost.left = rightMost.left;
             // Balance the tree if necessary
-            balancePath(parentOfRightMost.element);
+            balancePath(path, depth);
         }
         size--;
-        return true; // Element inserted
+        modCount++;
+        return true; // Element deleted
+    }
+    // Set redeclares these Collection methods as abstract, so the Tree defaults
+    // inherited through BST have to be selected explicitly
+    @Override
+    public int size() {
+        return super.size();
+    }
+    @Override
+    public boolean isEmpty() {
+        return super.isEmpty();
+    }
+    @Override
+    public boolean contains(Object e) {
+        return super.contains(e);
+    }
+    @Override
+    public boolean add(E e) {
+        return super.add(e);
+    }
+    @Override
+    public boolean remove(Object e) {
+        return super.remove(e);
+    }
+    @Override
+    public boolean containsAll(java.util.Collection<?> c) {
+        return super.containsAll(c);
+    }
+    @Override /** Add all elements of c.  Another AVL tree is merged by a join-based
+     * union in O(m log(n/m + 1)) time, in parallel when the trees are large.
+     * Other collections are added as one batch, like insertAll */
+    public boolean addAll(java.util.Collection<? extends E> c) {
+        if (c == this)
+            return false;
+        if (!AVLJoin.canJoin(c, comparator))
+            return insertSorted(c.toArray()) > 0;
+        AVLJoin<E> join = joiner(AVLJoin.Operation.UNION);
+        root = join.apply(root, ((BST<?>)c).root);
+        modCount++;
+        size += join.count();
+        return join.count() > 0;
+    }
+    @Override /** Remove all elements of c.  For another AVL tree this is a join-based
+     * difference in O(m log(n/m + 1)) time */
+    public boolean removeAll(java.util.Collection<?> c) {
+        if (c == this) {
+            boolean changed = size > 0;
+            clear();
+            return changed;
+        }
+        if (!AVLJoin.canJoin(c, comparator))
+            return super.removeAll(c);
+        AVLJoin<E> join = joiner(AVLJoin.Operation.DIFFERENCE);
+        root = join.apply(root, ((BST<?>)c).root);
+        modCount++;
+        size -= join.count();
+        return join.count() > 0;
+    }
+    @Override /** Keep only the elements in c.  For another AVL tree this is a
+     * join-based intersection in O(m log(n/m + 1)) time */
+    public boolean retainAll(java.util.Collection<?> c) {
+        if (c == this)
+            return false;
+        if (!AVLJoin.canJoin(c, comparator))
+            return super.retainAll(c);
+        AVLJoin<E> join = joiner(AVLJoin.Operation.INTERSECTION);
+        root = join.apply(root, ((BST<?>)c).root);
+        modCount++;
+        boolean changed = join.count() != size;
+        size = join.count();
+        return changed;
+    }
+    /** Insert a batch of elements and return how many were not already in the tree.
+     * A large batch is sorted and merged in with one split of the tree per
+     * element and one join per affected subtree, which shares the descents
+     * and rebalancing between neighbouring keys.  A small one is inserted
+     * one element at a time */
+    public int insertAll(E[] elements) {
+        return insertSorted(java.util.Arrays.copyOf(elements, elements.length, Object[].class));
+    }
+    /** Delete a batch of elements and return how many were in the tree */
+    public int deleteAll(E[] elements) {
+        Object[] sorted = java.util.Arrays.copyOf(elements, elements.length, Object[].class);
+        int n = sortAndRemoveDuplicates(sorted);
+        if (!AVLJoin.isLargeBatch(n, size))
+            return deleteEach(sorted, n);
+        AVLJoin<E> join = joiner(AVLJoin.Operation.DIFFERENCE);
+        root = join.apply(root, sorted, 0, n);
+        modCount++;
+        size -= join.count();
+        return join.count();
+    }
+    /** Sort and insert the elements of a, which may be modified */
+    private int insertSorted(Object[] a) {
+        int n = sortAndRemoveDuplicates(a);
+        if (!AVLJoin.isLargeBatch(n, size))
+            return insertEach(a, n);
+        AVLJoin<E> join = joiner(AVLJoin.Operation.UNION);
+        root = join.apply(root, a, 0, n);
+        modCount++;
+        size += join.count();
+        return join.count();
+    }
+    /** Insert a[0] .. a[n - 1] one at a time and return how many were added */
+    @SuppressWarnings("unchecked")
+    private int insertEach(Object[] a, int n) {
+        int added = 0;
+        for (int i = 0; i < n; i++)
+            if (insert((E)a[i]))
+                added++;
+        return added;
+    }
+    /** Delete a[0] .. a[n - 1] one at a time and return how many were removed */
+    @SuppressWarnings("unchecked")
+    private int deleteEach(Object[] a, int n) {
+        int removed = 0;
+        for (int i = 0; i < n; i++)
+            if (delete((E)a[i]))
+                removed++;
+        return removed;
+    }
+    /** Return a set operation that relinks this tree's nodes */
+    private AVLJoin<E> joiner(AVLJoin.Operation operation) {
+        return new AVLJoin<E>(operation, comparator) {
+            @Override
+            int height(TreeNode<E> node) {
+                return (node == null) ? -1 : ((AVLTreeNode<E>)node).height;
+            }
+            @Override
+            void update(TreeNode<E> node) {
+                updateHeight((AVLTreeNode<E>)node);
+            }
+            @Override
+            TreeNode<E> createNode(E e) {
+                return createNewNode(e);
+            }
+        };
+    }
+    @Override
+    public Object[] toArray() {
+        return super.toArray();
+    }
+    @Override
+    public <T> T[] toArray(T[] array) {
+        return super.toArray(array);
+    }
+    /** Return the node with the smallest element greater than e
+     * (or equal to e if inclusive), or null if there is none */
+    private TreeNode<E> ceilingNode(E e, boolean inclusive) {
+        TreeNode<E> best = null;
+        TreeNode<E> current = root;
+        while (current != null) {
+            int cmp = compare(e, current.element);
+            if (cmp < 0 || (cmp == 0 && inclusive)) {
+                best = current;
+                if (cmp == 0)
+                    break;
+                current = current.left;
+            }
+            else
+                current = current.right;
+        }
+        return best;
+    }
+    /** Return the node with the greatest element less than e
+     * (or equal to e if inclusive), or null if there is none */
+    private TreeNode<E> floorNode(E e, boolean inclusive) {
+        TreeNode<E> best = null;
+        TreeNode<E> current = root;
+        while (current != null) {
+            int cmp = compare(e, current.element);
+            if (cmp > 0 || (cmp == 0 && inclusive)) {
+                best = current;
+                if (cmp == 0)
+                    break;
+                current = current.right;
+            }
+            else
+                current = current.left;
+        }
+        return best;
+    }
+    /** Return the leftmost node, or null if the tree is empty */
+    private TreeNode<E> firstNode() {
+        TreeNode<E> current = root;
+        if (current != null)
+            while (current.left != null)
+                current = current.left;
+        return current;
+    }
+    /** Return the rightmost node, or null if the tree is empty */
+    private TreeNode<E> lastNode() {
+        TreeNode<E> current = root;
+        if (current != null)
+            while (current.right != null)
+                current = current.right;
+        return current;
+    }
+    private static <E> E elementOrNull(TreeNode<E> node) {
+        return (node == null) ? null : node.element;
+    }
+    @Override /** Return the greatest element less than e, or null */
+    public E lower(E e) {
+        return elementOrNull(floorNode(e, false));
+    }
+    @Override /** Return the greatest element less than or equal to e, or null */
+    public E floor(E e) {
+        return elementOrNull(floorNode(e, true));
+    }
+    @Override /** Return the smallest element greater than or equal to e, or null */
+    public E ceiling(E e) {
+        return elementOrNull(ceilingNode(e, true));
+    }
+    @Override /** Return the smallest element greater than e, or null */
+    public E higher(E e) {
+        return elementOrNull(ceilingNode(e, false));
+    }
+    @Override /** Return the smallest element */
+    public E first() {
+        if (root == null)
+            throw new java.util.NoSuchElementException();
+        return firstNode().element;
+    }
+    @Override /** Return the greatest element */
+    public E last() {
+        if (root == null)
+            throw new java.util.NoSuchElementException();
+        return lastNode().element;
+    }
+    @Override /** Remove and return the smallest element, or null if the tree is empty */
+    public E pollFirst() {
+        E e = elementOrNull(firstNode());
+        if (e != null)
+            delete(e);
+        return e;
+    }
+    @Override /** Remove and return the greatest element, or null if the tree is empty */
+    public E pollLast() {
+        E e = elementOrNull(lastNode());
+        if (e != null)
+            delete(e);
+        return e;
+    }
+    @Override /** Return the tree's comparator, or null for natural ordering */
+    public java.util.Comparator<? super E> comparator() {
+        return comparator;
+    }
+    @Override /** Obtain an iterator in descending order */
+    public java.util.Iterator<E> descendingIterator() {
+        return new RangeIterator(null, false, true, null, false, true, true);
+    }
+    @Override /** Return a reverse-order view of the tree */
+    public java.util.NavigableSet<E> descendingSet() {
+        return new SubSet(null, false, true, null, false, true, true);
+    }
+    @Override /** Return a view of the elements from fromElement to toElement */
+    public java.util.NavigableSet<E> subSet(E fromElement, boolean fromInclusive,
+                                            E toElement, boolean toInclusive) {
+        if (compare(fromElement, toElement) > 0)
+            throw new IllegalArgumentException("fromElement > toElement");
+        return new SubSet(fromElement, fromInclusive, false,
+                toElement, toInclusive, false, false);
+    }
+    @Override /** Return a view of the elements less than (or equal to) toElement */
+    public java.util.NavigableSet<E> headSet(E toElement, boolean inclusive) {
+        compare(toElement, toElement); // Null check, as TreeSet does
+        return new SubSet(null, false, true, toElement, inclusive, false, false);
+    }
+    @Override /** Return a view of the elements greater than (or equal to) fromElement */
+    public java.util.NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+        compare(fromElement, fromElement);
+        return new SubSet(fromElement, inclusive, false, null, false, true, false);
+    }
+    @Override
+    public java.util.SortedSet<E> subSet(E fromElement, E toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+    @Override
+    public java.util.SortedSet<E> headSet(E toElement) {
+        return headSet(toElement, false);
+    }
+    @Override
+    public java.util.SortedSet<E> tailSet(E fromElement) {
+        return tailSet(fromElement, true);
+    }
+    @Override /** Sets are equal if they contain the same elements */
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof java.util.Set))
+            return false;
+        java.util.Set<?> other = (java.util.Set<?>)o;
+        try {
+            return other.size() == size() && containsAll(other);
+        }
+        catch (ClassCastException ex) {
+            return false;
+        }
+    }
+    @Override /** The sum of the element hash codes, as for every Set */
+    public int hashCode() {
+        int h = 0;
+        for (E e : this)
+            h += e.hashCode();
+        return h;
+    }
+    /** Iterates over the elements between two bounds, in either direction.
+     * The stack holds the unvisited nodes on one root-to-node path, so creating
+     * the iterator costs O(log n) and it never holds more than O(log n) nodes */
+    private class RangeIterator implements java.util.Iterator<E> {
+        private final E lo, hi;
+        private final boolean loInclusive, hiInclusive;
+        private final boolean fromStart, toEnd;
+        private final boolean descending;
+        private java.util.ArrayDeque<TreeNode<E>> stack = new java.util.ArrayDeque<>();
+        private E lastReturned;
+        private int expectedModCount = modCount;
+        RangeIterator(E lo, boolean loInclusive, boolean fromStart,
+                      E hi, boolean hiInclusive, boolean toEnd, boolean descending) {
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.fromStart = fromStart;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.toEnd = toEnd;
+            this.descending = descending;
+            if (descending)
+                seekDescending(root, hi, hiInclusive, toEnd);
+            else
+                seekAscending(root, lo, loInclusive, fromStart);
+        }
+        /** Push the path to the first element at or after the lower bound */
+        private void seekAscending(TreeNode<E> current, E bound, boolean inclusive, boolean unbounded) {
+            while (current != null) {
+                int cmp = unbounded ? -1 : compare(bound, current.element);
+                if (cmp < 0 || (cmp == 0 && inclusive)) {
+                    stack.push(current); // current is in range; smaller ones are to its left
+                    current = current.left;
+                }
+                else
+                    current = current.right;
+            }
+        }
+        /** Push the path to the last element at or before the upper bound */
+        private void seekDescending(TreeNode<E> current, E bound, boolean inclusive, boolean unbounded) {
+            while (current != null) {
+                int cmp = unbounded ? 1 : compare(bound, current.element);
+                if (cmp > 0 || (cmp == 0 && inclusive)) {
+                    stack.push(current);
+                    current = current.right;
+                }
+                else
+                    current = current.left;
+            }
+        }
+        private boolean pastEnd(E e) {
+            if (descending) {
+                if (fromStart)
+                    return false;
+                int cmp = compare(e, lo);
+                return cmp < 0 || (cmp == 0 && !loInclusive);
+            }
+            else {
+                if (toEnd)
+                    return false;
+                int cmp = compare(e, hi);
+                return cmp > 0 || (cmp == 0 && !hiInclusive);
+            }
+        }
+        @Override
+        public boolean hasNext() {
+            if (stack.isEmpty())
+                return false;
+            if (pastEnd(stack.peek().element)) {
+                stack.clear(); // Everything left is out of range too
+                return false;
+            }
+            return true;
+        }
+        @Override
+        public E next() {
+            if (modCount != expectedModCount)
+                throw new java.util.ConcurrentModificationException();
+            if (!hasNext())
+                throw new java.util.NoSuchElementException();
+            TreeNode<E> node = stack.pop();
+            if (descending)
+                seekDescending(node.left, null, false, true);
+            else
+                seekAscending(node.right, null, false, true);
+            lastReturned = node.element;
+            return lastReturned;
+        }
+        @Override /** Remove the element most recently returned */
+        public void remove() {
+            if (lastReturned == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new java.util.ConcurrentModificationException();
+            delete(lastReturned);
+            // Rotations may have moved the nodes on our stack, so find our place again
+            stack.clear();
+            if (descending)
+                seekDescending(root, lastReturned, false, false);
+            else
+                seekAscending(root, lastReturned, false, false);
+            lastReturned = null;
+            expectedModCount = modCount;
+        }
+    }
+    /** A live view of the elements between two bounds, optionally in reverse order.
+     * The bounds are always stored in ascending terms; descending only flips
+     * the direction of iteration and navigation */
+    private class SubSet extends java.util.AbstractSet<E> implements java.util.NavigableSet<E> {
+        private final E lo, hi;
+        private final boolean loInclusive, hiInclusive;
+        private final boolean fromStart, toEnd;
+        private final boolean descending;
+        SubSet(E lo, boolean loInclusive, boolean fromStart,
+               E hi, boolean hiInclusive, boolean toEnd, boolean descending) {
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.fromStart = fromStart;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.toEnd = toEnd;
+            this.descending = descending;
+        }
+        private boolean tooLow(E e) {
+            if (fromStart)
+                return false;
+            int cmp = compare(e, lo);
+            return cmp < 0 || (cmp == 0 && !loInclusive);
+        }
+        private boolean tooHigh(E e) {
+            if (toEnd)
+                return false;
+            int cmp = compare(e, hi);
+            return cmp > 0 || (cmp == 0 && !hiInclusive);
+        }
+        private boolean inRange(E e) {
+            return !tooLow(e) && !tooHigh(e);
+        }
+        /** Like inRange, but an exclusive bound of a new view may equal our own bound */
+        private boolean inRange(E e, boolean inclusive) {
+            if (inclusive)
+                return inRange(e);
+            return (fromStart || compare(e, lo) >= 0) && (toEnd || compare(e, hi) <= 0);
+        }
+        private E checked(TreeNode<E> node) {
+            return (node == null || !inRange(node.element)) ? null : node.element;
+        }
+        /** Smallest element in range, ignoring direction */
+        private E lowest() {
+            return checked(fromStart ? firstNode() : ceilingNode(lo, loInclusive));
+        }
+        /** Greatest element in range, ignoring direction */
+        private E highest() {
+            return checked(toEnd ? lastNode() : floorNode(hi, hiInclusive));
+        }
+        private E ceilingInRange(E e, boolean inclusive) {
+            if (tooLow(e))
+                return lowest();
+            return checked(ceilingNode(e, inclusive));
+        }
+        private E floorInRange(E e, boolean inclusive) {
+            if (tooHigh(e))
+                return highest();
+            return checked(floorNode(e, inclusive));
+        }
+        @Override
+        public java.util.Iterator<E> iterator() {
+            return new RangeIterator(lo, loInclusive, fromStart, hi, hiInclusive, toEnd, descending);
+        }
+        @Override
+        public java.util.Iterator<E> descendingIterator() {
+            return new RangeIterator(lo, loInclusive, fromStart, hi, hiInclusive, toEnd, !descending);
+        }
+        @Override /** Counts the elements in range, so this is O(log n + size) */
+        public int size() {
+            if (fromStart && toEnd)
+                return AVLTree.this.size;
+            int count = 0;
+            for (java.util.Iterator<E> it = iterator(); it.hasNext(); it.next())
+                count++;
+            return count;
+        }
+        @Override
+        public boolean isEmpty() {
+            return lowest() == null;
+        }
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean contains(Object o) {
+            E e = (E)o;
+            return inRange(e) && search(e);
+        }
+        @Override
+        public boolean add(E e) {
+            if (!inRange(e))
+                throw new IllegalArgumentException("element out of range");
+            return insert(e);
+        }
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean remove(Object o) {
+            E e = (E)o;
+            return inRange(e) && delete(e);
+        }
+        @Override
+        public void clear() {
+            for (E e = lowest(); e != null; e = lowest())
+                delete(e);
+        }
+        @Override
+        public java.util.Comparator<? super E> comparator() {
+            return descending ? java.util.Collections.reverseOrder(comparator) : comparator;
+        }
+        @Override
+        public E first() {
+            E e = descending ? highest() : lowest();
+            if (e == null)
+                throw new java.util.NoSuchElementException();
+            return e;
+        }
+        @Override
+        public E last() {
+            E e = descending ? lowest() : highest();
+            if (e == null)
+                throw new java.util.NoSuchElementException();
+            return e;
+        }
+        @Override
+        public E lower(E e) {
+            return descending ? ceilingInRange(e, false) : floorInRange(e, false);
+        }
+        @Override
+        public E floor(E e) {
+            return descending ? ceilingInRange(e, true) : floorInRange(e, true);
+        }
+        @Override
+        public E ceiling(E e) {
+            return descending ? floorInRange(e, true) : ceilingInRange(e, true);
+        }
+        @Override
+        public E higher(E e) {
+            return descending ? floorInRange(e, false) : ceilingInRange(e, false);
+        }
+        @Override
+        public E pollFirst() {
+            E e = descending ? highest() : lowest();
+            if (e != null)
+                delete(e);
+            return e;
+        }
+        @Override
+        public E pollLast() {
+            E e = descending ? lowest() : highest();
+            if (e != null)
+                delete(e);
+            return e;
+        }
+        @Override
+        public java.util.NavigableSet<E> descendingSet() {
+            return new SubSet(lo, loInclusive, fromStart, hi, hiInclusive, toEnd, !descending);
+        }
+        @Override
+        public java.util.NavigableSet<E> subSet(E fromElement, boolean fromInclusive,
+                                                E toElement, boolean toInclusive) {
+            checkInRange(fromElement, fromInclusive);
+            checkInRange(toElement, toInclusive);
+            if (descending) {
+                if (compare(fromElement, toElement) < 0)
+                    throw new IllegalArgumentException("fromElement < toElement");
+                return new SubSet(toElement, toInclusive, false,
+                        fromElement, fromInclusive, false, true);
+            }
+            if (compare(fromElement, toElement) > 0)
+                throw new IllegalArgumentException("fromElement > toElement");
+            return new SubSet(fromElement, fromInclusive, false,
+                    toElement, toInclusive, false, false);
+        }
+        @Override
+        public java.util.NavigableSet<E> headSet(E toElement, boolean inclusive) {
+            checkInRange(toElement, inclusive);
+            if (descending)
+                return new SubSet(toElement, inclusive, false, hi, hiInclusive, toEnd, true);
+            return new SubSet(lo, loInclusive, fromStart, toElement, inclusive, false, false);
+        }
+        @Override
+        public java.util.NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+            checkInRange(fromElement, inclusive);
+            if (descending)
+                return new SubSet(lo, loInclusive, fromStart, fromElement, inclusive, false, true);
+            return new SubSet(fromElement, inclusive, false, hi, hiInclusive, toEnd, false);
+        }
+        /** A bound of a new view has to lie within this view */
+        private void checkInRange(E e, boolean inclusive) {
+            if (!inRange(e, inclusive))
+                throw new IllegalArgumentException("element out of range");
+        }
+        @Override
+        public java.util.SortedSet<E> subSet(E fromElement, E toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+        @Override
+        public java.util.SortedSet<E> headSet(E toElement) {
+            return headSet(toElement, false);
+        }
+        @Override
+        public java.util.SortedSet<E> tailSet(E fromElement) {
+            return tailSet(fromElement, true);
+        }
     }
     /** AVLTreeNode is TreeNode plus height */
     protected static class AVLTreeNode<E> extends BST.TreeNode<E> {
@@ -0,0 +1,1042 @@
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/** A sorted map from keys to values, held in an AVLTreeWithFastIterator whose
+ * nodes are the map's entries.  Every node keeps the size of its subtree, so
+ * besides the usual O(log n) lookups and updates the map can find the entry at
+ * an index, the rank of a key and the size of a range in O(log n).
+ *
+ * Lookups walk the nodes directly with the tree's comparator, so get,
+ * containsKey and updates of existing keys allocate nothing.
+ * Like TreeMap, the entries returned by firstEntry, lowerEntry and the other
+ * navigation methods are snapshots, while those seen through entrySet() are
+ * the live nodes and write through setValue. */
+public class AVLTreeMap<K, V> extends java.util.AbstractMap<K, V>
+        implements java.util.NavigableMap<K, V> {
+    private final EntryTree<K, V> tree;
+    /** The whole map as a range view, which the navigation methods delegate to */
+    private final SubMap whole = new SubMap(null, false, true, null, false, true, false);
+
+    /** Create an empty map ordered by the natural ordering of its keys */
+    public AVLTreeMap() {
+        tree = new EntryTree<>(null);
+    }
+
+    /** Create an empty map ordered by the specified comparator */
+    public AVLTreeMap(java.util.Comparator<? super K> comparator) {
+        tree = new EntryTree<>(comparator);
+    }
+
+    /** Create a map with the same mappings as m */
+    public AVLTreeMap(Map<? extends K, ? extends V> m) {
+        this();
+        putAll(m);
+    }
+
+    @Override
+    public int size() {
+        return tree.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return tree.size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return getEntry(key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        Node<K, V> e = getEntry(key);
+        return (e == null) ? null : e.value;
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        Node<K, V> e = getEntry(key);
+        return (e == null) ? defaultValue : e.value;
+    }
+
+    @Override /** Associate value with key.  Return the old value, or null if
+     * the key was not in the map */
+    public V put(K key, V value) {
+        Node<K, V> e = getEntry(key);
+        if (e != null) {
+            V oldValue = e.value;
+            e.value = value;
+            return oldValue;
+        }
+        addEntry(key, value);
+        return null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        Node<K, V> e = getEntry(key);
+        if (e == null)
+            return null;
+        V oldValue = e.value;
+        deleteKey(e.element);
+        return oldValue;
+    }
+
+    @Override
+    public void clear() {
+        tree.clear();
+    }
+
+    @Override /** Look the key up once, and only call the function if it is absent.
+     * Throws ConcurrentModificationException if the function changes the map */
+    public V computeIfAbsent(K key, java.util.function.Function<? super K, ? extends V> mappingFunction) {
+        Node<K, V> e = getEntry(key);
+        if (e != null && e.value != null)
+            return e.value;
+        int expectedModCount = tree.modCount;
+        V value = mappingFunction.apply(key);
+        if (tree.modCount != expectedModCount)
+            throw new java.util.ConcurrentModificationException();
+        if (value != null) {
+            if (e != null)
+                e.value = value;
+            else
+                addEntry(key, value);
+        }
+        return value;
+    }
+
+    @Override /** Look the key up once, and combine an existing value in place */
+    public V merge(K key, V value,
+                   java.util.function.BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        if (value == null)
+            throw new NullPointerException();
+        Node<K, V> e = getEntry(key);
+        if (e == null) {
+            addEntry(key, value);
+            return value;
+        }
+        V newValue = (e.value == null) ? value : remappingFunction.apply(e.value, value);
+        if (newValue == null)
+            deleteKey(e.element);
+        else
+            e.value = newValue;
+        return newValue;
+    }
+
+    /** Return the entry at the specified position in key order.
+     * It is the live node, so setValue writes through */
+    public Map.Entry<K, V> entryAt(int index) {
+        if (index < 0 || index >= tree.size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + tree.size);
+
+        BST.TreeNode<K> current = tree.getRoot();
+        while (true) {
+            int leftSize = sizeOf(current.left);
+            if (index < leftSize) {
+                current = current.left;
+            }
+            else if (index > leftSize) {
+                index -= leftSize + 1; // Skip the left subtree and current
+                current = current.right;
+            }
+            else
+                return tree.node(current);
+        }
+    }
+
+    /** Return the number of keys in the map that are ordered before key.
+     * If key is in the map this is its index */
+    public int rank(K key) {
+        return countBelow(key, false);
+    }
+
+    /** Return the node holding key, or null */
+    private Node<K, V> getEntry(Object key) {
+        BST.TreeNode<K> current = tree.getRoot();
+        while (current != null) {
+            int cmp = tree.compare(key, current.element);
+            if (cmp < 0)
+                current = current.left;
+            else if (cmp > 0)
+                current = current.right;
+            else
+                return tree.node(current);
+        }
+        if (key == null && tree.comparator == null)
+            throw new NullPointerException(); // Even when the map is empty, as TreeMap does
+        return null;
+    }
+
+    /** Insert a key that is not in the map */
+    private void addEntry(K key, V value) {
+        tree.node(tree.insertNode(key)).value = value;
+    }
+
+    private void deleteKey(K key) {
+        tree.delete(key);
+    }
+
+    /** Return the number of keys less than key, or at most key if inclusive */
+    private int countBelow(Object key, boolean inclusive) {
+        int count = 0;
+        BST.TreeNode<K> current = tree.getRoot();
+        while (current != null) {
+            int cmp = tree.compare(key, current.element);
+            if (cmp < 0 || (cmp == 0 && !inclusive)) {
+                current = current.left;
+            }
+            else {
+                count += sizeOf(current.left) + 1;
+                if (cmp == 0)
+                    break;
+                current = current.right;
+            }
+        }
+        return count;
+    }
+
+    private static int sizeOf(BST.TreeNode<?> node) {
+        return (node == null) ? 0 : ((AVLTreeWithFastIterator.AVLTreeNode<?>)node).size;
+    }
+
+    /** Return the node with the smallest key greater than key
+     * (or equal to key if inclusive), or null if there is none */
+    private Node<K, V> ceilingNode(Object key, boolean inclusive) {
+        BST.TreeNode<K> best = null;
+        BST.TreeNode<K> current = tree.getRoot();
+        while (current != null) {
+            int cmp = tree.compare(key, current.element);
+            if (cmp < 0 || (cmp == 0 && inclusive)) {
+                best = current;
+                if (cmp == 0)
+                    break;
+                current = current.left;
+            }
+            else
+                current = current.right;
+        }
+        return tree.node(best);
+    }
+
+    /** Return the node with the greatest key less than key
+     * (or equal to key if inclusive), or null if there is none */
+    private Node<K, V> floorNode(Object key, boolean inclusive) {
+        BST.TreeNode<K> best = null;
+        BST.TreeNode<K> current = tree.getRoot();
+        while (current != null) {
+            int cmp = tree.compare(key, current.element);
+            if (cmp > 0 || (cmp == 0 && inclusive)) {
+                best = current;
+                if (cmp == 0)
+                    break;
+                current = current.right;
+            }
+            else
+                current = current.left;
+        }
+        return tree.node(best);
+    }
+
+    private Node<K, V> firstNode() {
+        BST.TreeNode<K> current = tree.getRoot();
+        if (current != null)
+            while (current.left != null)
+                current = current.left;
+        return tree.node(current);
+    }
+
+    private Node<K, V> lastNode() {
+        BST.TreeNode<K> current = tree.getRoot();
+        if (current != null)
+            while (current.right != null)
+                current = current.right;
+        return tree.node(current);
+    }
+
+    /** Return an immutable copy of a node, or null */
+    private static <K, V> Map.Entry<K, V> snapshot(Node<K, V> node) {
+        return (node == null) ? null : new java.util.AbstractMap.SimpleImmutableEntry<>(node.element, node.value);
+    }
+
+    private static <K> K keyOrNull(Node<K, ?> node) {
+        return (node == null) ? null : node.element;
+    }
+
+    private static <K> K key(Node<K, ?> node) {
+        if (node == null)
+            throw new NoSuchElementException();
+        return node.element;
+    }
+
+    @Override
+    public java.util.Comparator<? super K> comparator() {
+        return tree.comparator;
+    }
+
+    @Override
+    public Map.Entry<K, V> lowerEntry(K key) {
+        return snapshot(floorNode(key, false));
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return keyOrNull(floorNode(key, false));
+    }
+
+    @Override
+    public Map.Entry<K, V> floorEntry(K key) {
+        return snapshot(floorNode(key, true));
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return keyOrNull(floorNode(key, true));
+    }
+
+    @Override
+    public Map.Entry<K, V> ceilingEntry(K key) {
+        return snapshot(ceilingNode(key, true));
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return keyOrNull(ceilingNode(key, true));
+    }
+
+    @Override
+    public Map.Entry<K, V> higherEntry(K key) {
+        return snapshot(ceilingNode(key, false));
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return keyOrNull(ceilingNode(key, false));
+    }
+
+    @Override
+    public Map.Entry<K, V> firstEntry() {
+        return snapshot(firstNode());
+    }
+
+    @Override
+    public Map.Entry<K, V> lastEntry() {
+        return snapshot(lastNode());
+    }
+
+    @Override
+    public K firstKey() {
+        return key(firstNode());
+    }
+
+    @Override
+    public K lastKey() {
+        return key(lastNode());
+    }
+
+    @Override
+    public Map.Entry<K, V> pollFirstEntry() {
+        return whole.pollFirstEntry();
+    }
+
+    @Override
+    public Map.Entry<K, V> pollLastEntry() {
+        return whole.pollLastEntry();
+    }
+
+    @Override
+    public java.util.Set<Map.Entry<K, V>> entrySet() {
+        return whole.entrySet();
+    }
+
+    @Override
+    public java.util.NavigableSet<K> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    public java.util.NavigableSet<K> navigableKeySet() {
+        return new KeySet<>(this);
+    }
+
+    @Override
+    public java.util.NavigableSet<K> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public java.util.NavigableMap<K, V> descendingMap() {
+        return whole.descendingMap();
+    }
+
+    @Override
+    public java.util.NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive,
+                                               K toKey, boolean toInclusive) {
+        return whole.subMap(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    @Override
+    public java.util.NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        return whole.headMap(toKey, inclusive);
+    }
+
+    @Override
+    public java.util.NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return whole.tailMap(fromKey, inclusive);
+    }
+
+    @Override
+    public java.util.SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public java.util.SortedMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public java.util.SortedMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    /** Iterates over the entries between two bounds in either direction.
+     * The stack holds the nodes whose entries and far subtrees are still to come.
+     * It fails fast if the map is changed other than through its own remove */
+    private class EntryIterator {
+        private final SubMap range;
+        private final boolean descending;
+        private final java.util.ArrayDeque<Node<K, V>> stack = new java.util.ArrayDeque<>();
+        private K lastReturned;
+        private boolean canRemove;
+        private int expectedModCount = tree.modCount;
+
+        EntryIterator(SubMap range, boolean descending) {
+            this.range = range;
+            this.descending = descending;
+            if (descending)
+                seekDescending(tree.getRoot(), range.hi, range.hiInclusive, range.toEnd);
+            else
+                seekAscending(tree.getRoot(), range.lo, range.loInclusive, range.fromStart);
+        }
+
+        /** Push the path to the first node at or after the bound */
+        private void seekAscending(BST.TreeNode<K> current, K bound, boolean inclusive, boolean unbounded) {
+            while (current != null) {
+                int cmp = unbounded ? -1 : tree.compare(bound, current.element);
+                if (cmp < 0 || (cmp == 0 && inclusive)) {
+                    stack.push(tree.node(current));
+                    current = current.left;
+                }
+                else
+                    current = current.right;
+            }
+        }
+
+        /** Push the path to the last node at or before the bound */
+        private void seekDescending(BST.TreeNode<K> current, K bound, boolean inclusive, boolean unbounded) {
+            while (current != null) {
+                int cmp = unbounded ? 1 : tree.compare(bound, current.element);
+                if (cmp > 0 || (cmp == 0 && inclusive)) {
+                    stack.push(tree.node(current));
+                    current = current.right;
+                }
+                else
+                    current = current.left;
+            }
+        }
+
+        public boolean hasNext() {
+            if (stack.isEmpty())
+                return false;
+            K key = stack.peek().element;
+            if (descending ? range.tooLow(key) : range.tooHigh(key)) {
+                stack.clear(); // Everything left is out of range too
+                return false;
+            }
+            return true;
+        }
+
+        Node<K, V> nextEntry() {
+            if (tree.modCount != expectedModCount)
+                throw new java.util.ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Node<K, V> node = stack.pop();
+            if (descending)
+                seekDescending(node.left, null, false, true);
+            else
+                seekAscending(node.right, null, false, true);
+            lastReturned = node.element;
+            canRemove = true;
+            return node;
+        }
+
+        public void remove() {
+            if (!canRemove)
+                throw new IllegalStateException();
+            if (tree.modCount != expectedModCount)
+                throw new java.util.ConcurrentModificationException();
+            deleteKey(lastReturned);
+            // Rotations may have moved the nodes on our stack, so find our place again
+            stack.clear();
+            if (descending)
+                seekDescending(tree.getRoot(), lastReturned, false, false);
+            else
+                seekAscending(tree.getRoot(), lastReturned, false, false);
+            canRemove = false;
+            expectedModCount = tree.modCount;
+        }
+    }
+
+    /** A live view of the entries between two bounds, optionally in reverse order.
+     * The bounds are always stored in ascending terms; descending only flips
+     * the direction of iteration and navigation */
+    private class SubMap extends java.util.AbstractMap<K, V> implements java.util.NavigableMap<K, V> {
+        private final K lo, hi;
+        private final boolean loInclusive, hiInclusive;
+        private final boolean fromStart, toEnd;
+        private final boolean descending;
+
+        SubMap(K lo, boolean loInclusive, boolean fromStart,
+               K hi, boolean hiInclusive, boolean toEnd, boolean descending) {
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.fromStart = fromStart;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.toEnd = toEnd;
+            this.descending = descending;
+        }
+
+        private boolean tooLow(Object key) {
+            if (fromStart)
+                return false;
+            int cmp = tree.compare(key, lo);
+            return cmp < 0 || (cmp == 0 && !loInclusive);
+        }
+
+        private boolean tooHigh(Object key) {
+            if (toEnd)
+                return false;
+            int cmp = tree.compare(key, hi);
+            return cmp > 0 || (cmp == 0 && !hiInclusive);
+        }
+
+        private boolean inRange(Object key) {
+            return !tooLow(key) && !tooHigh(key);
+        }
+
+        /** Like inRange, but an exclusive bound of a new view may equal our own bound */
+        private boolean inRange(Object key, boolean inclusive) {
+            if (inclusive)
+                return inRange(key);
+            return (fromStart || tree.compare(key, lo) >= 0) && (toEnd || tree.compare(key, hi) <= 0);
+        }
+
+        private Node<K, V> checked(Node<K, V> node) {
+            return (node == null || !inRange(node.element)) ? null : node;
+        }
+
+        /** Node with the smallest key in range, ignoring direction */
+        private Node<K, V> lowest() {
+            return checked(fromStart ? firstNode() : ceilingNode(lo, loInclusive));
+        }
+
+        /** Node with the greatest key in range, ignoring direction */
+        private Node<K, V> highest() {
+            return checked(toEnd ? lastNode() : floorNode(hi, hiInclusive));
+        }
+
+        private Node<K, V> ceilingInRange(K key, boolean inclusive) {
+            if (tooLow(key))
+                return lowest();
+            return checked(ceilingNode(key, inclusive));
+        }
+
+        private Node<K, V> floorInRange(K key, boolean inclusive) {
+            if (tooHigh(key))
+                return highest();
+            return checked(floorNode(key, inclusive));
+        }
+
+        @Override /** Computed from subtree sizes in O(log n) */
+        public int size() {
+            int above = toEnd ? tree.size : countBelow(hi, hiInclusive);
+            int below = fromStart ? 0 : countBelow(lo, !loInclusive);
+            return Math.max(0, above - below);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return lowest() == null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return inRange(key) && AVLTreeMap.this.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return inRange(key) ? AVLTreeMap.this.get(key) : null;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            if (!inRange(key))
+                throw new IllegalArgumentException("key out of range");
+            return AVLTreeMap.this.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            return inRange(key) ? AVLTreeMap.this.remove(key) : null;
+        }
+
+        @Override
+        public void clear() {
+            if (fromStart && toEnd) {
+                tree.clear();
+                return;
+            }
+            for (Node<K, V> e = lowest(); e != null; e = lowest())
+                deleteKey(e.element);
+        }
+
+        @Override
+        public java.util.Comparator<? super K> comparator() {
+            return descending ? java.util.Collections.reverseOrder(tree.comparator) : tree.comparator;
+        }
+
+        @Override
+        public Map.Entry<K, V> lowerEntry(K key) {
+            return snapshot(descending ? ceilingInRange(key, false) : floorInRange(key, false));
+        }
+
+        @Override
+        public K lowerKey(K key) {
+            return keyOrNull(descending ? ceilingInRange(key, false) : floorInRange(key, false));
+        }
+
+        @Override
+        public Map.Entry<K, V> floorEntry(K key) {
+            return snapshot(descending ? ceilingInRange(key, true) : floorInRange(key, true));
+        }
+
+        @Override
+        public K floorKey(K key) {
+            return keyOrNull(descending ? ceilingInRange(key, true) : floorInRange(key, true));
+        }
+
+        @Override
+        public Map.Entry<K, V> ceilingEntry(K key) {
+            return snapshot(descending ? floorInRange(key, true) : ceilingInRange(key, true));
+        }
+
+        @Override
+        public K ceilingKey(K key) {
+            return keyOrNull(descending ? floorInRange(key, true) : ceilingInRange(key, true));
+        }
+
+        @Override
+        public Map.Entry<K, V> higherEntry(K key) {
+            return snapshot(descending ? floorInRange(key, false) : ceilingInRange(key, false));
+        }
+
+        @Override
+        public K higherKey(K key) {
+            return keyOrNull(descending ? floorInRange(key, false) : ceilingInRange(key, false));
+        }
+
+        @Override
+        public Map.Entry<K, V> firstEntry() {
+            return snapshot(descending ? highest() : lowest());
+        }
+
+        @Override
+        public Map.Entry<K, V> lastEntry() {
+            return snapshot(descending ? lowest() : highest());
+        }
+
+        @Override
+        public K firstKey() {
+            return key(descending ? highest() : lowest());
+        }
+
+        @Override
+        public K lastKey() {
+            return key(descending ? lowest() : highest());
+        }
+
+        @Override
+        public Map.Entry<K, V> pollFirstEntry() {
+            return poll(descending ? highest() : lowest());
+        }
+
+        @Override
+        public Map.Entry<K, V> pollLastEntry() {
+            return poll(descending ? lowest() : highest());
+        }
+
+        private Map.Entry<K, V> poll(Node<K, V> node) {
+            Map.Entry<K, V> result = snapshot(node);
+            if (node != null)
+                deleteKey(node.element);
+            return result;
+        }
+
+        @Override
+        public java.util.Set<Map.Entry<K, V>> entrySet() {
+            return new java.util.AbstractSet<Map.Entry<K, V>>() {
+                @Override
+                public java.util.Iterator<Map.Entry<K, V>> iterator() {
+                    EntryIterator it = new EntryIterator(SubMap.this, descending);
+                    return new java.util.Iterator<Map.Entry<K, V>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<K, V> next() {
+                            return it.nextEntry();
+                        }
+
+                        @Override
+                        public void remove() {
+                            it.remove();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return SubMap.this.size();
+                }
+
+                @Override
+                public boolean isEmpty() {
+                    return SubMap.this.isEmpty();
+                }
+
+                @Override
+                public void clear() {
+                    SubMap.this.clear();
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    if (!(o instanceof Map.Entry))
+                        return false;
+                    Map.Entry<?, ?> entry = (Map.Entry<?, ?>)o;
+                    Object key = entry.getKey();
+                    if (!inRange(key))
+                        return false;
+                    Node<K, V> node = getEntry(key);
+                    return node != null && java.util.Objects.equals(node.value, entry.getValue());
+                }
+
+                @Override
+                public boolean remove(Object o) {
+                    if (!contains(o))
+                        return false;
+                    AVLTreeMap.this.remove(((Map.Entry<?, ?>)o).getKey());
+                    return true;
+                }
+            };
+        }
+
+        @Override
+        public java.util.NavigableSet<K> keySet() {
+            return navigableKeySet();
+        }
+
+        @Override
+        public java.util.NavigableSet<K> navigableKeySet() {
+            return new KeySet<>(this);
+        }
+
+        @Override
+        public java.util.NavigableSet<K> descendingKeySet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        @Override
+        public java.util.NavigableMap<K, V> descendingMap() {
+            return new SubMap(lo, loInclusive, fromStart, hi, hiInclusive, toEnd, !descending);
+        }
+
+        @Override
+        public java.util.NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive,
+                                                   K toKey, boolean toInclusive) {
+            checkInRange(fromKey, fromInclusive);
+            checkInRange(toKey, toInclusive);
+            if (descending) {
+                if (tree.compare(fromKey, toKey) < 0)
+                    throw new IllegalArgumentException("fromKey < toKey");
+                return new SubMap(toKey, toInclusive, false, fromKey, fromInclusive, false, true);
+            }
+            if (tree.compare(fromKey, toKey) > 0)
+                throw new IllegalArgumentException("fromKey > toKey");
+            return new SubMap(fromKey, fromInclusive, false, toKey, toInclusive, false, false);
+        }
+
+        @Override
+        public java.util.NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+            checkInRange(toKey, inclusive);
+            if (descending)
+                return new SubMap(toKey, inclusive, false, hi, hiInclusive, toEnd, true);
+            return new SubMap(lo, loInclusive, fromStart, toKey, inclusive, false, false);
+        }
+
+        @Override
+        public java.util.NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+            checkInRange(fromKey, inclusive);
+            if (descending)
+                return new SubMap(lo, loInclusive, fromStart, fromKey, inclusive, false, true);
+            return new SubMap(fromKey, inclusive, false, hi, hiInclusive, toEnd, false);
+        }
+
+        /** A bound of a new view has to lie within this view */
+        private void checkInRange(K key, boolean inclusive) {
+            tree.compare(key, key); // Type and null check, as TreeMap does
+            if (!inRange(key, inclusive))
+                throw new IllegalArgumentException("key out of range");
+        }
+
+        @Override
+        public java.util.SortedMap<K, V> subMap(K fromKey, K toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public java.util.SortedMap<K, V> headMap(K toKey) {
+            return headMap(toKey, false);
+        }
+
+        @Override
+        public java.util.SortedMap<K, V> tailMap(K fromKey) {
+            return tailMap(fromKey, true);
+        }
+    }
+
+    /** The keys of a map, as a live view backed by the map's navigation methods */
+    private static class KeySet<K> extends java.util.AbstractSet<K> implements java.util.NavigableSet<K> {
+        private final java.util.NavigableMap<K, ?> m;
+
+        KeySet(java.util.NavigableMap<K, ?> m) {
+            this.m = m;
+        }
+
+        @Override
+        public java.util.Iterator<K> iterator() {
+            java.util.Iterator<? extends Map.Entry<K, ?>> it = m.entrySet().iterator();
+            return new java.util.Iterator<K>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public K next() {
+                    return it.next().getKey();
+                }
+
+                @Override
+                public void remove() {
+                    it.remove();
+                }
+            };
+        }
+
+        @Override
+        public java.util.Iterator<K> descendingIterator() {
+            return descendingSet().iterator();
+        }
+
+        @Override
+        public int size() {
+            return m.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return m.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return m.containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!m.containsKey(o))
+                return false;
+            m.remove(o);
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            m.clear();
+        }
+
+        @Override
+        public java.util.Comparator<? super K> comparator() {
+            return m.comparator();
+        }
+
+        @Override
+        public K first() {
+            return m.firstKey();
+        }
+
+        @Override
+        public K last() {
+            return m.lastKey();
+        }
+
+        @Override
+        public K lower(K k) {
+            return m.lowerKey(k);
+        }
+
+        @Override
+        public K floor(K k) {
+            return m.floorKey(k);
+        }
+
+        @Override
+        public K ceiling(K k) {
+            return m.ceilingKey(k);
+        }
+
+        @Override
+        public K higher(K k) {
+            return m.higherKey(k);
+        }
+
+        @Override
+        public K pollFirst() {
+            Map.Entry<K, ?> e = m.pollFirstEntry();
+            return (e == null) ? null : e.getKey();
+        }
+
+        @Override
+        public K pollLast() {
+            Map.Entry<K, ?> e = m.pollLastEntry();
+            return (e == null) ? null : e.getKey();
+        }
+
+        @Override
+        public java.util.NavigableSet<K> descendingSet() {
+            return new KeySet<>(m.descendingMap());
+        }
+
+        @Override
+        public java.util.NavigableSet<K> subSet(K fromElement, boolean fromInclusive,
+                                                K toElement, boolean toInclusive) {
+            return new KeySet<>(m.subMap(fromElement, fromInclusive, toElement, toInclusive));
+        }
+
+        @Override
+        public java.util.NavigableSet<K> headSet(K toElement, boolean inclusive) {
+            return new KeySet<>(m.headMap(toElement, inclusive));
+        }
+
+        @Override
+        public java.util.NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+            return new KeySet<>(m.tailMap(fromElement, inclusive));
+        }
+
+        @Override
+        public java.util.SortedSet<K> subSet(K fromElement, K toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public java.util.SortedSet<K> headSet(K toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public java.util.SortedSet<K> tailSet(K fromElement) {
+            return tailSet(fromElement, true);
+        }
+    }
+
+    /** The tree of entries.  Its nodes are the map's Nodes, so put fills in
+     * the value of the node that insertNode returns without searching again */
+    private static final class EntryTree<K, V> extends AVLTreeWithFastIterator<K> {
+        EntryTree(java.util.Comparator<? super K> comparator) {
+            super(comparator);
+        }
+
+        @Override
+        protected Node<K, V> createNewNode(K key) {
+            return new Node<>(key);
+        }
+
+        @Override /** The value moves with its key */
+        protected void copyElement(TreeNode<K> from, TreeNode<K> to) {
+            super.copyElement(from, to);
+            node(to).value = node(from).value;
+        }
+
+        /** Return a node of this tree, or null, as the entry it is.
+         * Every node comes from createNewNode, so the cast always holds */
+        @SuppressWarnings("unchecked")
+        Node<K, V> node(TreeNode<K> node) {
+            return (Node<K, V>)node;
+        }
+    }
+
+    /** A node of the tree and an entry of the map.  The key is the node's element */
+    private static final class Node<K, V> extends AVLTreeWithFastIterator.AVLTreeNode<K>
+            implements Map.Entry<K, V> {
+        V value;
+
+        Node(K key) {
+            super(key);
+        }
+
+        @Override
+        public K getKey() {
+            return element;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            V oldValue = this.value;
+            this.value = value;
+            return oldValue;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>)o;
+            return java.util.Objects.equals(element, e.getKey())
+                    && java.util.Objects.equals(value, e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return java.util.Objects.hashCode(element) ^ java.util.Objects.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return element + "=" + value;
+        }
+    }
+}
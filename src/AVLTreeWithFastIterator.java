@@ -1,10 +1,19 @@
 import java.util.NoSuchElementException;
 
-public class AVLTreeWithFastIterator<E extends Comparable<E>> extends BST<E> {
+public class AVLTreeWithFastIterator<E> extends BST<E> {
+    /** An AVL tree of height h has at least fib(h + 3) - 1 nodes,
+     * so no tree with fewer than 2^31 nodes is taller than this */
+    private static final int MAX_HEIGHT = 48;
+
     /** Create an empty AVL tree */
     public AVLTreeWithFastIterator() {
     }
 
+    /** Create an empty AVL tree ordered by the specified comparator */
+    public AVLTreeWithFastIterator(java.util.Comparator<? super E> comparator) {
+        super(comparator);
+    }
+
     /** Create an AVL tree from an array of objects */
     public AVLTreeWithFastIterator(E[] objects) {
         super(objects);
@@ -20,9 +29,32 @@ public class AVLTreeWithFastIterator<E extends Comparable<E>> extends BST<E> {
 
     public java.util.Iterator<E> iterator(int index) { return new InorderIterator(index); }
 
+    /** Obtain a cursor before the first element */
+    public TreeCursor<E> cursor() {
+        return new Cursor(0);
+    }
+
+    /** Obtain a cursor before the element at the specified index, in O(log n) */
+    public TreeCursor<E> cursor(int index) {
+        return new Cursor(index);
+    }
+
+    /** Allocate an array of n nodes, for a stack of the nodes on a path */
+    @SuppressWarnings("unchecked")
+    private static <E> TreeNode<E>[] newStack(int n) {
+        return (TreeNode<E>[])new TreeNode<?>[n];
+    }
+
+    /** An inorder iterator over an array stack.  It fails fast if the tree is
+     * changed other than through its own remove */
     private class InorderIterator implements java.util.Iterator<E> {
         private TreeNode<E> current = root;
-        private java.util.Stack<TreeNode<E>> stack = new java.util.Stack<>();
+        // Nodes whose element and right subtree are still to be visited,
+        // all on one root-to-node path
+        private TreeNode<E>[] stack = newStack(MAX_HEIGHT);
+        private int depth = 0; // Number of nodes on the stack
+        private E lastReturned; // null if there is nothing to remove
+        private int expectedModCount = modCount;
 
         public InorderIterator() { }
 
@@ -45,13 +77,13 @@ public class AVLTreeWithFastIterator<E extends Comparable<E>> extends BST<E> {
                 }
                 else if (numToSkip == ((AVLTreeNode<E>)current.left).size) {
                     //Skip the left subtree only
-                    stack.push(current);
+                    stack[depth++] = current;
                     current = null;
                     numToSkip = 0;
                 }
                 else if (numToSkip < ((AVLTreeNode<E>)current.left).size) {
                     //Go into the left subtree
-                    stack.push(current);
+                    stack[depth++] = current;
                     current = current.left;
                 }
                 else {
@@ -64,40 +96,552 @@ public class AVLTreeWithFastIterator<E extends Comparable<E>> extends BST<E> {
 
         @Override
         public boolean hasNext() {
-            return (current != null || !stack.empty());
+            return (current != null || depth > 0);
         }
 
         public E next() {
+            if (modCount != expectedModCount)
+                throw new java.util.ConcurrentModificationException();
             if (!hasNext())
                 throw new NoSuchElementException();
             while (current != null) {
-                stack.push(current);
+                stack[depth++] = current;
                 current = current.left;
             }
-            TreeNode<E> node = stack.pop();
+            TreeNode<E> node = stack[--depth];
+            stack[depth] = null;
             current = node.right;
-            return node.element;
+            lastReturned = node.element;
+            return lastReturned;
+        }
+
+        @Override /** Remove the element most recently returned, through the
+         * rebalancing delete, in O(log n) */
+        public void remove() {
+            if (lastReturned == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new java.util.ConcurrentModificationException();
+            delete(lastReturned);
+            // Rotations may have moved the nodes on our stack, so find our
+            // place again:  the path to the first element after lastReturned
+            java.util.Arrays.fill(stack, 0, depth, null);
+            depth = 0;
+            current = null;
+            for (TreeNode<E> node = root; node != null; ) {
+                if (compare(lastReturned, node.element) < 0) {
+                    stack[depth++] = node;
+                    node = node.left;
+                }
+                else
+                    node = node.right;
+            }
+            lastReturned = null;
+            expectedModCount = modCount;
+        }
+    }
+
+    /** A cursor that keeps the root-to-node path of the element after it.
+     * Seeks and skips descend through the subtree sizes in O(log n);
+     * next and previous step along the path in O(1) amortized */
+    private class Cursor implements TreeCursor<E> {
+        // path[0 .. depth - 1] leads from the root to the node at index.
+        // It is empty when the cursor is at the end.
+        private TreeNode<E>[] path = newStack(MAX_HEIGHT);
+        private int depth = 0;
+        private int index = 0;
+        private E lastReturned; // null if there is nothing to remove
+        private boolean lastWasNext; // Whether lastReturned came from next()
+        private int expectedModCount = modCount;
+
+        Cursor(int index) {
+            seekIndex(index);
+        }
+
+        @Override
+        public void seekIndex(int index) {
+            checkForComodification();
+            if (index < 0 || index > size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            this.index = index;
+            depth = 0;
+            lastReturned = null;
+            if (index == size)
+                return; // At the end, so no path
+
+            TreeNode<E> current = root;
+            while (true) {
+                path[depth++] = current;
+                int leftSize = sizeOf(current.left);
+                if (index < leftSize) {
+                    current = current.left;
+                }
+                else if (index > leftSize) {
+                    index -= leftSize + 1; // Skip the left subtree and current
+                    current = current.right;
+                }
+                else
+                    return;
+            }
+        }
+
+        @Override
+        public boolean seek(E key) {
+            checkForComodification();
+            lastReturned = null;
+            // Descend as in a search; the last node we turned left at is the ceiling
+            int rank = 0;
+            int ceilingDepth = 0;
+            depth = 0;
+            TreeNode<E> current = root;
+            while (current != null) {
+                path[depth++] = current;
+                int cmp = compare(key, current.element);
+                if (cmp < 0) {
+                    ceilingDepth = depth;
+                    current = current.left;
+                }
+                else if (cmp > 0) {
+                    rank += sizeOf(current.left) + 1;
+                    current = current.right;
+                }
+                else {
+                    index = rank + sizeOf(current.left);
+                    return true;
+                }
+            }
+            depth = ceilingDepth; // The ceiling's path is a prefix of the one we took
+            index = rank;
+            return false;
+        }
+
+        @Override
+        public int skip(int n) {
+            int target = (int)Math.max(0, Math.min(size, (long)index + n));
+            int moved = target - index;
+            seekIndex(target);
+            return moved;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < size;
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return index > 0;
+        }
+
+        @Override
+        public int nextIndex() {
+            return index;
+        }
+
+        @Override
+        public int previousIndex() {
+            return index - 1;
         }
 
+        @Override
+        public E next() {
+            checkForComodification();
+            if (index >= size)
+                throw new NoSuchElementException();
+            TreeNode<E> node = path[depth - 1];
+            if (node.right != null) {
+                // The successor is the leftmost node of the right subtree
+                for (TreeNode<E> next = node.right; next != null; next = next.left)
+                    path[depth++] = next;
+            }
+            else {
+                // Climb until we leave a left subtree; its parent is the successor
+                TreeNode<E> child;
+                do {
+                    child = path[--depth];
+                } while (depth > 0 && path[depth - 1].right == child);
+            }
+            index++;
+            return returned(node.element, true);
+        }
+
+        @Override
+        public E previous() {
+            checkForComodification();
+            if (index <= 0)
+                throw new NoSuchElementException();
+            if (depth == 0) {
+                // From the end, the predecessor is the rightmost node
+                for (TreeNode<E> node = root; node != null; node = node.right)
+                    path[depth++] = node;
+            }
+            else if (path[depth - 1].left != null) {
+                // The predecessor is the rightmost node of the left subtree
+                for (TreeNode<E> node = path[depth - 1].left; node != null; node = node.right)
+                    path[depth++] = node;
+            }
+            else {
+                // Climb until we leave a right subtree; its parent is the predecessor
+                TreeNode<E> child;
+                do {
+                    child = path[--depth];
+                } while (depth > 0 && path[depth - 1].left == child);
+            }
+            index--;
+            return returned(path[depth - 1].element, false);
+        }
+
+        @Override /** Remove the element last returned through the rebalancing delete */
         public void remove() {
+            if (lastReturned == null)
+                throw new IllegalStateException();
+            checkForComodification();
+            delete(lastReturned);
+            expectedModCount = modCount;
+            // Rotations may have moved the nodes on our path, so find our place again
+            seekIndex(lastWasNext ? index - 1 : index);
+        }
+
+        @Override /** Unsupported:  the tree decides where an element goes */
+        public void set(E e) {
             throw new UnsupportedOperationException();
         }
+
+        @Override /** Unsupported:  the tree decides where an element goes */
+        public void add(E e) {
+            throw new UnsupportedOperationException();
+        }
+
+        private E returned(E e, boolean fromNext) {
+            lastReturned = e;
+            lastWasNext = fromNext;
+            return e;
+        }
+
+        private void checkForComodification() {
+            if (modCount != expectedModCount)
+                throw new java.util.ConcurrentModificationException();
+        }
+    }
+
+    @Override /** Obtain a spliterator that splits by position, so parallel streams
+     * divide the tree into equal halves */
+    public java.util.Spliterator<E> spliterator() {
+        return new TreeSpliterator(0, size, modCount);
+    }
+
+    /** Covers the elements at positions index .. fence - 1.  Splitting is O(1):
+     * each half only records its positions.  A half seeks to its first element
+     * in O(log n) through the subtree sizes when it starts traversing.
+     * The positions are fixed when spliterator() is called, so a half fails
+     * fast if the tree has changed since then, even before it starts */
+    private class TreeSpliterator implements java.util.Spliterator<E> {
+        private int index;
+        private final int fence;
+        private final int expectedModCount; // modCount when spliterator() was called
+        private InorderIterator iter; // Created on first use
+
+        TreeSpliterator(int index, int fence, int expectedModCount) {
+            this.index = index;
+            this.fence = fence;
+            this.expectedModCount = expectedModCount;
+        }
+
+        @Override
+        public java.util.Spliterator<E> trySplit() {
+            int mid = (index + fence) >>> 1;
+            if (mid <= index)
+                return null;
+            java.util.Spliterator<E> prefix = new TreeSpliterator(index, mid, expectedModCount);
+            index = mid;
+            iter = null; // Seek to our new start when we are used
+            return prefix;
+        }
+
+        @Override
+        public boolean tryAdvance(java.util.function.Consumer<? super E> action) {
+            if (action == null)
+                throw new NullPointerException();
+            if (iter == null)
+                start();
+            if (index >= fence)
+                return false;
+            index++;
+            action.accept(iter.next());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(java.util.function.Consumer<? super E> action) {
+            if (action == null)
+                throw new NullPointerException();
+            if (iter == null)
+                start();
+            for (; index < fence; index++)
+                action.accept(iter.next());
+        }
+
+        /** Seek to index, unless the tree changed since spliterator() was called.
+         * From here on the iterator checks for changes on every element */
+        private void start() {
+            if (modCount != expectedModCount)
+                throw new java.util.ConcurrentModificationException();
+            iter = new InorderIterator(index);
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SORTED | DISTINCT | SIZED | SUBSIZED | NONNULL;
+        }
+
+        @Override /** The tree's comparator, null for natural ordering */
+        public java.util.Comparator<? super E> getComparator() {
+            return comparator;
+        }
+    }
+
+    /** Return the element at the specified position in sorted order */
+    public E get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+        TreeNode<E> current = root;
+        while (true) {
+            int leftSize = sizeOf(current.left);
+            if (index < leftSize) {
+                current = current.left;
+            }
+            else if (index > leftSize) {
+                index -= leftSize + 1; // Skip the left subtree and current
+                current = current.right;
+            }
+            else
+                return current.element;
+        }
+    }
+
+    /** Copy the elements at positions fromIndex .. toIndex - 1 into
+     * dest[0] .. dest[toIndex - fromIndex - 1].  The subtree sizes lead
+     * straight to fromIndex in O(log n), and the copy is one loop over an
+     * array stack, so a range of k elements costs O(log n + k) */
+    public void copyRange(int fromIndex, int toIndex, Object[] dest) {
+        if (fromIndex < 0 || toIndex > size || fromIndex > toIndex)
+            throw new IndexOutOfBoundsException(
+                    "fromIndex: " + fromIndex + ", toIndex: " + toIndex + ", Size: " + size);
+        int n = toIndex - fromIndex;
+        if (dest.length < n)
+            throw new IndexOutOfBoundsException("Range of " + n + " does not fit in " + dest.length);
+
+        // Descend to the node at fromIndex, stacking the nodes we pass on their left
+        TreeNode<E>[] stack = newStack(MAX_HEIGHT);
+        int top = 0; // Number of nodes on the stack
+        TreeNode<E> current = (n == 0) ? null : root;
+        int index = fromIndex;
+        while (current != null) {
+            int leftSize = sizeOf(current.left);
+            if (index <= leftSize) {
+                stack[top++] = current;
+                if (index == leftSize)
+                    break;
+                current = current.left;
+            }
+            else {
+                index -= leftSize + 1;
+                current = current.right;
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            TreeNode<E> node = stack[--top];
+            dest[i] = node.element;
+            for (current = node.right; current != null; current = current.left)
+                stack[top++] = current;
+        }
+    }
+
+    @Override /** Copy the whole tree through copyRange */
+    protected void copyInorder(Object[] dest) {
+        copyRange(0, size, dest);
+    }
+
+    /** Return the number of elements in the tree that are less than e.
+     * If e is in the tree this is its index in sorted order */
+    public int rank(E e) {
+        int rank = 0;
+        TreeNode<E> current = root;
+        while (current != null) {
+            int cmp = compare(e, current.element);
+            if (cmp < 0) {
+                current = current.left;
+            }
+            else {
+                rank += sizeOf(current.left);
+                if (cmp == 0)
+                    break;
+                rank++; // current is less than e too
+                current = current.right;
+            }
+        }
+        return rank;
+    }
+
+    /** Return the number of elements e with lo <= e < hi */
+    public int countRange(E lo, E hi) {
+        if (compare(lo, hi) > 0)
+            throw new IllegalArgumentException("lo > hi");
+        return rank(hi) - rank(lo);
+    }
+
+    /** Return the number of nodes in a subtree */
+    private int sizeOf(TreeNode<E> node) {
+        return (node == null) ? 0 : ((AVLTreeNode<E>)node).size;
+    }
+
+    @Override /** Add all elements of c.  Another AVL tree is merged by a join-based
+     * union in O(m log(n/m + 1)) time, in parallel when the trees are large.
+     * Other collections are added as one batch, like insertAll */
+    public boolean addAll(java.util.Collection<? extends E> c) {
+        if (c == this)
+            return false;
+        if (!AVLJoin.canJoin(c, comparator))
+            return insertSorted(c.toArray()) > 0;
+        return setOperation(AVLJoin.Operation.UNION, c) > 0;
+    }
+
+    @Override /** Remove all elements of c.  For another AVL tree this is a join-based
+     * difference in O(m log(n/m + 1)) time */
+    public boolean removeAll(java.util.Collection<?> c) {
+        if (c == this) {
+            boolean changed = size > 0;
+            clear();
+            return changed;
+        }
+        if (!AVLJoin.canJoin(c, comparator))
+            return super.removeAll(c);
+        return setOperation(AVLJoin.Operation.DIFFERENCE, c) > 0;
+    }
+
+    @Override /** Keep only the elements in c.  For another AVL tree this is a
+     * join-based intersection in O(m log(n/m + 1)) time */
+    public boolean retainAll(java.util.Collection<?> c) {
+        if (c == this)
+            return false;
+        if (!AVLJoin.canJoin(c, comparator))
+            return super.retainAll(c);
+        return setOperation(AVLJoin.Operation.INTERSECTION, c) > 0;
+    }
+
+    /** Insert a batch of elements and return how many were not already in the tree.
+     * A large batch is sorted and merged in with one split of the tree per
+     * element and one join per affected subtree, which shares the descents
+     * and rebalancing between neighbouring keys.  A small one is inserted
+     * one element at a time */
+    public int insertAll(E[] elements) {
+        return insertSorted(java.util.Arrays.copyOf(elements, elements.length, Object[].class));
     }
 
-    @Override /** Insert an element and rebalance if necessary */
-    public boolean insert(E e) {
-        boolean successful = super.insert(e);
-        if (!successful)
-            return false; // e is already in the tree
+    /** Delete a batch of elements and return how many were in the tree */
+    public int deleteAll(E[] elements) {
+        Object[] sorted = java.util.Arrays.copyOf(elements, elements.length, Object[].class);
+        int n = sortAndRemoveDuplicates(sorted);
+        if (!AVLJoin.isLargeBatch(n, size))
+            return deleteEach(sorted, n);
+        int oldSize = size;
+        root = joiner(AVLJoin.Operation.DIFFERENCE).apply(root, sorted, 0, n);
+        size = sizeOf(root);
+        modCount++;
+        return oldSize - size;
+    }
+
+    /** Sort and insert the elements of a, which may be modified */
+    private int insertSorted(Object[] a) {
+        int n = sortAndRemoveDuplicates(a);
+        if (!AVLJoin.isLargeBatch(n, size))
+            return insertEach(a, n);
+        int oldSize = size;
+        root = joiner(AVLJoin.Operation.UNION).apply(root, a, 0, n);
+        size = sizeOf(root);
+        modCount++;
+        return size - oldSize;
+    }
+
+    /** Insert a[0] .. a[n - 1] one at a time and return how many were added */
+    @SuppressWarnings("unchecked")
+    private int insertEach(Object[] a, int n) {
+        int added = 0;
+        for (int i = 0; i < n; i++)
+            if (insert((E)a[i]))
+                added++;
+        return added;
+    }
+
+    /** Delete a[0] .. a[n - 1] one at a time and return how many were removed */
+    @SuppressWarnings("unchecked")
+    private int deleteEach(Object[] a, int n) {
+        int removed = 0;
+        for (int i = 0; i < n; i++)
+            if (delete((E)a[i]))
+                removed++;
+        return removed;
+    }
+
+    /** Combine this tree with the AVL tree c and return the change in size */
+    private int setOperation(AVLJoin.Operation operation, java.util.Collection<?> c) {
+        int oldSize = size;
+        root = joiner(operation).apply(root, ((BST<?>)c).root);
+        size = sizeOf(root);
+        modCount++;
+        return Math.abs(size - oldSize);
+    }
+
+    /** Return a set operation that relinks this tree's nodes */
+    private AVLJoin<E> joiner(AVLJoin.Operation operation) {
+        return new AVLJoin<E>(operation, comparator) {
+            @Override
+            int height(TreeNode<E> node) {
+                return (node == null) ? -1 : ((AVLTreeNode<E>)node).height;
+            }
+
+            @Override
+            void update(TreeNode<E> node) {
+                updateHeightAndSize((AVLTreeNode<E>)node);
+            }
+
+            @Override
+            TreeNode<E> createNode(E e) {
+                return createNewNode(e);
+            }
+        };
+    }
+
+    @Override /** Insert an element and rebalance if necessary.
+     * Rotations relink nodes without moving elements, so the new node
+     * still holds e afterwards */
+    protected TreeNode<E> insertNode(E e) {
+        TreeNode<E> node = super.insertNode(e);
+        if (node == null)
+            return null; // e is already in the tree
         else {
             balancePath(e); // Balance from e to the root if necessary
         }
 
-        return true; // e is inserted
+        return node; // e is inserted
+    }
+
+    @Override /** Bulk-built nodes need their heights and sizes */
+    protected void updateBuiltNode(TreeNode<E> node) {
+        updateHeightAndSize((AVLTreeNode<E>)node);
     }
 
-    /** Update the height of a specified node */
-    private void updateHeightAndSize(AVLTreeNode<E> node) {
+    /** Update the height and size of a node from its children.  Every change
+     * of a node's subtrees ends here, so subclasses that keep more per-node
+     * fields extend this to maintain them */
+    protected void updateHeightAndSize(AVLTreeNode<E> node) {
         if (node.left == null && node.right == null) // node is a leaf
             node.height = 0;
         else if (node.left == null) // node has no left subtree
@@ -120,6 +664,8 @@ public class AVLTreeWithFastIterator<E extends Comparable<E>> extends BST<E> {
      */
     private void balancePath(E e) {
         java.util.ArrayList<TreeNode<E>> path = path(e);
+        if (TreeMetrics.ENABLED)
+            TreeMetrics.recordBalancePath(path.size());
         for (int i = path.size() - 1; i >= 0; i--) {
             AVLTreeNode<E> A = (AVLTreeNode<E>)(path.get(i));
             updateHeightAndSize(A);
@@ -159,6 +705,8 @@ public class AVLTreeWithFastIterator<E extends Comparable<E>> extends BST<E> {
 
     /** Balance LL (see Figure 27.1) */
     private void balanceLL(TreeNode<E> A, TreeNode<E> parentOfA) {
+        if (TreeMetrics.ENABLED)
+            TreeMetrics.recordRotation(TreeMetrics.Rotation.LL);
         TreeNode<E> B = A.left; // A is left-heavy and B is left-heavy
 
         if (A == root) {
@@ -181,6 +729,8 @@ public class AVLTreeWithFastIterator<E extends Comparable<E>> extends BST<E> {
 
     /** Balance LR (see Figure 27.1c) */
     private void balanceLR(TreeNode<E> A, TreeNode<E> parentOfA) {
+        if (TreeMetrics.ENABLED)
+            TreeMetrics.recordRotation(TreeMetrics.Rotation.LR);
         TreeNode<E> B = A.left; // A is left-heavy
         TreeNode<E> C = B.right; // B is right-heavy
 
@@ -209,6 +759,8 @@ public class AVLTreeWithFastIterator<E extends Comparable<E>> extends BST<E> {
 
     /** Balance RR (see Figure 27.1b) */
     private void balanceRR(TreeNode<E> A, TreeNode<E> parentOfA) {
+        if (TreeMetrics.ENABLED)
+            TreeMetrics.recordRotation(TreeMetrics.Rotation.RR);
         TreeNode<E> B = A.right; // A is right-heavy and B is right-heavy
 
         if (A == root) {
@@ -231,6 +783,8 @@ public class AVLTreeWithFastIterator<E extends Comparable<E>> extends BST<E> {
 
     /** Balance RL (see Figure 27.1d) */
     private void balanceRL(TreeNode<E> A, TreeNode<E> parentOfA) {
+        if (TreeMetrics.ENABLED)
+            TreeMetrics.recordRotation(TreeMetrics.Rotation.RL);
         TreeNode<E> B = A.right; // A is right-heavy
         TreeNode<E> C = B.left; // B is left-heavy
 
@@ -267,18 +821,23 @@ public class AVLTreeWithFastIterator<E extends Comparable<E>> extends BST<E> {
         // Locate the node to be deleted and also locate its parent node
         TreeNode<E> parent = null;
         TreeNode<E> current = root;
+        int compares = 0;
         while (current != null) {
-            if (element.compareTo(current.element) < 0) {
+            compares++;
+            int cmp = compare(element, current.element);
+            if (cmp < 0) {
                 parent = current;
                 current = current.left;
             }
-            else if (element.compareTo(current.element) > 0) {
+            else if (cmp > 0) {
                 parent = current;
                 current = current.right;
             }
             else
                 break; // Element is in the tree pointed by current
         }
+        if (TreeMetrics.ENABLED)
+            TreeMetrics.recordDelete(compares);
 
         if (current == null)
             return false; // Element is not in the tree
@@ -290,7 +849,7 @@ public class AVLTreeWithFastIterator<E extends Comparable<E>> extends BST<E> {
                 root = current.right;
             }
             else {
-                if (element.compareTo(parent.element) < 0)
+                if (parent.left == current)
                     parent.left = current.right;
                 else
                     parent.right = current.right;
@@ -312,7 +871,7 @@ public class AVLTreeWithFastIterator<E extends Comparable<E>> extends BST<E> {
             }
 
             // Replace the element in current by the element in rightMost
-            current.element = rightMost.element;
+            copyElement(rightMost, current);
 
             // Eliminate rightmost node
             if (parentOfRightMost.right == rightMost)
@@ -326,7 +885,14 @@ public class AVLTreeWithFastIterator<E extends Comparable<E>> extends BST<E> {
         }
 
         size--;
-        return true; // Element inserted
+        modCount++;
+        return true; // Element deleted
+    }
+
+    /** Copy the element of from into to, when delete unlinks from in place of to.
+     * Subclasses whose nodes carry more than the element copy that too */
+    protected void copyElement(TreeNode<E> from, TreeNode<E> to) {
+        to.element = from.element;
     }
 
     /** AVLTreeNode is TreeNode plus height */
@@ -0,0 +1,138 @@
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/** An AVL tree whose nodes also keep an aggregate of their subtree, such as a
+ * sum, minimum or maximum, so the aggregate of any range of elements can be
+ * computed in O(log n) instead of by visiting every element in the range.
+ *
+ * The aggregate is described by a monoid:  measure maps an element to a value,
+ * combine joins two values and identity is the value of no elements.  combine
+ * must be associative and identity must be its identity, but combine need not
+ * be commutative:  values are always combined in the order of the elements.
+ * Aggregates are kept current through inserts, deletes, rotations, bulk
+ * builds and the join-based set operations, all of which recompute a node in
+ * updateHeightAndSize. */
+public class AugmentedAVLTree<E, A> extends AVLTreeWithFastIterator<E> {
+    private final A identity;
+    private final Function<? super E, ? extends A> measure;
+    private final BinaryOperator<A> combine;
+
+    /** Create an empty tree ordered by the natural ordering of its elements */
+    public AugmentedAVLTree(A identity, Function<? super E, ? extends A> measure, BinaryOperator<A> combine) {
+        this(null, identity, measure, combine);
+    }
+
+    /** Create an empty tree ordered by the specified comparator */
+    public AugmentedAVLTree(java.util.Comparator<? super E> comparator,
+                            A identity, Function<? super E, ? extends A> measure, BinaryOperator<A> combine) {
+        super(comparator);
+        if (measure == null || combine == null)
+            throw new NullPointerException();
+        this.identity = identity;
+        this.measure = measure;
+        this.combine = combine;
+    }
+
+    @Override /** Override createNewNode to create an AugmentedNode */
+    protected AugmentedNode<E, A> createNewNode(E e) {
+        AugmentedNode<E, A> node = new AugmentedNode<>(e);
+        node.aggregate = measure.apply(e);
+        return node;
+    }
+
+    @Override /** Recompute the node's aggregate along with its height and size */
+    protected void updateHeightAndSize(AVLTreeNode<E> node) {
+        super.updateHeightAndSize(node);
+        A value = measure.apply(node.element);
+        if (node.left != null)
+            value = combine.apply(aggregateOf(node.left), value);
+        if (node.right != null)
+            value = combine.apply(value, aggregateOf(node.right));
+        augmented(node).aggregate = value;
+    }
+
+    /** Return the aggregate of all elements */
+    public A aggregate() {
+        return aggregateOf(root);
+    }
+
+    /** Return the aggregate of the elements e with lo <= e < hi, in O(log n).
+     * The range is half-open, as in countRange */
+    public A aggregate(E lo, E hi) {
+        if (compare(lo, hi) > 0)
+            throw new IllegalArgumentException("lo > hi");
+
+        // Descend to the highest node in the range; the rest of the range
+        // is a suffix of its left subtree and a prefix of its right subtree
+        TreeNode<E> current = root;
+        while (current != null) {
+            if (compare(current.element, lo) < 0)
+                current = current.right;
+            else if (compare(current.element, hi) >= 0)
+                current = current.left;
+            else
+                break;
+        }
+        if (current == null)
+            return identity; // Nothing in the range
+
+        A value = combine.apply(atLeast(current.left, lo), measure.apply(current.element));
+        return combine.apply(value, below(current.right, hi));
+    }
+
+    /** Return the aggregate of the elements of a subtree that are at least lo */
+    private A atLeast(TreeNode<E> current, E lo) {
+        A value = identity; // Aggregate of the part found so far, all to our right
+        while (current != null) {
+            if (compare(current.element, lo) >= 0) {
+                // current and its right subtree are in, before what we have
+                A here = measure.apply(current.element);
+                if (current.right != null)
+                    here = combine.apply(here, aggregateOf(current.right));
+                value = combine.apply(here, value);
+                current = current.left;
+            }
+            else
+                current = current.right;
+        }
+        return value;
+    }
+
+    /** Return the aggregate of the elements of a subtree that are less than hi */
+    private A below(TreeNode<E> current, E hi) {
+        A value = identity; // Aggregate of the part found so far, all to our left
+        while (current != null) {
+            if (compare(current.element, hi) < 0) {
+                // Its left subtree and current are in, after what we have
+                if (current.left != null)
+                    value = combine.apply(value, aggregateOf(current.left));
+                value = combine.apply(value, measure.apply(current.element));
+                current = current.right;
+            }
+            else
+                current = current.left;
+        }
+        return value;
+    }
+
+    /** Return the aggregate of a subtree */
+    private A aggregateOf(TreeNode<E> node) {
+        return (node == null) ? identity : augmented(node).aggregate;
+    }
+
+    /** Return a node of this tree as the AugmentedNode it is.
+     * Every node comes from createNewNode, so the cast always holds */
+    @SuppressWarnings("unchecked")
+    private AugmentedNode<E, A> augmented(TreeNode<E> node) {
+        return (AugmentedNode<E, A>)node;
+    }
+
+    /** AugmentedNode is AVLTreeNode plus the aggregate of its subtree */
+    protected static class AugmentedNode<E, A> extends AVLTreeNode<E> {
+        protected A aggregate;
+
+        public AugmentedNode(E e) {
+            super(e);
+        }
+    }
+}
@@ -1,67 +1,200 @@
-public class BST<E extends Comparable<E>> implements Tree<E> {
+public class BST<E> implements Tree<E> {
+    /** Ranges at least this large are built by two threads */
+    private static final int PARALLEL_BUILD_SIZE = 1 << 16;
+
     protected TreeNode<E> root;
     protected int size = 0;
+    /** Number of inserts, deletes and rebuilds, so iterators can fail fast
+     * when the tree changes under them */
+    protected int modCount = 0;
+    /** The order of the elements, or null for their natural ordering */
+    protected final java.util.Comparator<? super E> comparator;
 
     /** Create a default binary tree */
     public BST() {
+        comparator = null;
+    }
+
+    /** Create an empty binary tree ordered by the specified comparator.
+     * A null comparator means the elements' natural ordering */
+    public BST(java.util.Comparator<? super E> comparator) {
+        this.comparator = comparator;
     }
 
-    /** Create a binary tree from an array of objects */
+    /** Create a binary tree from an array of objects.
+     * The objects are sorted once and the tree is built perfectly balanced in O(n),
+     * rather than by n separate inserts */
     public BST(E[] objects) {
-        for (int i = 0; i < objects.length; i++)
-            add(objects[i]);
+        comparator = null;
+        Object[] sorted = java.util.Arrays.copyOf(objects, objects.length, Object[].class);
+        int n = sortAndRemoveDuplicates(sorted);
+        root = buildBalanced(sorted, 0, n);
+        size = n;
+    }
+
+    @Override /** Add all elements of c to the tree.
+     * A batch at least as large as the tree is sorted, merged with the tree's
+     * elements and built into a new balanced tree in O(n + m) after the sort.
+     * Smaller batches are inserted one at a time */
+    public boolean addAll(java.util.Collection<? extends E> c) {
+        if (c.isEmpty() || c.size() < size)
+            return Tree.super.addAll(c);
+
+        Object[] added = c.toArray();
+        int m = sortAndRemoveDuplicates(added);
+        Object[] merged = new Object[size + m];
+        int n = 0; // Number of elements in merged
+        int j = 0; // Next element of added
+        for (E e : this) {
+            int cmp = 0;
+            while (j < m && (cmp = compare(added[j], e)) < 0)
+                merged[n++] = added[j++];
+            if (j < m && cmp == 0)
+                j++; // Already in the tree
+            merged[n++] = e;
+        }
+        while (j < m)
+            merged[n++] = added[j++];
+
+        if (n == size)
+            return false; // Nothing new
+        root = buildBalanced(merged, 0, n);
+        size = n;
+        modCount++;
+        return true;
+    }
+
+    /** Compare two elements in the tree's order, with a single three-way
+     * comparison that callers branch on */
+    @SuppressWarnings("unchecked")
+    protected final int compare(Object a, Object b) {
+        return (comparator == null) ? ((Comparable<Object>)a).compareTo(b)
+                : comparator.compare((E)a, (E)b);
+    }
+
+    /** Sort the array and move one copy of each distinct element to its front.
+     * Return the number of distinct elements */
+    protected int sortAndRemoveDuplicates(Object[] a) {
+        // Sorts chunks of a large array in parallel, each in linear time if already sorted
+        java.util.Arrays.parallelSort(a, this::compare);
+        int n = 0;
+        for (int i = 0; i < a.length; i++)
+            if (n == 0 || compare(a[n - 1], a[i]) != 0)
+                a[n++] = a[i];
+        java.util.Arrays.fill(a, n, a.length, null);
+        return n;
+    }
+
+    /** Build a perfectly balanced tree from the sorted, distinct elements
+     * sorted[from] .. sorted[to - 1] and return its root */
+    @SuppressWarnings("unchecked")
+    protected TreeNode<E> buildBalanced(Object[] sorted, int from, int to) {
+        if (from >= to)
+            return null;
+        int mid = (from + to) >>> 1;
+        TreeNode<E> node = createNewNode((E)sorted[mid]);
+        if (to - from >= PARALLEL_BUILD_SIZE) {
+            // Build the left half on another thread
+            java.util.concurrent.ForkJoinTask<TreeNode<E>> left =
+                    java.util.concurrent.ForkJoinTask.adapt(() -> buildBalanced(sorted, from, mid)).fork();
+            node.right = buildBalanced(sorted, mid + 1, to);
+            node.left = left.join();
+        }
+        else {
+            node.left = buildBalanced(sorted, from, mid);
+            node.right = buildBalanced(sorted, mid + 1, to);
+        }
+        updateBuiltNode(node);
+        return node;
+    }
+
+    /** Called by buildBalanced on each node once its subtrees are complete,
+     * so subclasses can set their per-node fields.  Large trees are built by
+     * several threads, so this must only touch the node */
+    protected void updateBuiltNode(TreeNode<E> node) {
     }
 
     @Override /** Returns true if the element is in the tree */
     public boolean search(E e) {
         TreeNode<E> current = root; // Start from the root
+        int compares = 0;
 
         while (current != null) {
-            if (e.compareTo(current.element) < 0) {
+            compares++;
+            int cmp = compare(e, current.element);
+            if (cmp < 0) {
                 current = current.left;
             }
-            else if (e.compareTo(current.element) > 0) {
+            else if (cmp > 0) {
                 current = current.right;
             }
-            else
+            else {
+                if (TreeMetrics.ENABLED)
+                    TreeMetrics.recordSearch(compares);
                 return true; // e is found
+            }
         }
 
+        if (TreeMetrics.ENABLED)
+            TreeMetrics.recordSearch(compares);
         return false;
     }
 
     @Override /** Insert element o into the binary tree
      * Return true if the element is inserted successfully */
     public boolean insert(E e) {
-        if (root == null)
-            root = createNewNode(e); // Create a new root
+        return insertNode(e) != null;
+    }
+
+    /** Insert e and return its new node, or null if e is already in the tree.
+     * Subclasses whose nodes carry more than the element fill the rest in
+     * through the returned node */
+    protected TreeNode<E> insertNode(E e) {
+        TreeNode<E> node;
+        if (root == null) {
+            compare(e, e); // Type and null check, as TreeMap does
+            root = node = createNewNode(e); // Create a new root
+            if (TreeMetrics.ENABLED)
+                TreeMetrics.recordInsert(0);
             //root = new TreeNode<>(e);	// Question:  Why not do it this way?  It would work.
+        }
         else {
             // Locate the parent node
             TreeNode<E> parent = null;
             TreeNode<E> current = root;
-            while (current != null)
-                if (e.compareTo(current.element) < 0) {
+            int cmp = 0;
+            int compares = 0;
+            while (current != null) {
+                compares++;
+                cmp = compare(e, current.element);
+                if (cmp < 0) {
                     parent = current;
                     current = current.left;
                 }
-                else if (e.compareTo(current.element) > 0) {
+                else if (cmp > 0) {
                     parent = current;
                     current = current.right;
                 }
-                else
-                    return false; // Duplicate node not inserted
+                else {
+                    if (TreeMetrics.ENABLED)
+                        TreeMetrics.recordInsert(compares);
+                    return null; // Duplicate node not inserted
+                }
+            }
+            if (TreeMetrics.ENABLED)
+                TreeMetrics.recordInsert(compares);
 
             // Create the new node and attach it to the parent node
-            if (e.compareTo(parent.element) < 0)
-                parent.left = createNewNode(e);
+            if (cmp < 0)
+                parent.left = node = createNewNode(e);
                 //parent.left = new TreeNode<>(e);
             else
-                parent.right = createNewNode(e);
+                parent.right = node = createNewNode(e);
         }
 
         size++;
-        return true; // Element inserted successfully
+        modCount++;
+        return node; // Element inserted successfully
     }
 
     protected TreeNode<E> createNewNode(E e) {
@@ -75,10 +208,7 @@ public class BST<E extends Comparable<E>> implements Tree<E> {
 
     /** Inorder traversal from a subtree */
     protected void inorder(TreeNode<E> root) {
-        if (root == null) return;
-        inorder(root.left);
-        System.out.print(root.element + " ");
-        inorder(root.right);
+        inorder(root, BST::print);
     }
 
     @Override /** Postorder traversal from the root */
@@ -88,10 +218,7 @@ public class BST<E extends Comparable<E>> implements Tree<E> {
 
     /** Postorder traversal from a subtree */
     protected void postorder(TreeNode<E> root) {
-        if (root == null) return;
-        postorder(root.left);
-        postorder(root.right);
-        System.out.print(root.element + " ");
+        postorder(root, BST::print);
     }
 
     @Override /** Preorder traversal from the root */
@@ -101,10 +228,164 @@ public class BST<E extends Comparable<E>> implements Tree<E> {
 
     /** Preorder traversal from a subtree */
     protected void preorder(TreeNode<E> root) {
-        if (root == null) return;
-        System.out.print(root.element + " ");
-        preorder(root.left);
-        preorder(root.right);
+        preorder(root, BST::print);
+    }
+
+    private static boolean print(Object e) {
+        System.out.print(e + " ");
+        return true;
+    }
+
+    /** Visit the elements in inorder while visitor returns true.
+     * Return true if every element was visited.  The traversal is iterative,
+     * so even a degenerate tree cannot overflow the call stack */
+    public boolean inorder(java.util.function.Predicate<? super E> visitor) {
+        return inorder(root, visitor);
+    }
+
+    /** Visit the elements in preorder while visitor returns true.
+     * Return true if every element was visited */
+    public boolean preorder(java.util.function.Predicate<? super E> visitor) {
+        return preorder(root, visitor);
+    }
+
+    /** Visit the elements in postorder while visitor returns true.
+     * Return true if every element was visited */
+    public boolean postorder(java.util.function.Predicate<? super E> visitor) {
+        return postorder(root, visitor);
+    }
+
+    /** Visit the elements e with lo <= e < hi in order, while visitor returns true.
+     * Return true if every element in the range was visited.  Subtrees outside
+     * the range are skipped, so this costs O(log n + number visited) on a
+     * balanced tree */
+    public boolean forEachInRange(E lo, E hi, java.util.function.Predicate<? super E> visitor) {
+        if (compare(lo, hi) > 0)
+            throw new IllegalArgumentException("lo > hi");
+        java.util.ArrayDeque<TreeNode<E>> stack = new java.util.ArrayDeque<>();
+        // Stack the path to the first element at or after lo
+        for (TreeNode<E> current = root; current != null; ) {
+            if (compare(current.element, lo) >= 0) {
+                stack.push(current);
+                current = current.left;
+            }
+            else
+                current = current.right;
+        }
+        while (!stack.isEmpty()) {
+            TreeNode<E> node = stack.pop();
+            if (compare(node.element, hi) >= 0)
+                return true; // Everything after it is out of range too
+            if (!visitor.test(node.element))
+                return false;
+            for (TreeNode<E> current = node.right; current != null; current = current.left)
+                stack.push(current);
+        }
+        return true;
+    }
+
+    @Override /** Perform the action on each element in order, without an iterator */
+    public void forEach(java.util.function.Consumer<? super E> action) {
+        java.util.Objects.requireNonNull(action);
+        inorder(root, e -> {
+            action.accept(e);
+            return true;
+        });
+    }
+
+    @Override /** Copy the elements in order into a new array, in one
+     * iterative traversal rather than through an iterator */
+    public Object[] toArray() {
+        Object[] array = new Object[size];
+        copyInorder(array);
+        return array;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] array) {
+        if (array.length < size)
+            array = (T[])java.lang.reflect.Array.newInstance(
+                    array.getClass().getComponentType(), size);
+        copyInorder(array);
+        if (array.length > size)
+            array[size] = null; // Mark the end, as the Collection contract asks
+        return array;
+    }
+
+    /** Copy all elements in order into dest[0] .. dest[size - 1] */
+    protected void copyInorder(Object[] dest) {
+        java.util.ArrayDeque<TreeNode<E>> stack = new java.util.ArrayDeque<>();
+        int i = 0;
+        TreeNode<E> current = root;
+        while (current != null || !stack.isEmpty()) {
+            while (current != null) { // Descend to the leftmost unvisited node
+                stack.push(current);
+                current = current.left;
+            }
+            TreeNode<E> node = stack.pop();
+            dest[i++] = node.element;
+            current = node.right;
+        }
+    }
+
+    /** Visit a subtree in inorder while visitor returns true */
+    protected boolean inorder(TreeNode<E> root, java.util.function.Predicate<? super E> visitor) {
+        java.util.ArrayDeque<TreeNode<E>> stack = new java.util.ArrayDeque<>();
+        TreeNode<E> current = root;
+        while (current != null || !stack.isEmpty()) {
+            while (current != null) { // Descend to the leftmost unvisited node
+                stack.push(current);
+                current = current.left;
+            }
+            TreeNode<E> node = stack.pop();
+            if (!visitor.test(node.element))
+                return false;
+            current = node.right;
+        }
+        return true;
+    }
+
+    /** Visit a subtree in preorder while visitor returns true */
+    protected boolean preorder(TreeNode<E> root, java.util.function.Predicate<? super E> visitor) {
+        java.util.ArrayDeque<TreeNode<E>> stack = new java.util.ArrayDeque<>();
+        if (root != null)
+            stack.push(root);
+        while (!stack.isEmpty()) {
+            TreeNode<E> node = stack.pop();
+            if (!visitor.test(node.element))
+                return false;
+            if (node.right != null) // Pushed first so the left subtree comes first
+                stack.push(node.right);
+            if (node.left != null)
+                stack.push(node.left);
+        }
+        return true;
+    }
+
+    /** Visit a subtree in postorder while visitor returns true */
+    protected boolean postorder(TreeNode<E> root, java.util.function.Predicate<? super E> visitor) {
+        java.util.ArrayDeque<TreeNode<E>> stack = new java.util.ArrayDeque<>();
+        TreeNode<E> current = root;
+        TreeNode<E> lastVisited = null;
+        while (current != null || !stack.isEmpty()) {
+            if (current != null) {
+                stack.push(current);
+                current = current.left;
+                continue;
+            }
+            TreeNode<E> node = stack.peek();
+            if (node.right != null && node.right != lastVisited) {
+                current = node.right; // Visit the right subtree before node
+            }
+            else {
+                stack.pop();
+                if (!visitor.test(node.element))
+                    return false;
+                lastVisited = node;
+            }
+        }
+        return true;
     }
 
     /** This inner class is static, because it does not access
@@ -137,10 +418,11 @@ public class BST<E extends Comparable<E>> implements Tree<E> {
 
         while (current != null) {
             list.add(current); // Add the node to the list
-            if (e.compareTo(current.element) < 0) {
+            int cmp = compare(e, current.element);
+            if (cmp < 0) {
                 current = current.left;
             }
-            else if (e.compareTo(current.element) > 0) {
+            else if (cmp > 0) {
                 current = current.right;
             }
             else
@@ -157,18 +439,23 @@ public class BST<E extends Comparable<E>> implements Tree<E> {
         // Locate the node to be deleted and also locate its parent node
         TreeNode<E> parent = null;
         TreeNode<E> current = root;
+        int compares = 0;
         while (current != null) {
-            if (e.compareTo(current.element) < 0) {
+            compares++;
+            int cmp = compare(e, current.element);
+            if (cmp < 0) {
                 parent = current;
                 current = current.left;
             }
-            else if (e.compareTo(current.element) > 0) {
+            else if (cmp > 0) {
                 parent = current;
                 current = current.right;
             }
             else
                 break; // Element is in the tree pointed at by current
         }
+        if (TreeMetrics.ENABLED)
+            TreeMetrics.recordDelete(compares);
 
         if (current == null)
             return false; // Element is not in the tree
@@ -180,7 +467,7 @@ public class BST<E extends Comparable<E>> implements Tree<E> {
                 root = current.right;
             }
             else {
-                if (e.compareTo(parent.element) < 0)
+                if (parent.left == current)
                     parent.left = current.right;
                 else
                     parent.right = current.right;
@@ -210,6 +497,7 @@ public class BST<E extends Comparable<E>> implements Tree<E> {
         }
 
         size--;
+        modCount++;
         return true; // Element deleted successfully
     }
 
@@ -224,50 +512,68 @@ public class BST<E extends Comparable<E>> implements Tree<E> {
 
     // Inner class InorderIterator
     private class InorderIterator implements java.util.Iterator<E> {
-        // Store the elements in a list
-        private java.util.ArrayList<E> list =
-                new java.util.ArrayList<>();
-        private int current = 0; // Index of next element in the iteration
+        // Nodes whose element and right subtree are still to be visited.
+        // The stack never holds more than one path, so it costs O(height).
+        private TreeNode<E> current = root;
+        private java.util.ArrayDeque<TreeNode<E>> stack =
+                new java.util.ArrayDeque<>();
+        private E lastReturned; // null if there is nothing to remove
+        private int expectedModCount = modCount;
 
         public InorderIterator() {
-            inorder(); // Traverse binary tree and store elements in list
         }
 
         public InorderIterator(int index) {
             if (index < 0 || index > size())
                 throw new IndexOutOfBoundsException();
-            inorder();
-            current = index;
-        }
-
-        /** Inorder traversal from the root*/
-        private void inorder() {
-            inorder(root);
-        }
-
-        /** Inorder traversal from a subtree */
-        private void inorder(TreeNode<E> root) {
-            if (root == null) return;
-            inorder(root.left);
-            list.add(root.element);
-            inorder(root.right);
+            // No subtree sizes in a plain BST, so step over the first index elements
+            for (int i = 0; i < index; i++)
+                next();
+            lastReturned = null;
         }
 
         @Override /** More elements for traversing? */
         public boolean hasNext() {
-            return current < list.size();
+            return current != null || !stack.isEmpty();
         }
 
         @Override /** Get the current element and move to the next */
         public E next() {
+            if (modCount != expectedModCount)
+                throw new java.util.ConcurrentModificationException();
             if (!hasNext())
                 throw new java.util.NoSuchElementException();
-            return list.get(current++);
+            while (current != null) { // Descend to the leftmost unvisited node
+                stack.push(current);
+                current = current.left;
+            }
+            TreeNode<E> node = stack.pop();
+            current = node.right;
+            lastReturned = node.element;
+            return lastReturned;
         }
 
         @Override /** Remove the element most recently returned */
         public void remove() {
-            throw new UnsupportedOperationException();
+            if (lastReturned == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new java.util.ConcurrentModificationException();
+            delete(lastReturned);
+            // The delete may have moved the nodes on our stack, so find our
+            // place again:  the path to the first element after lastReturned
+            stack.clear();
+            current = null;
+            for (TreeNode<E> node = root; node != null; ) {
+                if (compare(lastReturned, node.element) < 0) {
+                    stack.push(node);
+                    node = node.left;
+                }
+                else
+                    node = node.right;
+            }
+            lastReturned = null;
+            expectedModCount = modCount;
         }
     }
 
@@ -275,5 +581,6 @@ public class BST<E extends Comparable<E>> implements Tree<E> {
     public void clear() {
         root = null;
         size = 0;
+        modCount++;
     }
 }
@@ -0,0 +1,225 @@
+import java.util.concurrent.locks.StampedLock;
+
+/** A thread-safe AVL tree for read-mostly workloads.
+ *
+ * Writers take a StampedLock write lock and update an ordinary AVLTree.
+ * Readers take no lock at all:  they read the lock's version stamp, walk the
+ * tree, and accept the answer only if no writer ran meanwhile.  Otherwise
+ * they retry once under the read lock.  Readers write nothing to shared
+ * memory, so lookups scale with the number of cores while writes are rare.
+ *
+ * A reader that races a writer may see a half-updated tree:  a null element,
+ * or a link that leads back up the tree.  Such a walk is bounded by
+ * MAX_STEPS, its exceptions are caught, and its result is thrown away because
+ * the stamp no longer validates.
+ *
+ * Iterators are weakly consistent, as in ConcurrentSkipListSet:  they never
+ * throw ConcurrentModificationException and each next() finds the successor of
+ * the previous element in the current tree. */
+public class ConcurrentAVLTree<E> implements Tree<E> {
+    /** No AVL tree with fewer than 2^31 nodes is this deep,
+     * so a longer walk must have raced a writer */
+    private static final int MAX_STEPS = 64;
+
+    private final AVLTree<E> tree;
+    private final StampedLock lock = new StampedLock();
+
+    /** Create an empty tree ordered by the natural ordering of its elements */
+    public ConcurrentAVLTree() {
+        tree = new AVLTree<>();
+    }
+
+    /** Create an empty tree ordered by the specified comparator */
+    public ConcurrentAVLTree(java.util.Comparator<? super E> comparator) {
+        tree = new AVLTree<>(comparator);
+    }
+
+    /** Create a tree from an array of objects */
+    public ConcurrentAVLTree(E[] objects) {
+        tree = new AVLTree<>(objects);
+    }
+
+    /** Return the comparator ordering the elements, or null for their natural ordering */
+    public java.util.Comparator<? super E> comparator() {
+        return tree.comparator;
+    }
+
+    @Override /** Returns true if the element is in the tree */
+    public boolean search(E e) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                int found = walkSearch(e);
+                if (found >= 0 && lock.validate(stamp))
+                    return found == 1;
+            }
+            catch (RuntimeException ex) {
+                // Saw a half-updated tree:  fall back to the read lock
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return tree.search(e);
+        }
+        finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Search without locking.  Return 1 if e was found, 0 if not,
+     * and -1 if the walk was too long to be valid */
+    private int walkSearch(E e) {
+        BST.TreeNode<E> current = tree.root;
+        for (int steps = 0; current != null; steps++) {
+            if (steps == MAX_STEPS)
+                return -1;
+            int cmp = tree.compare(e, current.element);
+            if (cmp < 0)
+                current = current.left;
+            else if (cmp > 0)
+                current = current.right;
+            else
+                return 1;
+        }
+        return 0;
+    }
+
+    /** Return the smallest element greater than e, or the smallest element
+     * if e is null.  Return null if there is none */
+    private E higher(E e) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                BST.TreeNode<E> best = null;
+                BST.TreeNode<E> current = tree.root;
+                int steps = 0;
+                for (; current != null && steps < MAX_STEPS; steps++) {
+                    if (e == null || tree.compare(e, current.element) < 0) {
+                        best = current;
+                        current = current.left;
+                    }
+                    else
+                        current = current.right;
+                }
+                E result = (best == null) ? null : best.element;
+                if (steps < MAX_STEPS && lock.validate(stamp))
+                    return result;
+            }
+            catch (RuntimeException ex) {
+                // Saw a half-updated tree:  fall back to the read lock
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            if (tree.isEmpty())
+                return null;
+            return (e == null) ? tree.first() : tree.higher(e);
+        }
+        finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override /** Insert an element and rebalance if necessary */
+    public boolean insert(E e) {
+        long stamp = lock.writeLock();
+        try {
+            return tree.insert(e);
+        }
+        finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override /** Delete an element from the tree */
+    public boolean delete(E e) {
+        long stamp = lock.writeLock();
+        try {
+            return tree.delete(e);
+        }
+        finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override /** Get the number of nodes in the tree */
+    public int getSize() {
+        long stamp = lock.tryOptimisticRead();
+        int size = tree.size;
+        if (lock.validate(stamp))
+            return size;
+
+        stamp = lock.readLock();
+        try {
+            return tree.size;
+        }
+        finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override /** Remove all elements from the tree */
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            tree.clear();
+        }
+        finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override /** Obtain a weakly consistent iterator in ascending order */
+    public java.util.Iterator<E> iterator() {
+        return new java.util.Iterator<E>() {
+            private E next = higher(null);
+            private E lastReturned;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public E next() {
+                if (next == null)
+                    throw new java.util.NoSuchElementException();
+                lastReturned = next;
+                next = higher(lastReturned);
+                return lastReturned;
+            }
+
+            @Override /** Remove the element most recently returned */
+            public void remove() {
+                if (lastReturned == null)
+                    throw new IllegalStateException();
+                delete(lastReturned);
+                lastReturned = null;
+            }
+        };
+    }
+
+    @Override /** Copy the elements while holding the read lock */
+    public Object[] toArray() {
+        long stamp = lock.readLock();
+        try {
+            return tree.toArray();
+        }
+        finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override /** Copy the elements while holding the read lock */
+    public <T> T[] toArray(T[] array) {
+        long stamp = lock.readLock();
+        try {
+            return tree.toArray(array);
+        }
+        finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
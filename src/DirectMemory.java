@@ -0,0 +1,45 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/** Releases direct and mapped ByteBuffers without waiting for the GC.
+ * The JDK only frees such a buffer once it has been garbage collected, unless
+ * sun.misc.Unsafe.invokeCleaner is used.  That method is looked up reflectively.
+ * If it is missing, free() does nothing and the GC releases the memory later */
+final class DirectMemory {
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        }
+        catch (ReflectiveOperationException | RuntimeException ex) {
+            // Not available:  fall back to the GC
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private DirectMemory() {
+    }
+
+    /** Release the memory of a direct or mapped buffer.  The buffer, and every
+     * view of it, must not be touched afterwards */
+    static void free(ByteBuffer buffer) {
+        if (INVOKE_CLEANER == null || buffer == null || !buffer.isDirect())
+            return;
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        }
+        catch (ReflectiveOperationException | RuntimeException ex) {
+            // Leave it to the GC
+        }
+    }
+}
@@ -0,0 +1,474 @@
+import java.util.NoSuchElementException;
+
+/** An AVL tree of int keys.  Keys are stored unboxed in the nodes and compared
+ * unboxed, in their natural order or by an IntComparator, so no Integer is created
+ * per element or per lookup.
+ * Like AVLTreeWithFastIterator, every node keeps the size of its subtree,
+ * so iterator(int), get(int) and rank(int) take O(log n) time.
+ * LongAVLTree is the same code for long keys.  The copies are deliberate, since a
+ * shared generic version would box its keys, so a fix to one belongs in both. */
+public class IntAVLTree {
+    /** An AVL tree of height h has at least fib(h + 3) - 1 nodes,
+     * so no tree with fewer than 2^31 nodes is taller than this */
+    private static final int MAX_HEIGHT = 48;
+
+    protected AVLTreeNode root;
+    protected int size = 0;
+    /** Nodes on the path of the current insert or delete, reused between calls */
+    private AVLTreeNode[] ancestors = new AVLTreeNode[MAX_HEIGHT];
+    /** The order of the keys, or null for their natural order */
+    private final IntComparator comparator;
+
+    /** Create an empty AVL tree */
+    public IntAVLTree() {
+        comparator = null;
+    }
+
+    /** Create an empty AVL tree ordered by the specified comparator.
+     * A null comparator means the natural order of the keys */
+    public IntAVLTree(IntComparator comparator) {
+        this.comparator = comparator;
+    }
+
+    /** Create an AVL tree from an array of keys */
+    public IntAVLTree(int[] keys) {
+        comparator = null;
+        for (int key : keys)
+            insert(key);
+    }
+
+    /** Return true if the key is in the tree */
+    public boolean search(int key) {
+        AVLTreeNode current = root; // Start from the root
+
+        while (current != null) {
+            int cmp = compare(key, current.element);
+            if (cmp < 0) {
+                current = current.left;
+            }
+            else if (cmp > 0) {
+                current = current.right;
+            }
+            else
+                return true; // key is found
+        }
+
+        return false;
+    }
+
+    /** Insert a key and rebalance if necessary.
+     * Return true if the key is inserted successfully */
+    public boolean insert(int key) {
+        if (root == null) {
+            root = new AVLTreeNode(key); // Create a new root
+            size++;
+            return true;
+        }
+
+        // Locate the parent node, remembering the path for rebalancing
+        AVLTreeNode[] path = ancestors;
+        int depth = 0;
+        AVLTreeNode current = root;
+        int cmp = 0;
+        while (current != null) {
+            path[depth++] = current;
+            cmp = compare(key, current.element);
+            if (cmp < 0)
+                current = current.left;
+            else if (cmp > 0)
+                current = current.right;
+            else {
+                java.util.Arrays.fill(path, 0, depth, null);
+                return false; // Duplicate key not inserted
+            }
+        }
+
+        // Create the new node and attach it to the parent node
+        AVLTreeNode parent = path[depth - 1];
+        if (cmp < 0)
+            parent.left = new AVLTreeNode(key);
+        else
+            parent.right = new AVLTreeNode(key);
+
+        size++;
+        balancePath(path, depth, +1);
+        return true; // key is inserted
+    }
+
+    /** Delete a key from the tree.
+     * Return true if the key is deleted successfully
+     * Return false if the key is not in the tree */
+    public boolean delete(int key) {
+        // Locate the node to be deleted, remembering its ancestors
+        AVLTreeNode[] path = ancestors;
+        int depth = 0;
+        AVLTreeNode current = root;
+        int cmp;
+        while (current != null && (cmp = compare(key, current.element)) != 0) {
+            path[depth++] = current;
+            current = (cmp < 0) ? current.left : current.right;
+        }
+
+        if (current == null) {
+            java.util.Arrays.fill(path, 0, depth, null);
+            return false; // key is not in the tree
+        }
+
+        // Case 1: current has no left children
+        if (current.left == null) {
+            // Connect the parent with the right child of the current node
+            if (depth == 0) {
+                root = current.right;
+            }
+            else {
+                AVLTreeNode parent = path[depth - 1];
+                if (parent.left == current)
+                    parent.left = current.right;
+                else
+                    parent.right = current.right;
+
+                balancePath(path, depth, -1);
+            }
+        }
+        else {
+            // Case 2: The current node has a left child
+            // Replace its key by the largest key in its left subtree
+            // and unlink the node that held that key
+            path[depth++] = current;
+            AVLTreeNode parentOfRightMost = current;
+            AVLTreeNode rightMost = current.left;
+            while (rightMost.right != null) {
+                parentOfRightMost = rightMost;
+                path[depth++] = rightMost;
+                rightMost = rightMost.right; // Keep going to the right
+            }
+
+            current.element = rightMost.element;
+
+            if (parentOfRightMost.right == rightMost)
+                parentOfRightMost.right = rightMost.left;
+            else
+                // Special case: parentOfRightMost is current
+                parentOfRightMost.left = rightMost.left;
+
+            balancePath(path, depth, -1);
+        }
+
+        size--;
+        return true; // key is deleted
+    }
+
+    /** Get the number of nodes in the tree */
+    public int getSize() {
+        return size;
+    }
+
+    /** Get the number of nodes in the tree */
+    public int size() {
+        return size;
+    }
+
+    /** Return true if the tree is empty */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Remove all keys from the tree */
+    public void clear() {
+        root = null;
+        size = 0;
+    }
+
+    /** Return the key at the specified position in sorted order */
+    public int get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+        AVLTreeNode current = root;
+        while (true) {
+            int leftSize = sizeOf(current.left);
+            if (index < leftSize) {
+                current = current.left;
+            }
+            else if (index > leftSize) {
+                index -= leftSize + 1; // Skip the left subtree and current
+                current = current.right;
+            }
+            else
+                return current.element;
+        }
+    }
+
+    /** Return the number of keys in the tree that are ordered before key */
+    public int rank(int key) {
+        int rank = 0;
+        AVLTreeNode current = root;
+        while (current != null) {
+            int cmp = compare(key, current.element);
+            if (cmp < 0) {
+                current = current.left;
+            }
+            else {
+                rank += sizeOf(current.left);
+                if (cmp == 0)
+                    break;
+                rank++; // current is less than key too
+                current = current.right;
+            }
+        }
+        return rank;
+    }
+
+    /** Return the comparator that orders the keys, or null for their natural order */
+    public IntComparator comparator() {
+        return comparator;
+    }
+
+    /** Compare two keys with one three-way comparison */
+    private int compare(int a, int b) {
+        return (comparator == null) ? Integer.compare(a, b) : comparator.compare(a, b);
+    }
+
+    /** Visit the keys in sorted order while visitor returns true.
+     * Return true if every key was visited.  Nothing is allocated per key */
+    public boolean inorder(java.util.function.IntPredicate visitor) {
+        AVLTreeNode[] stack = new AVLTreeNode[MAX_HEIGHT];
+        int top = 0; // Number of nodes on the stack
+        AVLTreeNode current = root;
+        while (current != null || top > 0) {
+            while (current != null) { // Descend to the leftmost unvisited node
+                stack[top++] = current;
+                current = current.left;
+            }
+            AVLTreeNode node = stack[--top];
+            if (!visitor.test(node.element))
+                return false;
+            current = node.right;
+        }
+        return true;
+    }
+
+    /** Visit the keys k with lo <= k < hi in order, while visitor returns true.
+     * Return true if every key in the range was visited */
+    public boolean forEachInRange(int lo, int hi, java.util.function.IntPredicate visitor) {
+        if (compare(lo, hi) > 0)
+            throw new IllegalArgumentException("lo > hi");
+        AVLTreeNode[] stack = new AVLTreeNode[MAX_HEIGHT];
+        int top = 0;
+        // Stack the path to the first key at or after lo
+        for (AVLTreeNode current = root; current != null; ) {
+            if (compare(current.element, lo) >= 0) {
+                stack[top++] = current;
+                current = current.left;
+            }
+            else
+                current = current.right;
+        }
+        while (top > 0) {
+            AVLTreeNode node = stack[--top];
+            if (compare(node.element, hi) >= 0)
+                return true; // Everything after it is out of range too
+            if (!visitor.test(node.element))
+                return false;
+            for (AVLTreeNode current = node.right; current != null; current = current.left)
+                stack[top++] = current;
+        }
+        return true;
+    }
+
+    /** Perform the action on each key in sorted order */
+    public void forEach(java.util.function.IntConsumer action) {
+        java.util.Objects.requireNonNull(action);
+        inorder(key -> {
+            action.accept(key);
+            return true;
+        });
+    }
+
+    /** Obtain an iterator over the keys in sorted order */
+    public java.util.PrimitiveIterator.OfInt iterator() {
+        return new InorderIterator(0);
+    }
+
+    /** Obtain an iterator that starts at the specified position */
+    public java.util.PrimitiveIterator.OfInt iterator(int index) {
+        return new InorderIterator(index);
+    }
+
+    /** Returns the root of the tree */
+    public AVLTreeNode getRoot() {
+        return root;
+    }
+
+    private static int sizeOf(AVLTreeNode node) {
+        return (node == null) ? 0 : node.size;
+    }
+
+    private static int heightOf(AVLTreeNode node) {
+        return (node == null) ? -1 : node.height;
+    }
+
+    /** Update the height and size of a specified node */
+    private static void updateHeightAndSize(AVLTreeNode node) {
+        node.height = 1 + Math.max(heightOf(node.left), heightOf(node.right));
+        node.size = 1 + sizeOf(node.left) + sizeOf(node.right);
+    }
+
+    /** Return the balance factor of the node */
+    private static int balanceFactor(AVLTreeNode node) {
+        return heightOf(node.right) - heightOf(node.left);
+    }
+
+    /** Balance the nodes path[depth - 1] up to path[0] after their subtrees
+     * changed size by sizeChange.  Once a subtree is as tall as it was before,
+     * the nodes above it only need their sizes adjusted */
+    private void balancePath(AVLTreeNode[] path, int depth, int sizeChange) {
+        boolean heightMayChange = true;
+        for (int i = depth - 1; i >= 0; i--) {
+            AVLTreeNode A = path[i];
+            path[i] = null; // Do not keep deleted or moved nodes reachable
+            if (!heightMayChange) {
+                A.size += sizeChange;
+                continue;
+            }
+
+            int oldHeight = A.height;
+            updateHeightAndSize(A);
+            AVLTreeNode parentOfA = (i == 0) ? null : path[i - 1];
+            AVLTreeNode subtreeRoot = A;
+            switch (balanceFactor(A)) {
+                case -2:
+                    if (balanceFactor(A.left) <= 0)
+                        subtreeRoot = balanceLL(A, parentOfA); // Perform LL rotation
+                    else
+                        subtreeRoot = balanceLR(A, parentOfA); // Perform LR rotation
+                    break;
+                case +2:
+                    if (balanceFactor(A.right) >= 0)
+                        subtreeRoot = balanceRR(A, parentOfA); // Perform RR rotation
+                    else
+                        subtreeRoot = balanceRL(A, parentOfA); // Perform RL rotation
+            }
+            heightMayChange = subtreeRoot.height != oldHeight;
+        }
+    }
+
+    /** Make B take A's place under parentOfA */
+    private void replaceChild(AVLTreeNode A, AVLTreeNode parentOfA, AVLTreeNode B) {
+        if (parentOfA == null)
+            root = B;
+        else if (parentOfA.left == A)
+            parentOfA.left = B;
+        else
+            parentOfA.right = B;
+    }
+
+    /** Balance LL and return the new subtree root */
+    private AVLTreeNode balanceLL(AVLTreeNode A, AVLTreeNode parentOfA) {
+        AVLTreeNode B = A.left; // A is left-heavy and B is left-heavy
+        replaceChild(A, parentOfA, B);
+        A.left = B.right; // Make T2 the left subtree of A
+        B.right = A; // Make A the left child of B
+        updateHeightAndSize(A);
+        updateHeightAndSize(B);
+        return B;
+    }
+
+    /** Balance LR and return the new subtree root */
+    private AVLTreeNode balanceLR(AVLTreeNode A, AVLTreeNode parentOfA) {
+        AVLTreeNode B = A.left; // A is left-heavy
+        AVLTreeNode C = B.right; // B is right-heavy
+        replaceChild(A, parentOfA, C);
+        A.left = C.right; // Make T3 the left subtree of A
+        B.right = C.left; // Make T2 the right subtree of B
+        C.left = B;
+        C.right = A;
+        updateHeightAndSize(A);
+        updateHeightAndSize(B);
+        updateHeightAndSize(C);
+        return C;
+    }
+
+    /** Balance RR and return the new subtree root */
+    private AVLTreeNode balanceRR(AVLTreeNode A, AVLTreeNode parentOfA) {
+        AVLTreeNode B = A.right; // A is right-heavy and B is right-heavy
+        replaceChild(A, parentOfA, B);
+        A.right = B.left; // Make T2 the right subtree of A
+        B.left = A;
+        updateHeightAndSize(A);
+        updateHeightAndSize(B);
+        return B;
+    }
+
+    /** Balance RL and return the new subtree root */
+    private AVLTreeNode balanceRL(AVLTreeNode A, AVLTreeNode parentOfA) {
+        AVLTreeNode B = A.right; // A is right-heavy
+        AVLTreeNode C = B.left; // B is left-heavy
+        replaceChild(A, parentOfA, C);
+        A.right = C.left; // Make T2 the right subtree of A
+        B.left = C.right; // Make T3 the left subtree of B
+        C.left = A;
+        C.right = B;
+        updateHeightAndSize(A);
+        updateHeightAndSize(B);
+        updateHeightAndSize(C);
+        return C;
+    }
+
+    /** Iterates in ascending order.  The stack holds the nodes still to be visited
+     * on one root-to-node path, the next one on top */
+    private class InorderIterator implements java.util.PrimitiveIterator.OfInt {
+        private AVLTreeNode[] stack = new AVLTreeNode[MAX_HEIGHT];
+        private int top = 0; // Number of nodes on the stack
+
+        InorderIterator(int index) {
+            if (index < 0 || index > size)
+                throw new IndexOutOfBoundsException();
+
+            // Descend to the node at index, stacking the nodes we pass on their left
+            AVLTreeNode current = root;
+            while (current != null) {
+                int leftSize = sizeOf(current.left);
+                if (index <= leftSize) {
+                    stack[top++] = current;
+                    if (index == leftSize)
+                        break;
+                    current = current.left;
+                }
+                else {
+                    index -= leftSize + 1;
+                    current = current.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return top > 0;
+        }
+
+        @Override
+        public int nextInt() {
+            if (top == 0)
+                throw new NoSuchElementException();
+            AVLTreeNode node = stack[--top];
+            stack[top] = null;
+            for (AVLTreeNode n = node.right; n != null; n = n.left)
+                stack[top++] = n;
+            return node.element;
+        }
+    }
+
+    /** A node holding an unboxed key, its subtree height and its subtree size */
+    protected static class AVLTreeNode {
+        protected int element;
+        protected AVLTreeNode left;
+        protected AVLTreeNode right;
+        protected int height = 0;
+        protected int size = 1;
+
+        public AVLTreeNode(int e) {
+            element = e;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+/** A comparison function for int keys, used like java.util.Comparator
+ * but without boxing each key */
+@FunctionalInterface
+public interface IntComparator {
+    /** Return a negative number, zero or a positive number as a is ordered
+     * before, equal to or after b */
+    int compare(int a, int b);
+
+    /** Return a comparator that imposes the reverse order */
+    default IntComparator reversed() {
+        return (a, b) -> compare(b, a);
+    }
+}
@@ -0,0 +1,187 @@
+import java.util.NoSuchElementException;
+
+/** An AVL tree of closed intervals [start, end], ordered by start and then by
+ * end, in which every node keeps the greatest end of its subtree.  The
+ * greatest end is the tree's aggregate, so the AVL rotations, deletes and
+ * bulk operations maintain it as they do any AugmentedAVLTree aggregate.
+ *
+ * Stabbing and overlap queries return their intervals lazily, in order, as
+ * an iterator or a stream.  A query descends only into subtrees whose
+ * greatest end reaches the query range and stops at the first interval that
+ * starts after it, so reporting k intervals visits O(log n + k log(n / k))
+ * nodes:  O(log n) for a small k, and never more than O(n).
+ * A query fails fast:  once the tree is modified, its iterator throws
+ * ConcurrentModificationException. */
+public class IntervalTree<T extends Comparable<? super T>>
+        extends AugmentedAVLTree<IntervalTree.Interval<T>, T> {
+    /** Create an empty interval tree */
+    public IntervalTree() {
+        super(null, Interval::getEnd, IntervalTree::max);
+    }
+
+    /** The greater of two ends.  null is the identity, the end of no intervals */
+    private static <T extends Comparable<? super T>> T max(T a, T b) {
+        if (a == null)
+            return b;
+        if (b == null)
+            return a;
+        return (a.compareTo(b) >= 0) ? a : b;
+    }
+
+    /** Insert the interval [start, end].  Return false if it is already in the tree */
+    public boolean insert(T start, T end) {
+        return insert(new Interval<>(start, end));
+    }
+
+    /** Delete the interval [start, end].  Return false if it is not in the tree */
+    public boolean delete(T start, T end) {
+        return delete(new Interval<>(start, end));
+    }
+
+    /** Return the intervals that contain point, in order */
+    public java.util.Iterator<Interval<T>> stabbingIterator(T point) {
+        return overlapIterator(point, point);
+    }
+
+    /** Return the intervals that share at least one point with [lo, hi], in order */
+    public java.util.Iterator<Interval<T>> overlapIterator(T lo, T hi) {
+        if (lo.compareTo(hi) > 0)
+            throw new IllegalArgumentException("lo > hi");
+        return new OverlapIterator(lo, hi);
+    }
+
+    /** Return a lazy stream of the intervals that contain point */
+    public java.util.stream.Stream<Interval<T>> stabbing(T point) {
+        return stream(stabbingIterator(point));
+    }
+
+    /** Return a lazy stream of the intervals that share at least one point with [lo, hi] */
+    public java.util.stream.Stream<Interval<T>> overlapping(T lo, T hi) {
+        return stream(overlapIterator(lo, hi));
+    }
+
+    private static <T> java.util.stream.Stream<T> stream(java.util.Iterator<T> iterator) {
+        return java.util.stream.StreamSupport.stream(java.util.Spliterators.spliteratorUnknownSize(iterator,
+                java.util.Spliterator.ORDERED | java.util.Spliterator.DISTINCT | java.util.Spliterator.NONNULL), false);
+    }
+
+    /** Return the greatest end in a subtree, or null if it is empty */
+    @SuppressWarnings("unchecked")
+    private T maxEnd(TreeNode<Interval<T>> node) {
+        return (node == null) ? null : ((AugmentedNode<Interval<T>, T>)node).aggregate;
+    }
+
+    /** An inorder walk that skips every subtree ending before lo and
+     * stops at the first interval starting after hi */
+    private class OverlapIterator implements java.util.Iterator<Interval<T>> {
+        private final T lo, hi;
+        // Nodes whose interval and right subtree are still to be visited
+        private final java.util.ArrayDeque<TreeNode<Interval<T>>> stack = new java.util.ArrayDeque<>();
+        private Interval<T> next; // The next interval to return, or null at the end
+        private final int expectedModCount = modCount;
+
+        OverlapIterator(T lo, T hi) {
+            this.lo = lo;
+            this.hi = hi;
+            pushLeft(root);
+            advance();
+        }
+
+        /** Push the left spine of a subtree, as far as its subtrees reach lo */
+        private void pushLeft(TreeNode<Interval<T>> current) {
+            while (current != null && maxEnd(current).compareTo(lo) >= 0) {
+                stack.push(current);
+                current = current.left;
+            }
+        }
+
+        /** Find the next overlapping interval */
+        private void advance() {
+            next = null;
+            while (!stack.isEmpty()) {
+                TreeNode<Interval<T>> node = stack.pop();
+                Interval<T> interval = node.element;
+                if (interval.start.compareTo(hi) > 0) {
+                    stack.clear(); // It and everything after it start too late
+                    return;
+                }
+                pushLeft(node.right);
+                if (interval.end.compareTo(lo) >= 0) {
+                    next = interval;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Interval<T> next() {
+            if (modCount != expectedModCount)
+                throw new java.util.ConcurrentModificationException();
+            if (next == null)
+                throw new NoSuchElementException();
+            Interval<T> result = next;
+            advance();
+            return result;
+        }
+    }
+
+    /** A closed interval [start, end], ordered by start and then by end */
+    public static final class Interval<T extends Comparable<? super T>> implements Comparable<Interval<T>> {
+        private final T start;
+        private final T end;
+
+        public Interval(T start, T end) {
+            if (start.compareTo(end) > 0)
+                throw new IllegalArgumentException("start > end: [" + start + ", " + end + "]");
+            this.start = start;
+            this.end = end;
+        }
+
+        public T getStart() {
+            return start;
+        }
+
+        public T getEnd() {
+            return end;
+        }
+
+        /** Return true if the interval contains point */
+        public boolean contains(T point) {
+            return start.compareTo(point) <= 0 && end.compareTo(point) >= 0;
+        }
+
+        /** Return true if this interval and [lo, hi] share at least one point */
+        public boolean overlaps(T lo, T hi) {
+            return start.compareTo(hi) <= 0 && end.compareTo(lo) >= 0;
+        }
+
+        @Override
+        public int compareTo(Interval<T> other) {
+            int cmp = start.compareTo(other.start);
+            return (cmp != 0) ? cmp : end.compareTo(other.end);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Interval))
+                return false;
+            Interval<?> other = (Interval<?>)o;
+            return start.equals(other.start) && end.equals(other.end);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * start.hashCode() + end.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "[" + start + ", " + end + "]";
+        }
+    }
+}
@@ -0,0 +1,13 @@
+/** A comparison function for long keys, used like java.util.Comparator
+ * but without boxing each key */
+@FunctionalInterface
+public interface LongComparator {
+    /** Return a negative number, zero or a positive number as a is ordered
+     * before, equal to or after b */
+    int compare(long a, long b);
+
+    /** Return a comparator that imposes the reverse order */
+    default LongComparator reversed() {
+        return (a, b) -> compare(b, a);
+    }
+}
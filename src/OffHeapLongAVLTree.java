@@ -0,0 +1,682 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+/** An AVL tree of long keys whose nodes live outside the Java heap, in direct
+ * ByteBuffers, so even a tree of hundreds of millions of keys adds nothing to
+ * GC pause times.  It works like PooledIntAVLTree:  a node is an int index,
+ * index 0 is a null sentinel, and deleted slots are reused through a free list.
+ *
+ * Each node is a fixed-width record of NODE_BYTES bytes:
+ *     key (long) | left (int) | right (int) | size (int) | height (byte) | padding
+ * Records are stored in chunks of CHUNK_NODES nodes, which are allocated as the
+ * tree grows, so no single buffer runs into the 2 GB ByteBuffer limit.
+ *
+ * The memory belongs to the tree until close() is called.  close() releases it
+ * immediately where the JVM allows that, and any later use of the tree throws
+ * IllegalStateException.  The class is not thread-safe.
+ *
+ * A tree created with open(Path) keeps its chunks in a memory-mapped file instead.
+ * Reopening the file maps the chunks without reading them, so it takes the same
+ * few milliseconds whatever the tree's size, and the OS pages nodes in as they
+ * are touched.  The file is a HEADER_BYTES header followed by the chunks, all
+ * little-endian:
+ *     0  magic "AVLTREE1" (long)    20 root (int)
+ *     8  format version (int)       24 number of keys (int)
+ *    12  NODE_BYTES (int)           28 slots handed out (int)
+ *    16  CHUNK_NODES (int)          32 free list head (int)
+ *                                   36 number of chunks (int)
+ *                                   40 clean flag (byte)
+ * The clean flag is cleared by the first change after open() or flush() and
+ * set again by flush() and close().  A file that was not closed cleanly may
+ * hold a half-finished update, so open() refuses it. */
+public class OffHeapLongAVLTree implements AutoCloseable {
+    /** An AVL tree of height h has at least fib(h + 3) - 1 nodes,
+     * so no tree with fewer than 2^31 nodes is taller than this */
+    private static final int MAX_HEIGHT = 48;
+    private static final int NIL = 0;
+
+    static final int NODE_BYTES = 24;
+    private static final int KEY = 0;
+    private static final int LEFT = 8;
+    private static final int RIGHT = 12;
+    private static final int SIZE = 16;
+    private static final int HEIGHT = 20;
+
+    private static final int CHUNK_SHIFT = 20;
+    static final int CHUNK_NODES = 1 << CHUNK_SHIFT; // 24 MB per chunk
+    private static final int CHUNK_MASK = CHUNK_NODES - 1;
+
+    static final int HEADER_BYTES = 4096; // Keeps the chunks page-aligned in the file
+    private static final long MAGIC = 0x31454552544c5641L; // "AVLTREE1", little-endian
+    private static final int VERSION = 1;
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 8;
+    private static final int H_NODE_BYTES = 12;
+    private static final int H_CHUNK_NODES = 16;
+    private static final int H_ROOT = 20;
+    private static final int H_COUNT = 24;
+    private static final int H_USED = 28;
+    private static final int H_FREE_LIST = 32;
+    private static final int H_NUM_CHUNKS = 36;
+    private static final int H_CLEAN = 40;
+
+    private final FileChannel channel; // null unless the tree is file-backed
+    private final MappedByteBuffer header;
+    private boolean dirty = false; // Changed since the header was last written
+    private ByteBuffer[] chunks = new ByteBuffer[4];
+    private int numChunks = 0;
+    private int root = NIL;
+    private int count = 0; // Number of nodes in the tree
+    private int used = 1; // Slots below this index have been handed out; slot 0 is NIL
+    private int freeList = NIL; // First reusable slot, chained through left
+    private boolean closed = false;
+    /** Nodes on the path of the current insert or delete, reused between calls */
+    private int[] ancestors = new int[MAX_HEIGHT];
+
+    /** Create an empty off-heap AVL tree.  Call close() to release its memory */
+    public OffHeapLongAVLTree() {
+        channel = null;
+        header = null;
+        addChunk();
+        setHeight(NIL, -1);
+    }
+
+    private OffHeapLongAVLTree(FileChannel channel, MappedByteBuffer header) {
+        this.channel = channel;
+        this.header = header;
+    }
+
+    /** Open the tree stored in file, or create an empty one if the file does not
+     * exist or is empty.  Changes are written to the file; call flush() to make
+     * them durable and close() when done */
+    public static OffHeapLongAVLTree open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try {
+            boolean isNew = channel.size() == 0;
+            if (!isNew && channel.size() < HEADER_BYTES)
+                throw new IOException(file + " is not an AVL tree file");
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            OffHeapLongAVLTree tree = new OffHeapLongAVLTree(channel, header);
+            if (isNew) {
+                tree.addChunk();
+                tree.setHeight(NIL, -1);
+                tree.writeHeader();
+            }
+            else
+                tree.readHeader(file);
+            return tree;
+        }
+        catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private void readHeader(Path file) throws IOException {
+        if (header.getLong(H_MAGIC) != MAGIC)
+            throw new IOException(file + " is not an AVL tree file");
+        if (header.getInt(H_VERSION) != VERSION || header.getInt(H_NODE_BYTES) != NODE_BYTES
+                || header.getInt(H_CHUNK_NODES) != CHUNK_NODES)
+            throw new IOException(file + " has an unsupported format version");
+        if (header.get(H_CLEAN) != 1)
+            throw new IOException(file + " was not closed cleanly");
+        int fileChunks = header.getInt(H_NUM_CHUNKS);
+        if (channel.size() < HEADER_BYTES + (long)fileChunks * CHUNK_NODES * NODE_BYTES)
+            throw new IOException(file + " is truncated");
+        for (int i = 0; i < fileChunks; i++)
+            addChunk();
+        root = header.getInt(H_ROOT);
+        count = header.getInt(H_COUNT);
+        used = header.getInt(H_USED);
+        freeList = header.getInt(H_FREE_LIST);
+    }
+
+    private void writeHeader() {
+        header.putLong(H_MAGIC, MAGIC);
+        header.putInt(H_VERSION, VERSION);
+        header.putInt(H_NODE_BYTES, NODE_BYTES);
+        header.putInt(H_CHUNK_NODES, CHUNK_NODES);
+        header.putInt(H_ROOT, root);
+        header.putInt(H_COUNT, count);
+        header.putInt(H_USED, used);
+        header.putInt(H_FREE_LIST, freeList);
+        header.putInt(H_NUM_CHUNKS, numChunks);
+        header.put(H_CLEAN, (byte)1);
+    }
+
+    /** Note in the file that it is about to change */
+    private void markDirty() {
+        if (!dirty && header != null) {
+            dirty = true;
+            header.put(H_CLEAN, (byte)0);
+            header.force();
+        }
+    }
+
+    /** Write all changes of a file-backed tree to disk.  Does nothing for a tree
+     * that lives in memory */
+    public void flush() {
+        ensureOpen();
+        if (header == null)
+            return;
+        for (int i = 0; i < numChunks; i++)
+            ((MappedByteBuffer)chunks[i]).force();
+        writeHeader();
+        header.force();
+        dirty = false;
+    }
+
+    /** Return true if the tree is stored in a file */
+    public boolean isFileBacked() {
+        return channel != null;
+    }
+
+    // Record accessors.  A node's chunk is its high bits, its record its low bits.
+
+    private ByteBuffer chunk(int node) {
+        return chunks[node >>> CHUNK_SHIFT];
+    }
+
+    private static int offset(int node) {
+        return (node & CHUNK_MASK) * NODE_BYTES;
+    }
+
+    private long key(int node) {
+        return chunk(node).getLong(offset(node) + KEY);
+    }
+
+    private int left(int node) {
+        return chunk(node).getInt(offset(node) + LEFT);
+    }
+
+    private int right(int node) {
+        return chunk(node).getInt(offset(node) + RIGHT);
+    }
+
+    private int size(int node) {
+        return chunk(node).getInt(offset(node) + SIZE);
+    }
+
+    private int height(int node) {
+        return chunk(node).get(offset(node) + HEIGHT);
+    }
+
+    private void setKey(int node, long key) {
+        chunk(node).putLong(offset(node) + KEY, key);
+    }
+
+    private void setLeft(int node, int child) {
+        chunk(node).putInt(offset(node) + LEFT, child);
+    }
+
+    private void setRight(int node, int child) {
+        chunk(node).putInt(offset(node) + RIGHT, child);
+    }
+
+    private void setSize(int node, int size) {
+        chunk(node).putInt(offset(node) + SIZE, size);
+    }
+
+    private void setHeight(int node, int height) {
+        chunk(node).put(offset(node) + HEIGHT, (byte)height);
+    }
+
+    private void addChunk() {
+        if (numChunks == chunks.length)
+            chunks = java.util.Arrays.copyOf(chunks, 2 * numChunks);
+        ByteBuffer chunk;
+        if (channel == null)
+            chunk = ByteBuffer.allocateDirect(CHUNK_NODES * NODE_BYTES);
+        else {
+            try {
+                // Mapping past the end of the file extends it
+                chunk = channel.map(FileChannel.MapMode.READ_WRITE,
+                        HEADER_BYTES + (long)numChunks * CHUNK_NODES * NODE_BYTES,
+                        CHUNK_NODES * NODE_BYTES);
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        chunks[numChunks++] = chunk.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** Return a slot for a new leaf holding key */
+    private int newNode(long key) {
+        int node;
+        if (freeList != NIL) {
+            node = freeList;
+            freeList = left(node);
+        }
+        else {
+            if (used == Integer.MAX_VALUE)
+                throw new IllegalStateException("Tree is full");
+            if (used == numChunks << CHUNK_SHIFT)
+                addChunk();
+            node = used++;
+        }
+        setKey(node, key);
+        setLeft(node, NIL);
+        setRight(node, NIL);
+        setSize(node, 1);
+        setHeight(node, 0);
+        return node;
+    }
+
+    /** Put a deleted node's slot on the free list */
+    private void freeNode(int node) {
+        setLeft(node, freeList);
+        freeList = node;
+    }
+
+    private void ensureOpen() {
+        if (closed)
+            throw new IllegalStateException("Tree is closed");
+    }
+
+    /** Release the off-heap memory.  A file-backed tree is flushed first and its
+     * file closed.  The tree cannot be used afterwards */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        try {
+            if (channel != null)
+                flush();
+        }
+        finally {
+            closed = true;
+            for (int i = 0; i < numChunks; i++) {
+                DirectMemory.free(chunks[i]);
+                chunks[i] = null;
+            }
+            numChunks = 0;
+            root = NIL;
+            count = 0;
+            if (channel != null) {
+                DirectMemory.free(header);
+                try {
+                    channel.close();
+                }
+                catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        }
+    }
+
+    /** Return true if close() has been called */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /** Return the number of bytes of off-heap memory (or file) reserved for nodes */
+    public long offHeapBytes() {
+        return (long)numChunks * CHUNK_NODES * NODE_BYTES;
+    }
+
+    /** Return true if the key is in the tree */
+    public boolean search(long key) {
+        ensureOpen();
+        int current = root; // Start from the root
+
+        while (current != NIL) {
+            long element = key(current);
+            if (key < element) {
+                current = left(current);
+            }
+            else if (key > element) {
+                current = right(current);
+            }
+            else
+                return true; // key is found
+        }
+
+        return false;
+    }
+
+    /** Insert a key and rebalance if necessary.
+     * Return true if the key is inserted successfully */
+    public boolean insert(long key) {
+        ensureOpen();
+        markDirty();
+        if (root == NIL) {
+            root = newNode(key); // Create a new root
+            count++;
+            return true;
+        }
+
+        // Locate the parent node, remembering the path for rebalancing
+        int[] path = ancestors;
+        int depth = 0;
+        int current = root;
+        long element = 0;
+        while (current != NIL) {
+            path[depth++] = current;
+            element = key(current);
+            if (key < element)
+                current = left(current);
+            else if (key > element)
+                current = right(current);
+            else
+                return false; // Duplicate key not inserted
+        }
+
+        // Create the new node and attach it to the parent node
+        int parent = path[depth - 1];
+        int node = newNode(key);
+        if (key < element)
+            setLeft(parent, node);
+        else
+            setRight(parent, node);
+
+        count++;
+        balancePath(path, depth, +1);
+        return true; // key is inserted
+    }
+
+    /** Delete a key from the tree.
+     * Return true if the key is deleted successfully
+     * Return false if the key is not in the tree */
+    public boolean delete(long key) {
+        ensureOpen();
+        markDirty();
+        // Locate the node to be deleted, remembering its ancestors
+        int[] path = ancestors;
+        int depth = 0;
+        int current = root;
+        while (current != NIL) {
+            long element = key(current);
+            if (key == element)
+                break;
+            path[depth++] = current;
+            current = (key < element) ? left(current) : right(current);
+        }
+
+        if (current == NIL)
+            return false; // key is not in the tree
+
+        // Case 1: current has no left children
+        if (left(current) == NIL) {
+            // Connect the parent with the right child of the current node
+            if (depth == 0) {
+                root = right(current);
+            }
+            else {
+                int parent = path[depth - 1];
+                if (left(parent) == current)
+                    setLeft(parent, right(current));
+                else
+                    setRight(parent, right(current));
+
+                balancePath(path, depth, -1);
+            }
+            freeNode(current);
+        }
+        else {
+            // Case 2: The current node has a left child
+            // Replace its key by the largest key in its left subtree
+            // and unlink the node that held that key
+            path[depth++] = current;
+            int parentOfRightMost = current;
+            int rightMost = left(current);
+            while (right(rightMost) != NIL) {
+                parentOfRightMost = rightMost;
+                path[depth++] = rightMost;
+                rightMost = right(rightMost); // Keep going to the right
+            }
+
+            setKey(current, key(rightMost));
+
+            if (right(parentOfRightMost) == rightMost)
+                setRight(parentOfRightMost, left(rightMost));
+            else
+                // Special case: parentOfRightMost is current
+                setLeft(parentOfRightMost, left(rightMost));
+
+            balancePath(path, depth, -1);
+            freeNode(rightMost);
+        }
+
+        count--;
+        return true; // key is deleted
+    }
+
+    /** Get the number of nodes in the tree */
+    public int getSize() {
+        return count;
+    }
+
+    /** Get the number of nodes in the tree */
+    public int size() {
+        return count;
+    }
+
+    /** Return true if the tree is empty */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /** Remove all keys from the tree.  The off-heap memory stays reserved */
+    public void clear() {
+        ensureOpen();
+        markDirty();
+        root = NIL;
+        count = 0;
+        used = 1;
+        freeList = NIL;
+    }
+
+    /** Return the key at the specified position in sorted order */
+    public long get(int index) {
+        ensureOpen();
+        if (index < 0 || index >= count)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+
+        int current = root;
+        while (true) {
+            int leftSize = size(left(current));
+            if (index < leftSize) {
+                current = left(current);
+            }
+            else if (index > leftSize) {
+                index -= leftSize + 1; // Skip the left subtree and current
+                current = right(current);
+            }
+            else
+                return key(current);
+        }
+    }
+
+    /** Return the number of keys in the tree that are less than key */
+    public int rank(long key) {
+        ensureOpen();
+        int rank = 0;
+        int current = root;
+        while (current != NIL) {
+            long element = key(current);
+            if (key < element) {
+                current = left(current);
+            }
+            else {
+                rank += size(left(current));
+                if (key == element)
+                    break;
+                rank++; // current is less than key too
+                current = right(current);
+            }
+        }
+        return rank;
+    }
+
+    /** Obtain an iterator over the keys in ascending order */
+    public java.util.PrimitiveIterator.OfLong iterator() {
+        return iterator(0);
+    }
+
+    /** Obtain an iterator that starts at the specified position */
+    public java.util.PrimitiveIterator.OfLong iterator(int index) {
+        ensureOpen();
+        return new InorderIterator(index);
+    }
+
+    /** Update the height and size of a specified node */
+    private void updateHeightAndSize(int node) {
+        int l = left(node), r = right(node);
+        setHeight(node, 1 + Math.max(height(l), height(r)));
+        setSize(node, 1 + size(l) + size(r));
+    }
+
+    /** Return the balance factor of the node */
+    private int balanceFactor(int node) {
+        return height(right(node)) - height(left(node));
+    }
+
+    /** Balance the nodes path[depth - 1] up to path[0] after their subtrees
+     * changed size by sizeChange.  Once a subtree is as tall as it was before,
+     * the nodes above it only need their sizes adjusted */
+    private void balancePath(int[] path, int depth, int sizeChange) {
+        boolean heightMayChange = true;
+        for (int i = depth - 1; i >= 0; i--) {
+            int A = path[i];
+            if (!heightMayChange) {
+                setSize(A, size(A) + sizeChange);
+                continue;
+            }
+
+            int oldHeight = height(A);
+            updateHeightAndSize(A);
+            int parentOfA = (i == 0) ? NIL : path[i - 1];
+            int subtreeRoot = A;
+            switch (balanceFactor(A)) {
+                case -2:
+                    if (balanceFactor(left(A)) <= 0)
+                        subtreeRoot = balanceLL(A, parentOfA); // Perform LL rotation
+                    else
+                        subtreeRoot = balanceLR(A, parentOfA); // Perform LR rotation
+                    break;
+                case +2:
+                    if (balanceFactor(right(A)) >= 0)
+                        subtreeRoot = balanceRR(A, parentOfA); // Perform RR rotation
+                    else
+                        subtreeRoot = balanceRL(A, parentOfA); // Perform RL rotation
+            }
+            heightMayChange = height(subtreeRoot) != oldHeight;
+        }
+    }
+
+    /** Make B take A's place under parentOfA */
+    private void replaceChild(int A, int parentOfA, int B) {
+        if (parentOfA == NIL)
+            root = B;
+        else if (left(parentOfA) == A)
+            setLeft(parentOfA, B);
+        else
+            setRight(parentOfA, B);
+    }
+
+    /** Balance LL and return the new subtree root */
+    private int balanceLL(int A, int parentOfA) {
+        int B = left(A); // A is left-heavy and B is left-heavy
+        replaceChild(A, parentOfA, B);
+        setLeft(A, right(B)); // Make T2 the left subtree of A
+        setRight(B, A); // Make A the left child of B
+        updateHeightAndSize(A);
+        updateHeightAndSize(B);
+        return B;
+    }
+
+    /** Balance LR and return the new subtree root */
+    private int balanceLR(int A, int parentOfA) {
+        int B = left(A); // A is left-heavy
+        int C = right(B); // B is right-heavy
+        replaceChild(A, parentOfA, C);
+        setLeft(A, right(C)); // Make T3 the left subtree of A
+        setRight(B, left(C)); // Make T2 the right subtree of B
+        setLeft(C, B);
+        setRight(C, A);
+        updateHeightAndSize(A);
+        updateHeightAndSize(B);
+        updateHeightAndSize(C);
+        return C;
+    }
+
+    /** Balance RR and return the new subtree root */
+    private int balanceRR(int A, int parentOfA) {
+        int B = right(A); // A is right-heavy and B is right-heavy
+        replaceChild(A, parentOfA, B);
+        setRight(A, left(B)); // Make T2 the right subtree of A
+        setLeft(B, A);
+        updateHeightAndSize(A);
+        updateHeightAndSize(B);
+        return B;
+    }
+
+    /** Balance RL and return the new subtree root */
+    private int balanceRL(int A, int parentOfA) {
+        int B = right(A); // A is right-heavy
+        int C = left(B); // B is left-heavy
+        replaceChild(A, parentOfA, C);
+        setRight(A, left(C)); // Make T2 the right subtree of A
+        setLeft(B, right(C)); // Make T3 the left subtree of B
+        setLeft(C, A);
+        setRight(C, B);
+        updateHeightAndSize(A);
+        updateHeightAndSize(B);
+        updateHeightAndSize(C);
+        return C;
+    }
+
+    /** Iterates in ascending order.  The stack holds the nodes still to be visited
+     * on one root-to-node path, the next one on top */
+    private class InorderIterator implements java.util.PrimitiveIterator.OfLong {
+        private int[] stack = new int[MAX_HEIGHT];
+        private int top = 0; // Number of nodes on the stack
+
+        InorderIterator(int index) {
+            if (index < 0 || index > count)
+                throw new IndexOutOfBoundsException();
+
+            // Descend to the node at index, stacking the nodes we pass on their left
+            int current = root;
+            while (current != NIL) {
+                int leftSize = size(left(current));
+                if (index <= leftSize) {
+                    stack[top++] = current;
+                    if (index == leftSize)
+                        break;
+                    current = left(current);
+                }
+                else {
+                    index -= leftSize + 1;
+                    current = right(current);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return top > 0;
+        }
+
+        @Override
+        public long nextLong() {
+            ensureOpen();
+            if (top == 0)
+                throw new NoSuchElementException();
+            int node = stack[--top];
+            for (int n = right(node); n != NIL; n = left(n))
+                stack[top++] = n;
+            return key(node);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+import java.util.NoSuchElementException;
+
+/** An AVL tree whose nodes are immutable.  insert and delete copy the nodes on
+ * the path from the root to the change and share every other subtree with the
+ * old version, so each update costs O(log n) new nodes and leaves the previous
+ * version intact.
+ *
+ * That makes snapshot() O(1):  it hands the current root to a new tree.
+ * A snapshot, or an iterator, keeps seeing exactly the elements present when it
+ * was taken, however the original changes afterwards.  Readers take no locks;
+ * writers to the same tree are serialized so no update is lost. */
+public class PersistentAVLTree<E> implements Tree<E> {
+    private volatile Node<E> root;
+    /** The order of the elements, or null for their natural ordering */
+    private final java.util.Comparator<? super E> comparator;
+
+    /** Create an empty tree ordered by the natural ordering of its elements */
+    public PersistentAVLTree() {
+        comparator = null;
+    }
+
+    /** Create an empty tree ordered by the specified comparator */
+    public PersistentAVLTree(java.util.Comparator<? super E> comparator) {
+        this.comparator = comparator;
+    }
+
+    /** Create a tree from an array of objects */
+    public PersistentAVLTree(E[] objects) {
+        comparator = null;
+        for (E e : objects)
+            insert(e);
+    }
+
+    private PersistentAVLTree(Node<E> root, java.util.Comparator<? super E> comparator) {
+        this.root = root;
+        this.comparator = comparator;
+    }
+
+    /** Return an independent tree holding the current elements, in O(1) time.
+     * Later changes to either tree are not seen by the other */
+    public PersistentAVLTree<E> snapshot() {
+        return new PersistentAVLTree<>(root, comparator);
+    }
+
+    /** Return the comparator ordering the elements, or null for their natural ordering */
+    public java.util.Comparator<? super E> comparator() {
+        return comparator;
+    }
+
+    /** Compare two elements with the comparator, or by their natural ordering */
+    @SuppressWarnings("unchecked")
+    private int compare(E a, E b) {
+        return (comparator == null) ? ((Comparable<? super E>)a).compareTo(b)
+                : comparator.compare(a, b);
+    }
+
+    @Override /** Returns true if the element is in the tree */
+    public boolean search(E e) {
+        Node<E> current = root; // Start from the root
+
+        while (current != null) {
+            int cmp = compare(e, current.element);
+            if (cmp < 0)
+                current = current.left;
+            else if (cmp > 0)
+                current = current.right;
+            else
+                return true; // e is found
+        }
+
+        return false;
+    }
+
+    @Override /** Insert element e into the tree
+     * Return true if the element is inserted successfully */
+    public synchronized boolean insert(E e) {
+        Node<E> oldRoot = root;
+        if (oldRoot == null)
+            compare(e, e); // Type and null check, as TreeMap does
+        Node<E> newRoot = insert(oldRoot, e);
+        if (newRoot == oldRoot)
+            return false; // Duplicate node not inserted
+        root = newRoot;
+        return true;
+    }
+
+    @Override /** Delete an element from the tree.
+     * Return true if the element is deleted successfully */
+    public synchronized boolean delete(E e) {
+        Node<E> oldRoot = root;
+        Node<E> newRoot = delete(oldRoot, e);
+        if (newRoot == oldRoot)
+            return false; // Element is not in the tree
+        root = newRoot;
+        return true;
+    }
+
+    @Override /** Get the number of nodes in the tree */
+    public int getSize() {
+        return size(root);
+    }
+
+    @Override /** Remove all elements from the tree */
+    public synchronized void clear() {
+        root = null;
+    }
+
+    @Override /** Obtain an iterator over the elements present right now */
+    public java.util.Iterator<E> iterator() {
+        return new InorderIterator<>(root, 0);
+    }
+
+    /** Obtain an iterator that starts at the specified position */
+    public java.util.Iterator<E> iterator(int index) {
+        return new InorderIterator<>(root, index);
+    }
+
+    @Override /** Copy the elements of the current version.  root is read once,
+     * so the size and the elements always come from the same version */
+    public Object[] toArray() {
+        Node<E> current = root;
+        Object[] array = new Object[size(current)];
+        copy(current, array, 0);
+        return array;
+    }
+
+    @Override /** Copy the elements of the current version, like toArray() */
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] array) {
+        Node<E> current = root;
+        int size = size(current);
+        if (array.length < size)
+            array = (T[])java.lang.reflect.Array.newInstance(
+                    array.getClass().getComponentType(), size);
+        copy(current, array, 0);
+        if (array.length > size)
+            array[size] = null; // Mark the end, as the Collection contract asks
+        return array;
+    }
+
+    /** Copy n's subtree into array in order, starting at index i.
+     * Return the index after the last element copied */
+    private static int copy(Node<?> n, Object[] array, int i) {
+        while (n != null) {
+            i = copy(n.left, array, i);
+            array[i++] = n.element;
+            n = n.right; // Loop rather than recurse on the right
+        }
+        return i;
+    }
+
+    /** Return the root of a subtree holding n's elements plus e,
+     * or n itself if e is already there */
+    private Node<E> insert(Node<E> n, E e) {
+        if (n == null)
+            return new Node<>(e, null, null);
+        int cmp = compare(e, n.element);
+        if (cmp < 0) {
+            Node<E> left = insert(n.left, e);
+            return (left == n.left) ? n : balance(n.element, left, n.right);
+        }
+        else if (cmp > 0) {
+            Node<E> right = insert(n.right, e);
+            return (right == n.right) ? n : balance(n.element, n.left, right);
+        }
+        else
+            return n;
+    }
+
+    /** Return the root of a subtree holding n's elements minus e,
+     * or n itself if e is not there */
+    private Node<E> delete(Node<E> n, E e) {
+        if (n == null)
+            return null;
+        int cmp = compare(e, n.element);
+        if (cmp < 0) {
+            Node<E> left = delete(n.left, e);
+            return (left == n.left) ? n : balance(n.element, left, n.right);
+        }
+        else if (cmp > 0) {
+            Node<E> right = delete(n.right, e);
+            return (right == n.right) ? n : balance(n.element, n.left, right);
+        }
+        else if (n.left == null)
+            return n.right;
+        else if (n.right == null)
+            return n.left;
+        else {
+            // Replace n's element by the largest element in its left subtree
+            Node<E> rightMost = n.left;
+            while (rightMost.right != null)
+                rightMost = rightMost.right;
+            return balance(rightMost.element, deleteRightMost(n.left), n.right);
+        }
+    }
+
+    /** Return n's subtree without its largest element */
+    private static <E> Node<E> deleteRightMost(Node<E> n) {
+        if (n.right == null)
+            return n.left;
+        return balance(n.element, n.left, deleteRightMost(n.right));
+    }
+
+    /** Return a balanced node for element with the given subtrees,
+     * whose heights differ by at most 2 */
+    private static <E> Node<E> balance(E element, Node<E> left, Node<E> right) {
+        int leftHeight = height(left), rightHeight = height(right);
+        if (leftHeight > rightHeight + 1) {
+            if (height(left.left) >= height(left.right)) // LL rotation
+                return new Node<>(left.element, left.left,
+                        new Node<>(element, left.right, right));
+            else { // LR rotation
+                Node<E> C = left.right;
+                return new Node<>(C.element,
+                        new Node<>(left.element, left.left, C.left),
+                        new Node<>(element, C.right, right));
+            }
+        }
+        else if (rightHeight > leftHeight + 1) {
+            if (height(right.right) >= height(right.left)) // RR rotation
+                return new Node<>(right.element,
+                        new Node<>(element, left, right.left), right.right);
+            else { // RL rotation
+                Node<E> C = right.left;
+                return new Node<>(C.element,
+                        new Node<>(element, left, C.left),
+                        new Node<>(right.element, C.right, right.right));
+            }
+        }
+        return new Node<>(element, left, right);
+    }
+
+    private static int height(Node<?> node) {
+        return (node == null) ? -1 : node.height;
+    }
+
+    private static int size(Node<?> node) {
+        return (node == null) ? 0 : node.size;
+    }
+
+    /** Iterates over the tree rooted at the node it was given.  Nodes never
+     * change, so the iteration is unaffected by later inserts and deletes */
+    private static class InorderIterator<E> implements java.util.Iterator<E> {
+        private java.util.ArrayDeque<Node<E>> stack = new java.util.ArrayDeque<>();
+
+        InorderIterator(Node<E> root, int index) {
+            if (index < 0 || index > size(root))
+                throw new IndexOutOfBoundsException();
+
+            // Descend to the node at index, stacking the nodes we pass on their left
+            Node<E> current = root;
+            while (current != null) {
+                int leftSize = size(current.left);
+                if (index <= leftSize) {
+                    stack.push(current);
+                    if (index == leftSize)
+                        break;
+                    current = current.left;
+                }
+                else {
+                    index -= leftSize + 1;
+                    current = current.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public E next() {
+            if (stack.isEmpty())
+                throw new NoSuchElementException();
+            Node<E> node = stack.pop();
+            for (Node<E> n = node.right; n != null; n = n.left)
+                stack.push(n);
+            return node.element;
+        }
+    }
+
+    /** An immutable node.  Height and size are fixed when it is built */
+    private static final class Node<E> {
+        final E element;
+        final Node<E> left;
+        final Node<E> right;
+        final int height;
+        final int size;
+
+        Node(E element, Node<E> left, Node<E> right) {
+            this.element = element;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(PersistentAVLTree.height(left), PersistentAVLTree.height(right));
+            this.size = 1 + PersistentAVLTree.size(left) + PersistentAVLTree.size(right);
+        }
+    }
+}
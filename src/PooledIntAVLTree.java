@@ -0,0 +1,445 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/** An AVL tree of int keys whose nodes live in parallel arrays rather than in
+ * separate objects.  A node is an int index into keys, left, right, height and size;
+ * index 0 is a sentinel that stands for null, with height -1 and size 0.
+ * Slots of deleted nodes are chained through left into a free list and reused.
+ *
+ * The whole tree is six objects regardless of its size, so the GC has almost
+ * nothing to trace, and a node costs 17 bytes instead of an object per node.
+ * Otherwise it behaves like IntAVLTree. */
+public class PooledIntAVLTree {
+    /** An AVL tree of height h has at least fib(h + 3) - 1 nodes,
+     * so no tree with fewer than 2^31 nodes is taller than this */
+    private static final int MAX_HEIGHT = 48;
+    private static final int NIL = 0;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] keys;
+    private int[] left;
+    private int[] right;
+    private byte[] height;
+    private int[] size;
+    private int root = NIL;
+    private int count = 0; // Number of nodes in the tree
+    private int used = 1; // Slots below this index have been handed out; slot 0 is NIL
+    private int freeList = NIL; // First reusable slot, chained through left
+    /** Nodes on the path of the current insert or delete, reused between calls */
+    private int[] ancestors = new int[MAX_HEIGHT];
+
+    /** Create an empty AVL tree */
+    public PooledIntAVLTree() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /** Create an empty AVL tree with room for initialCapacity keys before it grows */
+    public PooledIntAVLTree(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal capacity: " + initialCapacity);
+        allocate(initialCapacity + 1);
+        height[NIL] = -1;
+    }
+
+    /** Create an AVL tree from an array of keys */
+    public PooledIntAVLTree(int[] keys) {
+        this(keys.length);
+        for (int key : keys)
+            insert(key);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        height = new byte[capacity];
+        size = new int[capacity];
+    }
+
+    /** Return a slot for a new leaf holding key */
+    private int newNode(int key) {
+        int node;
+        if (freeList != NIL) {
+            node = freeList;
+            freeList = left[node];
+        }
+        else {
+            if (used == keys.length)
+                grow();
+            node = used++;
+        }
+        keys[node] = key;
+        left[node] = NIL;
+        right[node] = NIL;
+        height[node] = 0;
+        size[node] = 1;
+        return node;
+    }
+
+    /** Put a deleted node's slot on the free list */
+    private void freeNode(int node) {
+        left[node] = freeList;
+        freeList = node;
+    }
+
+    private void grow() {
+        int capacity = keys.length + (keys.length >> 1) + 1;
+        if (capacity < 0)
+            capacity = Integer.MAX_VALUE - 8; // Overflowed: as large as an array can be
+        keys = Arrays.copyOf(keys, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        height = Arrays.copyOf(height, capacity);
+        size = Arrays.copyOf(size, capacity);
+    }
+
+    /** Shrink the arrays to the slots in use.  Freed slots below the highest
+     * slot in use are kept, because nodes cannot move */
+    public void trimToSize() {
+        if (used < keys.length) {
+            keys = Arrays.copyOf(keys, used);
+            left = Arrays.copyOf(left, used);
+            right = Arrays.copyOf(right, used);
+            height = Arrays.copyOf(height, used);
+            size = Arrays.copyOf(size, used);
+        }
+    }
+
+    /** Return true if the key is in the tree */
+    public boolean search(int key) {
+        int current = root; // Start from the root
+
+        while (current != NIL) {
+            int element = keys[current];
+            if (key < element) {
+                current = left[current];
+            }
+            else if (key > element) {
+                current = right[current];
+            }
+            else
+                return true; // key is found
+        }
+
+        return false;
+    }
+
+    /** Insert a key and rebalance if necessary.
+     * Return true if the key is inserted successfully */
+    public boolean insert(int key) {
+        if (root == NIL) {
+            root = newNode(key); // Create a new root
+            count++;
+            return true;
+        }
+
+        // Locate the parent node, remembering the path for rebalancing
+        int[] path = ancestors;
+        int depth = 0;
+        int current = root;
+        while (current != NIL) {
+            path[depth++] = current;
+            if (key < keys[current])
+                current = left[current];
+            else if (key > keys[current])
+                current = right[current];
+            else
+                return false; // Duplicate key not inserted
+        }
+
+        // Create the new node and attach it to the parent node
+        int parent = path[depth - 1];
+        int node = newNode(key);
+        if (key < keys[parent])
+            left[parent] = node;
+        else
+            right[parent] = node;
+
+        count++;
+        balancePath(path, depth, +1);
+        return true; // key is inserted
+    }
+
+    /** Delete a key from the tree.
+     * Return true if the key is deleted successfully
+     * Return false if the key is not in the tree */
+    public boolean delete(int key) {
+        // Locate the node to be deleted, remembering its ancestors
+        int[] path = ancestors;
+        int depth = 0;
+        int current = root;
+        while (current != NIL && key != keys[current]) {
+            path[depth++] = current;
+            current = (key < keys[current]) ? left[current] : right[current];
+        }
+
+        if (current == NIL)
+            return false; // key is not in the tree
+
+        // Case 1: current has no left children
+        if (left[current] == NIL) {
+            // Connect the parent with the right child of the current node
+            if (depth == 0) {
+                root = right[current];
+            }
+            else {
+                int parent = path[depth - 1];
+                if (left[parent] == current)
+                    left[parent] = right[current];
+                else
+                    right[parent] = right[current];
+
+                balancePath(path, depth, -1);
+            }
+            freeNode(current);
+        }
+        else {
+            // Case 2: The current node has a left child
+            // Replace its key by the largest key in its left subtree
+            // and unlink the node that held that key
+            path[depth++] = current;
+            int parentOfRightMost = current;
+            int rightMost = left[current];
+            while (right[rightMost] != NIL) {
+                parentOfRightMost = rightMost;
+                path[depth++] = rightMost;
+                rightMost = right[rightMost]; // Keep going to the right
+            }
+
+            keys[current] = keys[rightMost];
+
+            if (right[parentOfRightMost] == rightMost)
+                right[parentOfRightMost] = left[rightMost];
+            else
+                // Special case: parentOfRightMost is current
+                left[parentOfRightMost] = left[rightMost];
+
+            balancePath(path, depth, -1);
+            freeNode(rightMost);
+        }
+
+        count--;
+        return true; // key is deleted
+    }
+
+    /** Get the number of nodes in the tree */
+    public int getSize() {
+        return count;
+    }
+
+    /** Get the number of nodes in the tree */
+    public int size() {
+        return count;
+    }
+
+    /** Return true if the tree is empty */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /** Remove all keys from the tree.  The arrays keep their capacity */
+    public void clear() {
+        root = NIL;
+        count = 0;
+        used = 1;
+        freeList = NIL;
+    }
+
+    /** Return the key at the specified position in sorted order */
+    public int get(int index) {
+        if (index < 0 || index >= count)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+
+        int current = root;
+        while (true) {
+            int leftSize = size[left[current]];
+            if (index < leftSize) {
+                current = left[current];
+            }
+            else if (index > leftSize) {
+                index -= leftSize + 1; // Skip the left subtree and current
+                current = right[current];
+            }
+            else
+                return keys[current];
+        }
+    }
+
+    /** Return the number of keys in the tree that are less than key */
+    public int rank(int key) {
+        int rank = 0;
+        int current = root;
+        while (current != NIL) {
+            if (key < keys[current]) {
+                current = left[current];
+            }
+            else {
+                rank += size[left[current]];
+                if (key == keys[current])
+                    break;
+                rank++; // current is less than key too
+                current = right[current];
+            }
+        }
+        return rank;
+    }
+
+    /** Obtain an iterator over the keys in ascending order */
+    public java.util.PrimitiveIterator.OfInt iterator() {
+        return new InorderIterator(0);
+    }
+
+    /** Obtain an iterator that starts at the specified position */
+    public java.util.PrimitiveIterator.OfInt iterator(int index) {
+        return new InorderIterator(index);
+    }
+
+    /** Update the height and size of a specified node */
+    private void updateHeightAndSize(int node) {
+        height[node] = (byte)(1 + Math.max(height[left[node]], height[right[node]]));
+        size[node] = 1 + size[left[node]] + size[right[node]];
+    }
+
+    /** Return the balance factor of the node */
+    private int balanceFactor(int node) {
+        return height[right[node]] - height[left[node]];
+    }
+
+    /** Balance the nodes path[depth - 1] up to path[0] after their subtrees
+     * changed size by sizeChange.  Once a subtree is as tall as it was before,
+     * the nodes above it only need their sizes adjusted */
+    private void balancePath(int[] path, int depth, int sizeChange) {
+        boolean heightMayChange = true;
+        for (int i = depth - 1; i >= 0; i--) {
+            int A = path[i];
+            if (!heightMayChange) {
+                size[A] += sizeChange;
+                continue;
+            }
+
+            int oldHeight = height[A];
+            updateHeightAndSize(A);
+            int parentOfA = (i == 0) ? NIL : path[i - 1];
+            int subtreeRoot = A;
+            switch (balanceFactor(A)) {
+                case -2:
+                    if (balanceFactor(left[A]) <= 0)
+                        subtreeRoot = balanceLL(A, parentOfA); // Perform LL rotation
+                    else
+                        subtreeRoot = balanceLR(A, parentOfA); // Perform LR rotation
+                    break;
+                case +2:
+                    if (balanceFactor(right[A]) >= 0)
+                        subtreeRoot = balanceRR(A, parentOfA); // Perform RR rotation
+                    else
+                        subtreeRoot = balanceRL(A, parentOfA); // Perform RL rotation
+            }
+            heightMayChange = height[subtreeRoot] != oldHeight;
+        }
+    }
+
+    /** Make B take A's place under parentOfA */
+    private void replaceChild(int A, int parentOfA, int B) {
+        if (parentOfA == NIL)
+            root = B;
+        else if (left[parentOfA] == A)
+            left[parentOfA] = B;
+        else
+            right[parentOfA] = B;
+    }
+
+    /** Balance LL and return the new subtree root */
+    private int balanceLL(int A, int parentOfA) {
+        int B = left[A]; // A is left-heavy and B is left-heavy
+        replaceChild(A, parentOfA, B);
+        left[A] = right[B]; // Make T2 the left subtree of A
+        right[B] = A; // Make A the left child of B
+        updateHeightAndSize(A);
+        updateHeightAndSize(B);
+        return B;
+    }
+
+    /** Balance LR and return the new subtree root */
+    private int balanceLR(int A, int parentOfA) {
+        int B = left[A]; // A is left-heavy
+        int C = right[B]; // B is right-heavy
+        replaceChild(A, parentOfA, C);
+        left[A] = right[C]; // Make T3 the left subtree of A
+        right[B] = left[C]; // Make T2 the right subtree of B
+        left[C] = B;
+        right[C] = A;
+        updateHeightAndSize(A);
+        updateHeightAndSize(B);
+        updateHeightAndSize(C);
+        return C;
+    }
+
+    /** Balance RR and return the new subtree root */
+    private int balanceRR(int A, int parentOfA) {
+        int B = right[A]; // A is right-heavy and B is right-heavy
+        replaceChild(A, parentOfA, B);
+        right[A] = left[B]; // Make T2 the right subtree of A
+        left[B] = A;
+        updateHeightAndSize(A);
+        updateHeightAndSize(B);
+        return B;
+    }
+
+    /** Balance RL and return the new subtree root */
+    private int balanceRL(int A, int parentOfA) {
+        int B = right[A]; // A is right-heavy
+        int C = left[B]; // B is left-heavy
+        replaceChild(A, parentOfA, C);
+        right[A] = left[C]; // Make T2 the right subtree of A
+        left[B] = right[C]; // Make T3 the left subtree of B
+        left[C] = A;
+        right[C] = B;
+        updateHeightAndSize(A);
+        updateHeightAndSize(B);
+        updateHeightAndSize(C);
+        return C;
+    }
+
+    /** Iterates in ascending order.  The stack holds the nodes still to be visited
+     * on one root-to-node path, the next one on top */
+    private class InorderIterator implements java.util.PrimitiveIterator.OfInt {
+        private int[] stack = new int[MAX_HEIGHT];
+        private int top = 0; // Number of nodes on the stack
+
+        InorderIterator(int index) {
+            if (index < 0 || index > count)
+                throw new IndexOutOfBoundsException();
+
+            // Descend to the node at index, stacking the nodes we pass on their left
+            int current = root;
+            while (current != NIL) {
+                int leftSize = size[left[current]];
+                if (index <= leftSize) {
+                    stack[top++] = current;
+                    if (index == leftSize)
+                        break;
+                    current = left[current];
+                }
+                else {
+                    index -= leftSize + 1;
+                    current = right[current];
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return top > 0;
+        }
+
+        @Override
+        public int nextInt() {
+            if (top == 0)
+                throw new NoSuchElementException();
+            int node = stack[--top];
+            for (int n = right[node]; n != NIL; n = left[n])
+                stack[top++] = n;
+            return keys[node];
+        }
+    }
+}
@@ -0,0 +1,192 @@
+// This program tests the join-based set operations of AVLTree and
+// AVLTreeWithFastIterator against java.util.TreeSet.
+// The methods tested are addAll (union), retainAll (intersection) and
+// removeAll (difference) between two AVL trees, and insertAll and deleteAll
+// with sorted batches, all of which are built on join and split.
+// Every test runs on trees ordered naturally and by a reverse comparator,
+// on small trees and on trees tall enough for the operations to fork.
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class TestAVLJoin {
+    static final int SMALL_SIZE = 60; // Small enough for the sequential code paths
+    static final int LARGE_SIZE = 20000; // Well above the height at which the operations fork
+
+    public static void main(String[] args) {
+        Random rand = new Random(14);
+        for (Comparator<Integer> comparator : Arrays.<Comparator<Integer>>asList(null, Comparator.reverseOrder())) {
+            String order = (comparator == null) ? "natural order" : "reverse order";
+            for (int size : new int[] {SMALL_SIZE, LARGE_SIZE}) {
+                System.out.printf("Testing set operations on %,d elements in %s\n", size, order);
+                for (int kind = 0; kind < 2; kind++) {
+                    testSetOperations(rand, kind, comparator, size);
+                    testBatches(rand, kind, comparator, size);
+                }
+            }
+        }
+        System.out.println("Testing trees with different comparators");
+        testDifferentComparators(rand);
+        System.out.println("End of join tests");
+    }
+
+    // Create an empty tree:  an AVLTree if kind is 0, else an AVLTreeWithFastIterator.
+    static BST<Integer> newTree(int kind, Comparator<Integer> comparator) {
+        return (kind == 0) ? new AVLTree<>(comparator) : new AVLTreeWithFastIterator<>(comparator);
+    }
+
+    // Fill a tree and a TreeSet with the same random values from 0 .. range - 1.
+    static void fill(BST<Integer> tree, TreeSet<Integer> expected, Random rand, int count, int range) {
+        for (int i = 0; i < count; i++) {
+            int value = rand.nextInt(range);
+            tree.insert(value);
+            expected.add(value);
+        }
+    }
+
+    // Run union, intersection and difference on pairs of trees with
+    // overlapping values, with the second tree much smaller, the same size,
+    // and much larger than the first.
+    public static void testSetOperations(Random rand, int kind, Comparator<Integer> comparator, int size) {
+        for (int otherSize : new int[] {size / 20 + 1, size, size * 3}) {
+            for (int operation = 0; operation < 3; operation++) {
+                BST<Integer> t1 = newTree(kind, comparator), t2 = newTree(kind, comparator);
+                TreeSet<Integer> expected1 = new TreeSet<>(comparator), expected2 = new TreeSet<>(comparator);
+                fill(t1, expected1, rand, size, 2 * size);
+                fill(t2, expected2, rand, otherSize, 2 * size);
+
+                boolean changed, expectedChanged;
+                String name;
+                if (operation == 0) {
+                    name = "union";
+                    changed = t1.addAll(t2);
+                    expectedChanged = expected1.addAll(expected2);
+                }
+                else if (operation == 1) {
+                    name = "intersection";
+                    changed = t1.retainAll(t2);
+                    expectedChanged = expected1.retainAll(expected2);
+                }
+                else {
+                    name = "difference";
+                    changed = t1.removeAll(t2);
+                    expectedChanged = expected1.removeAll(expected2);
+                }
+                String description = name + " of " + size + " and " + otherSize + " elements in a "
+                        + t1.getClass().getName();
+                if (changed != expectedChanged)
+                    throw new RuntimeException(description + " returned " + changed
+                            + ".  Correct value is " + expectedChanged);
+                checkTree(t1, expected1, description);
+                checkTree(t2, expected2, "second operand of " + description); // t2 is only read
+
+                // The result must stay a valid tree for later updates
+                for (int i = 0; i < 100; i++) {
+                    int value = rand.nextInt(2 * size);
+                    if (t1.insert(value) != expected1.add(value)
+                            || t1.delete(value + 1) != expected1.remove(value + 1))
+                        throw new RuntimeException("insert or delete after " + description + " does not match");
+                }
+                checkTree(t1, expected1, "updates after " + description);
+            }
+        }
+    }
+
+    // Insert and delete batches with duplicates, both smaller and larger than
+    // the size at which a batch is merged by splits and joins.
+    public static void testBatches(Random rand, int kind, Comparator<Integer> comparator, int size) {
+        BST<Integer> tree = newTree(kind, comparator);
+        TreeSet<Integer> expected = new TreeSet<>(comparator);
+        fill(tree, expected, rand, size, 2 * size);
+        for (int batchSize : new int[] {1, size / 200 + 1, size / 10 + 1, size, 2 * size}) {
+            Integer[] batch = new Integer[batchSize];
+            for (int i = 0; i < batchSize; i++)
+                batch[i] = rand.nextInt(3 * size);
+            int expectedCount = 0;
+            for (Integer value : batch)
+                if (expected.add(value))
+                    expectedCount++;
+            int count = (kind == 0) ? ((AVLTree<Integer>)tree).insertAll(batch)
+                    : ((AVLTreeWithFastIterator<Integer>)tree).insertAll(batch);
+            String description = "insertAll of " + batchSize + " elements into a " + tree.getClass().getName();
+            if (count != expectedCount)
+                throw new RuntimeException(description + " returned " + count + ".  Correct value is " + expectedCount);
+            checkTree(tree, expected, description);
+
+            for (int i = 0; i < batchSize; i++)
+                batch[i] = rand.nextInt(3 * size);
+            expectedCount = 0;
+            for (Integer value : batch)
+                if (expected.remove(value))
+                    expectedCount++;
+            count = (kind == 0) ? ((AVLTree<Integer>)tree).deleteAll(batch)
+                    : ((AVLTreeWithFastIterator<Integer>)tree).deleteAll(batch);
+            description = "deleteAll of " + batchSize + " elements from a " + tree.getClass().getName();
+            if (count != expectedCount)
+                throw new RuntimeException(description + " returned " + count + ".  Correct value is " + expectedCount);
+            checkTree(tree, expected, description);
+        }
+    }
+
+    // Trees with different orders cannot be joined, so the operations fall
+    // back to element-by-element updates, which must give the same results.
+    public static void testDifferentComparators(Random rand) {
+        for (int kind = 0; kind < 2; kind++) {
+            BST<Integer> t1 = newTree(kind, null), t2 = newTree(kind, Comparator.reverseOrder());
+            TreeSet<Integer> expected1 = new TreeSet<>(), expected2 = new TreeSet<>(Comparator.reverseOrder());
+            fill(t1, expected1, rand, 5000, 10000);
+            fill(t2, expected2, rand, 5000, 10000);
+            t1.addAll(t2);
+            expected1.addAll(expected2);
+            checkTree(t1, expected1, "union with a reverse-ordered tree");
+            t1.removeAll(t2);
+            expected1.removeAll(expected2);
+            checkTree(t1, expected1, "difference with a reverse-ordered tree");
+        }
+    }
+
+    // Check that a tree holds the same elements as a TreeSet, in the same order,
+    // and that every node has the right height and, if it keeps one, the right
+    // size, with subtree heights that differ by at most one.
+    static void checkTree(BST<Integer> tree, TreeSet<Integer> expected, String description) {
+        if (tree.getSize() != expected.size())
+            throw new RuntimeException("Sizes do not match after " + description + ": "
+                    + tree.getSize() + " versus " + expected.size());
+        ArrayList<Integer> elements = new ArrayList<>(tree.getSize());
+        tree.iterator().forEachRemaining(elements::add);
+        if (!elements.equals(new ArrayList<>(expected)))
+            throw new RuntimeException("Elements do not match after " + description);
+        checkNode(tree.root, description);
+    }
+
+    // Return the height of a subtree after checking its nodes.
+    static int checkNode(BST.TreeNode<Integer> node, String description) {
+        if (node == null)
+            return -1;
+        int leftHeight = checkNode(node.left, description);
+        int rightHeight = checkNode(node.right, description);
+        if (Math.abs(leftHeight - rightHeight) > 1)
+            throw new RuntimeException("Unbalanced node " + node.element + " after " + description);
+        int height = 1 + Math.max(leftHeight, rightHeight);
+        int storedHeight;
+        if (node instanceof AVLTree.AVLTreeNode)
+            storedHeight = ((AVLTree.AVLTreeNode<Integer>)node).height;
+        else {
+            AVLTreeWithFastIterator.AVLTreeNode<Integer> n = (AVLTreeWithFastIterator.AVLTreeNode<Integer>)node;
+            storedHeight = n.height;
+            if (n.size != 1 + sizeOf(n.left) + sizeOf(n.right))
+                throw new RuntimeException("Wrong size at node " + node.element + " after " + description);
+        }
+        if (storedHeight != height)
+            throw new RuntimeException("Wrong height at node " + node.element + " after " + description
+                    + ": " + storedHeight + " versus " + height);
+        return height;
+    }
+
+    static int sizeOf(BST.TreeNode<Integer> node) {
+        return (node == null) ? 0 : ((AVLTreeWithFastIterator.AVLTreeNode<Integer>)node).size;
+    }
+}
@@ -0,0 +1,221 @@
+// This program tests AVLMultiset by running the same operations on it and on
+// a java.util.TreeMap from elements to counts, and checking that they agree.
+// The methods tested are add(e, n) and remove(e, n), count, rank and select,
+// which count every occurrence, and the iterator, including its remove() and
+// its checks for concurrent modification.
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class TestAVLMultiset {
+    static final int KEY_RANGE = 300; // Elements are drawn from 0 .. KEY_RANGE - 1
+
+    public static void main(String[] args) {
+        Random rand = new Random(18);
+        System.out.println("Testing add and remove with counts");
+        testAddAndRemove(rand, null);
+        testAddAndRemove(rand, java.util.Comparator.reverseOrder());
+        System.out.println("Testing rank and select");
+        testRankAndSelect(rand);
+        System.out.println("Testing iterator remove");
+        testIteratorRemove(rand);
+        System.out.println("Testing fail-fast iterators");
+        testFailFast();
+        System.out.println("End of AVLMultiset tests");
+    }
+
+    // Add and remove random numbers of occurrences, checking the return values
+    // of every call and the whole multiset every so often.
+    public static void testAddAndRemove(Random rand, java.util.Comparator<Integer> comparator) {
+        AVLMultiset<Integer> multiset = new AVLMultiset<>(comparator);
+        TreeMap<Integer, Integer> expected = new TreeMap<>(comparator);
+        for (int i = 0; i < 20000; i++) {
+            Integer e = rand.nextInt(KEY_RANGE);
+            int n = rand.nextInt(5); // Including 0, which changes nothing
+            int oldCount = expected.getOrDefault(e, 0);
+            int result;
+            if (rand.nextInt(5) < 3) {
+                result = multiset.add(e, n);
+                if (oldCount + n > 0)
+                    expected.put(e, oldCount + n);
+            }
+            else {
+                result = multiset.remove(e, n);
+                if (oldCount > n)
+                    expected.put(e, oldCount - n);
+                else if (n > 0)
+                    expected.remove(e);
+            }
+            if (result != oldCount)
+                throw new RuntimeException("Operation " + i + " on " + e + " returned " + result
+                        + ".  Correct value is " + oldCount);
+            if (i % 1000 == 0)
+                checkSame(multiset, expected, "after " + i + " operations");
+        }
+        checkSame(multiset, expected, "after all operations");
+
+        for (int n : new int[] {-1, Integer.MIN_VALUE})
+            try {
+                multiset.add(1, n);
+                throw new RuntimeException("add(e, " + n + ") did not throw IllegalArgumentException");
+            }
+            catch (IllegalArgumentException ex) {
+                // Caught IllegalArgumentException:  Good!
+            }
+    }
+
+    // Check rank and select with multiplicity:  select(i) for every occurrence
+    // index i, and rank for elements both in and out of the multiset.
+    public static void testRankAndSelect(Random rand) {
+        AVLMultiset<Integer> multiset = new AVLMultiset<>();
+        List<Integer> occurrences = new ArrayList<>(); // Every occurrence, in order
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for (int i = 0; i < 500; i++) {
+            int e = 2 * rand.nextInt(KEY_RANGE); // Even elements, so odd ones are absent
+            int n = 1 + rand.nextInt(4);
+            multiset.add(e, n);
+            expected.merge(e, n, Integer::sum);
+        }
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet())
+            for (int j = 0; j < entry.getValue(); j++)
+                occurrences.add(entry.getKey());
+
+        for (int i = 0; i < occurrences.size(); i++)
+            if (!multiset.select(i).equals(occurrences.get(i)))
+                throw new RuntimeException("select(" + i + ") returned " + multiset.select(i)
+                        + ".  Correct value is " + occurrences.get(i));
+        for (int e = -1; e <= 2 * KEY_RANGE; e++) {
+            long correct = 0;
+            for (int value : occurrences)
+                if (value < e)
+                    correct++;
+            if (multiset.rank(e) != correct)
+                throw new RuntimeException("rank(" + e + ") returned " + multiset.rank(e)
+                        + ".  Correct value is " + correct);
+            if (expected.containsKey(e) && multiset.select(multiset.rank(e)) != e)
+                throw new RuntimeException("select(rank(" + e + ")) is not " + e);
+        }
+        for (long i : new long[] {-1, occurrences.size()})
+            try {
+                multiset.select(i);
+                throw new RuntimeException("select(long) did not throw IndexOutOfBoundsException on bad index " + i);
+            }
+            catch (IndexOutOfBoundsException ex) {
+                // Caught IndexOutOfBoundsException:  Good!
+            }
+    }
+
+    // Remove occurrences through the iterator while scanning.  The scan must
+    // still return every occurrence, and removing the last occurrence of an
+    // element must remove the element.
+    public static void testIteratorRemove(Random rand) {
+        AVLMultiset<Integer> multiset = new AVLMultiset<>();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for (int i = 0; i < 1000; i++) {
+            int e = rand.nextInt(KEY_RANGE);
+            int n = 1 + rand.nextInt(3);
+            multiset.add(e, n);
+            expected.merge(e, n, Integer::sum);
+        }
+        List<Integer> expectedScan = occurrences(expected);
+        List<Integer> scan = new ArrayList<>();
+        for (Iterator<Integer> iter = multiset.iterator(); iter.hasNext(); ) {
+            Integer e = iter.next();
+            scan.add(e);
+            if (rand.nextBoolean()) {
+                iter.remove();
+                expected.computeIfPresent(e, (k, count) -> (count == 1) ? null : count - 1);
+            }
+        }
+        if (!scan.equals(expectedScan))
+            throw new RuntimeException("The iterator returned the wrong occurrences while removing");
+        checkSame(multiset, expected, "removing through the iterator");
+
+        Iterator<Integer> iter = multiset.iterator();
+        try {
+            iter.remove();
+            throw new RuntimeException("remove() before next() did not throw IllegalStateException");
+        }
+        catch (IllegalStateException ex) {
+            // Caught IllegalStateException:  Good!
+        }
+        for (iter = multiset.iterator(); iter.hasNext(); ) {
+            iter.next();
+            iter.remove();
+        }
+        if (!multiset.isEmpty() || multiset.distinctCount() != 0)
+            throw new RuntimeException("Multiset is not empty after removing every occurrence");
+    }
+
+    // An iterator must throw ConcurrentModificationException once the multiset
+    // has been changed other than through the iterator itself, including a
+    // change of count alone.
+    public static void testFailFast() {
+        AVLMultiset<Integer> multiset = new AVLMultiset<>();
+        for (int i = 0; i < 50; i++)
+            multiset.add(i, 2);
+
+        Iterator<Integer> iter = multiset.iterator();
+        iter.next();
+        multiset.add(100);
+        expectConcurrentModification(iter::next, "next() after adding a new element");
+
+        iter = multiset.iterator();
+        iter.next();
+        multiset.add(10);
+        expectConcurrentModification(iter::next, "next() after adding an occurrence");
+
+        iter = multiset.iterator();
+        iter.next();
+        multiset.remove(20, 1);
+        expectConcurrentModification(iter::remove, "remove() after removing an occurrence");
+
+        // Adding or removing no occurrences changes nothing, so it is allowed
+        iter = multiset.iterator();
+        iter.next();
+        multiset.add(5, 0);
+        multiset.remove(5, 0);
+        multiset.remove(-5);
+        iter.next();
+        iter.remove();
+        iter.next();
+    }
+
+    static void expectConcurrentModification(Runnable action, String description) {
+        try {
+            action.run();
+            throw new RuntimeException(description + " did not throw ConcurrentModificationException");
+        }
+        catch (ConcurrentModificationException ex) {
+            // Caught ConcurrentModificationException:  Good!
+        }
+    }
+
+    // Return every occurrence in a map from elements to counts, in order.
+    static List<Integer> occurrences(TreeMap<Integer, Integer> counts) {
+        List<Integer> list = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : counts.entrySet())
+            for (int j = 0; j < entry.getValue(); j++)
+                list.add(entry.getKey());
+        return list;
+    }
+
+    // Check counts, sizes and the sequence of occurrences.
+    static void checkSame(AVLMultiset<Integer> multiset, TreeMap<Integer, Integer> expected, String description) {
+        List<Integer> occurrences = occurrences(expected);
+        if (multiset.totalCount() != occurrences.size() || multiset.size() != occurrences.size()
+                || multiset.distinctCount() != expected.size())
+            throw new RuntimeException("Sizes do not match " + description + ": " + multiset.totalCount()
+                    + " and " + multiset.distinctCount() + " versus " + occurrences.size() + " and " + expected.size());
+        for (int e = -1; e <= KEY_RANGE; e++)
+            if (multiset.count(e) != expected.getOrDefault(e, 0) || multiset.contains(e) != expected.containsKey(e))
+                throw new RuntimeException("count(" + e + ") does not match " + description);
+        if (!new ArrayList<>(multiset).equals(occurrences))
+            throw new RuntimeException("Occurrences do not match " + description);
+    }
+}
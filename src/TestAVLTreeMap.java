@@ -0,0 +1,327 @@
+// This program tests AVLTreeMap by running the same operations on it and on
+// a java.util.TreeMap and checking that the two maps always agree.
+// The methods tested are put, remove, merge and computeIfAbsent, entryAt and rank,
+// the range views with inclusive and exclusive bounds, the descending views,
+// and removal through the views' iterators, which must fail fast, as must
+// computeIfAbsent when its function changes the map.
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class TestAVLTreeMap {
+    static final int KEY_RANGE = 200; // Keys are drawn from 0 .. KEY_RANGE - 1
+    static final int OPERATIONS = 20000; // Number of random updates in the update test
+
+    public static void main(String[] args) {
+        Random rand = new Random(17);
+        System.out.println("Testing put, remove, merge and computeIfAbsent");
+        testUpdates(rand);
+        System.out.println("Testing entryAt and rank");
+        testEntryAtAndRank(rand);
+        System.out.println("Testing range views");
+        testRangeViews(rand);
+        System.out.println("Testing descending views");
+        testDescendingViews(rand);
+        System.out.println("Testing iterator remove");
+        testIteratorRemove(rand);
+        System.out.println("Testing fail-fast iterators");
+        testFailFast();
+        System.out.println("End of AVLTreeMap tests");
+    }
+
+    // Apply the same random updates to both maps, checking the return values
+    // of every call and the contents of the maps every so often.
+    public static void testUpdates(Random rand) {
+        AVLTreeMap<Integer, Integer> map = new AVLTreeMap<>();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for (int i = 0; i < OPERATIONS; i++) {
+            Integer key = rand.nextInt(KEY_RANGE);
+            Integer value = rand.nextInt(10);
+            Object result, expectedResult;
+            switch (rand.nextInt(4)) {
+                case 0:
+                    result = map.put(key, value);
+                    expectedResult = expected.put(key, value);
+                    break;
+                case 1:
+                    result = map.remove(key);
+                    expectedResult = expected.remove(key);
+                    break;
+                case 2:
+                    // A sum of 0 removes the key
+                    result = map.merge(key, value, (a, b) -> (a + b) % 10 == 0 ? null : a + b);
+                    expectedResult = expected.merge(key, value, (a, b) -> (a + b) % 10 == 0 ? null : a + b);
+                    break;
+                default:
+                    result = map.computeIfAbsent(key, k -> k * 2);
+                    expectedResult = expected.computeIfAbsent(key, k -> k * 2);
+            }
+            if (!java.util.Objects.equals(result, expectedResult))
+                throw new RuntimeException("Operation " + i + " on key " + key + " returned " + result
+                        + ".  Correct value is " + expectedResult);
+            if (i % 1000 == 0)
+                checkSame(map, expected, "after " + i + " updates");
+        }
+        checkSame(map, expected, "after all updates");
+
+        // A map ordered by a comparator
+        AVLTreeMap<String, Integer> reversed = new AVLTreeMap<>(java.util.Comparator.reverseOrder());
+        TreeMap<String, Integer> expectedReversed = new TreeMap<>(java.util.Comparator.reverseOrder());
+        for (int i = 0; i < 500; i++) {
+            String key = "k" + rand.nextInt(KEY_RANGE);
+            reversed.put(key, i);
+            expectedReversed.put(key, i);
+        }
+        checkSame(reversed, expectedReversed, "with a reverse comparator");
+    }
+
+    // Check entryAt(i) and rank(key) against the keys in sorted order.
+    public static void testEntryAtAndRank(Random rand) {
+        AVLTreeMap<Integer, String> map = new AVLTreeMap<>();
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        for (int i = 0; i < 300; i++) {
+            int key = rand.nextInt(1000) * 2; // Even keys, so odd keys are absent
+            map.put(key, "v" + key);
+            expected.put(key, "v" + key);
+        }
+        ArrayList<Integer> keys = new ArrayList<>(expected.keySet());
+        for (int i = 0; i < keys.size(); i++) {
+            Map.Entry<Integer, String> entry = map.entryAt(i);
+            if (!entry.getKey().equals(keys.get(i)) || !entry.getValue().equals("v" + keys.get(i)))
+                throw new RuntimeException("entryAt(" + i + ") returned " + entry
+                        + ".  Correct key is " + keys.get(i));
+            if (map.rank(keys.get(i)) != i)
+                throw new RuntimeException("rank(" + keys.get(i) + ") returned " + map.rank(keys.get(i))
+                        + ".  Correct value is " + i);
+            int below = expected.headMap(keys.get(i) + 1).size();
+            if (map.rank(keys.get(i) + 1) != below)
+                throw new RuntimeException("rank(" + (keys.get(i) + 1) + ") returned "
+                        + map.rank(keys.get(i) + 1) + ".  Correct value is " + below);
+        }
+        for (int i : new int[] {-1, keys.size()})
+            try {
+                map.entryAt(i);
+                throw new RuntimeException("entryAt(int) did not throw IndexOutOfBoundsException on bad index " + i);
+            }
+            catch (IndexOutOfBoundsException ex) {
+                // Caught IndexOutOfBoundsException:  Good!
+            }
+
+        // entryAt returns the live entry, so setValue writes through
+        map.entryAt(0).setValue("changed");
+        if (!map.get(keys.get(0)).equals("changed"))
+            throw new RuntimeException("setValue on entryAt(0) did not change the map");
+    }
+
+    // Compare subMap, headMap and tailMap views for every combination of
+    // inclusive and exclusive bounds, with bounds both in and out of the map.
+    public static void testRangeViews(Random rand) {
+        AVLTreeMap<Integer, Integer> map = new AVLTreeMap<>();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for (int i = 0; i < 100; i++) {
+            int key = rand.nextInt(KEY_RANGE);
+            map.put(key, i);
+            expected.put(key, i);
+        }
+        for (int trial = 0; trial < 200; trial++) {
+            int lo = rand.nextInt(KEY_RANGE + 20) - 10;
+            int hi = lo + rand.nextInt(KEY_RANGE / 2);
+            for (boolean loInclusive : new boolean[] {true, false})
+                for (boolean hiInclusive : new boolean[] {true, false}) {
+                    String bounds = (loInclusive ? "[" : "(") + lo + ", " + hi + (hiInclusive ? "]" : ")");
+                    NavigableMap<Integer, Integer> view = map.subMap(lo, loInclusive, hi, hiInclusive);
+                    NavigableMap<Integer, Integer> expectedView = expected.subMap(lo, loInclusive, hi, hiInclusive);
+                    checkSame(view, expectedView, "subMap " + bounds);
+                    checkSame(view.descendingMap(), expectedView.descendingMap(), "descending subMap " + bounds);
+                    checkNavigation(view, expectedView, lo - 2, hi + 2, "subMap " + bounds);
+                }
+            checkSame(map.headMap(hi, true), expected.headMap(hi, true), "headMap(" + hi + ", true)");
+            checkSame(map.headMap(hi, false), expected.headMap(hi, false), "headMap(" + hi + ", false)");
+            checkSame(map.tailMap(lo, true), expected.tailMap(lo, true), "tailMap(" + lo + ", true)");
+            checkSame(map.tailMap(lo, false), expected.tailMap(lo, false), "tailMap(" + lo + ", false)");
+        }
+
+        // A view rejects keys outside its range and writes through to the map
+        NavigableMap<Integer, Integer> view = map.subMap(50, true, 100, false);
+        try {
+            view.put(100, 0);
+            throw new RuntimeException("subMap [50, 100) accepted key 100");
+        }
+        catch (IllegalArgumentException ex) {
+            // Caught IllegalArgumentException:  Good!
+        }
+        view.put(75, -1);
+        expected.put(75, -1);
+        view.remove(50);
+        expected.remove(50);
+        checkSame(map, expected, "after updates through a subMap");
+    }
+
+    // Compare the descending map and key sets, and views of the descending map.
+    public static void testDescendingViews(Random rand) {
+        AVLTreeMap<Integer, Integer> map = new AVLTreeMap<>();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for (int i = 0; i < 100; i++) {
+            int key = rand.nextInt(KEY_RANGE);
+            map.put(key, i);
+            expected.put(key, i);
+        }
+        NavigableMap<Integer, Integer> descending = map.descendingMap();
+        NavigableMap<Integer, Integer> expectedDescending = expected.descendingMap();
+        checkSame(descending, expectedDescending, "descendingMap");
+        checkNavigation(descending, expectedDescending, -5, KEY_RANGE + 5, "descendingMap");
+        checkSame(descending.descendingMap(), expected, "descendingMap().descendingMap()");
+        if (!new ArrayList<>(map.descendingKeySet()).equals(new ArrayList<>(expected.descendingKeySet())))
+            throw new RuntimeException("descendingKeySet does not match");
+
+        // In a descending map the lower bound of a subMap is the greater key
+        checkSame(descending.subMap(150, true, 50, false), expectedDescending.subMap(150, true, 50, false),
+                "descendingMap().subMap(150, true, 50, false)");
+        checkSame(descending.headMap(100, false), expectedDescending.headMap(100, false),
+                "descendingMap().headMap(100, false)");
+        checkSame(descending.tailMap(100, true), expectedDescending.tailMap(100, true),
+                "descendingMap().tailMap(100, true)");
+        if (!descending.pollFirstEntry().equals(expectedDescending.pollFirstEntry())
+                || !descending.pollLastEntry().equals(expectedDescending.pollLastEntry()))
+            throw new RuntimeException("pollFirstEntry or pollLastEntry on descendingMap does not match");
+        checkSame(map, expected, "after polling the descending map");
+    }
+
+    // Remove entries through the iterators of the map and of its views.
+    public static void testIteratorRemove(Random rand) {
+        AVLTreeMap<Integer, Integer> map = new AVLTreeMap<>();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for (int i = 0; i < 500; i++) {
+            int key = rand.nextInt(2 * KEY_RANGE);
+            map.put(key, i);
+            expected.put(key, i);
+        }
+
+        // Every other key through the key set, so rotations happen mid-scan
+        boolean remove = false;
+        for (Iterator<Integer> iter = map.keySet().iterator(); iter.hasNext(); ) {
+            Integer key = iter.next();
+            if (remove) {
+                iter.remove();
+                expected.remove(key);
+            }
+            remove = !remove;
+        }
+        checkSame(map, expected, "after removing every other key");
+
+        // Even values through the entry set of a descending subMap
+        for (Iterator<Map.Entry<Integer, Integer>> iter = map.descendingMap().subMap(300, true, 100, true)
+                .entrySet().iterator(); iter.hasNext(); ) {
+            // As in TreeMap, a removed entry may be reused for another key,
+            // so read the key first
+            Map.Entry<Integer, Integer> entry = iter.next();
+            Integer key = entry.getKey();
+            if (entry.getValue() % 2 == 0) {
+                iter.remove();
+                expected.remove(key);
+            }
+        }
+        checkSame(map, expected, "after removing through a descending subMap");
+
+        Iterator<Integer> iter = map.keySet().iterator();
+        try {
+            iter.remove();
+            throw new RuntimeException("remove() before next() did not throw IllegalStateException");
+        }
+        catch (IllegalStateException ex) {
+            // Caught IllegalStateException:  Good!
+        }
+        iter.next();
+        iter.remove();
+        try {
+            iter.remove();
+            throw new RuntimeException("A second remove() did not throw IllegalStateException");
+        }
+        catch (IllegalStateException ex) {
+            // Caught IllegalStateException:  Good!
+        }
+
+        // Removing everything leaves an empty map
+        for (iter = map.keySet().iterator(); iter.hasNext(); ) {
+            iter.next();
+            iter.remove();
+        }
+        if (!map.isEmpty())
+            throw new RuntimeException("Map is not empty after removing every key: " + map);
+    }
+
+    // An iterator must throw ConcurrentModificationException once the map
+    // has been changed other than through the iterator itself.
+    public static void testFailFast() {
+        AVLTreeMap<Integer, Integer> map = new AVLTreeMap<>();
+        for (int i = 0; i < 50; i++)
+            map.put(i, i);
+
+        Iterator<Integer> keys = map.keySet().iterator();
+        keys.next();
+        map.put(100, 100);
+        expectConcurrentModification(keys::next, "keySet().iterator().next() after put");
+
+        Iterator<Map.Entry<Integer, Integer>> entries = map.descendingMap().entrySet().iterator();
+        entries.next();
+        map.remove(10);
+        expectConcurrentModification(entries::remove, "entrySet().iterator().remove() after remove");
+
+        // Replacing a value does not change the structure, so it is allowed
+        keys = map.keySet().iterator();
+        keys.next();
+        map.put(20, -20);
+        keys.next();
+
+        // A mapping function that adds the key itself, or removes it, as TreeMap does
+        expectConcurrentModification(() -> map.computeIfAbsent(200, k -> { map.put(k, 5); return 7; }),
+                "computeIfAbsent with a function that adds the key");
+        map.put(30, null);
+        expectConcurrentModification(() -> map.computeIfAbsent(30, k -> { map.remove(k); return 7; }),
+                "computeIfAbsent with a function that removes the key");
+    }
+
+    static void expectConcurrentModification(Runnable action, String description) {
+        try {
+            action.run();
+            throw new RuntimeException(description + " did not throw ConcurrentModificationException");
+        }
+        catch (ConcurrentModificationException ex) {
+            // Caught ConcurrentModificationException:  Good!
+        }
+    }
+
+    // Check that two maps hold the same entries in the same order,
+    // through iteration, size, equals, first and last.
+    static <K, V> void checkSame(NavigableMap<K, V> map, NavigableMap<K, V> expected, String description) {
+        if (map.size() != expected.size())
+            throw new RuntimeException("Sizes do not match " + description + ": "
+                    + map.size() + " versus " + expected.size());
+        if (!new ArrayList<>(map.entrySet()).equals(new ArrayList<>(expected.entrySet())))
+            throw new RuntimeException("Entries do not match " + description + ":\n"
+                    + map + "\nversus\n" + expected);
+        if (!map.equals(expected) || !expected.equals(map) || map.hashCode() != expected.hashCode())
+            throw new RuntimeException("equals or hashCode does not match " + description);
+        if (!expected.isEmpty() && (!map.firstKey().equals(expected.firstKey())
+                || !map.lastKey().equals(expected.lastKey())))
+            throw new RuntimeException("firstKey or lastKey does not match " + description);
+    }
+
+    // Check the navigation methods for every integer key from lo to hi.
+    static void checkNavigation(NavigableMap<Integer, Integer> map, NavigableMap<Integer, Integer> expected,
+                                int lo, int hi, String description) {
+        for (int key = lo; key <= hi; key++) {
+            if (!java.util.Objects.equals(map.lowerKey(key), expected.lowerKey(key))
+                    || !java.util.Objects.equals(map.floorKey(key), expected.floorKey(key))
+                    || !java.util.Objects.equals(map.ceilingKey(key), expected.ceilingKey(key))
+                    || !java.util.Objects.equals(map.higherKey(key), expected.higherKey(key))
+                    || !java.util.Objects.equals(map.floorEntry(key), expected.floorEntry(key)))
+                throw new RuntimeException("Navigation from key " + key + " does not match " + description);
+        }
+    }
+}
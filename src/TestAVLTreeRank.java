@@ -0,0 +1,111 @@
+// This program tests the order statistics of AVLTreeWithFastIterator against
+// java.util.TreeSet:  get(index), rank(e) for elements both in and out of the
+// tree, and countRange(lo, hi), which counts the half-open range lo <= e < hi,
+// including empty ranges, ranges outside the elements and lo > hi.
+// The trees are checked after every batch of inserts and deletes, so the
+// subtree sizes the queries rely on must survive the rotations.
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class TestAVLTreeRank {
+    static final int KEY_RANGE = 2000; // Elements are drawn from 0 .. KEY_RANGE - 1
+
+    public static void main(String[] args) {
+        Random rand = new Random(4);
+        System.out.println("Testing get, rank and countRange against TreeSet");
+        testQueries(rand, null);
+        testQueries(rand, Comparator.reverseOrder());
+        System.out.println("Testing bad arguments");
+        testBadArguments();
+        System.out.println("End of rank tests");
+    }
+
+    // Change the tree in batches and compare every query after each batch.
+    public static void testQueries(Random rand, Comparator<Integer> comparator) {
+        AVLTreeWithFastIterator<Integer> tree = new AVLTreeWithFastIterator<>(comparator);
+        TreeSet<Integer> expected = new TreeSet<>(comparator);
+        checkQueries(tree, expected, rand, "an empty tree");
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 300; i++) {
+                int e = rand.nextInt(KEY_RANGE);
+                if (rand.nextInt(3) > 0) {
+                    tree.insert(e);
+                    expected.add(e);
+                }
+                else {
+                    tree.delete(e);
+                    expected.remove(e);
+                }
+            }
+            checkQueries(tree, expected, rand, "round " + round + " with comparator " + comparator);
+        }
+    }
+
+    static void checkQueries(AVLTreeWithFastIterator<Integer> tree, TreeSet<Integer> expected,
+                             Random rand, String description) {
+        List<Integer> sorted = new ArrayList<>(expected);
+        for (int i = 0; i < sorted.size(); i++)
+            if (!tree.get(i).equals(sorted.get(i)))
+                throw new RuntimeException("get(" + i + ") after " + description + " returned " + tree.get(i)
+                        + ".  Correct value is " + sorted.get(i));
+
+        for (int e = -1; e <= KEY_RANGE; e++) {
+            int correct = expected.headSet(e).size();
+            if (tree.rank(e) != correct)
+                throw new RuntimeException("rank(" + e + ") after " + description + " returned " + tree.rank(e)
+                        + ".  Correct value is " + correct);
+            if (expected.contains(e) && !tree.get(tree.rank(e)).equals(e))
+                throw new RuntimeException("get(rank(" + e + ")) is not " + e + " after " + description);
+        }
+
+        Comparator<? super Integer> order = (expected.comparator() == null)
+                ? Comparator.naturalOrder() : expected.comparator();
+        for (int i = 0; i < 200; i++) {
+            int a = rand.nextInt(KEY_RANGE + 20) - 10, b = rand.nextInt(KEY_RANGE + 20) - 10;
+            int lo = (order.compare(a, b) <= 0) ? a : b, hi = (lo == a) ? b : a;
+            checkRange(tree, expected, lo, hi, description);
+            checkRange(tree, expected, lo, lo, description); // An empty range
+        }
+        for (int[] outside : new int[][] {{-100, -50}, {KEY_RANGE + 50, KEY_RANGE + 100}}) {
+            int lo = (order.compare(outside[0], outside[1]) <= 0) ? outside[0] : outside[1];
+            checkRange(tree, expected, lo, outside[0] + outside[1] - lo, description);
+        }
+    }
+
+    static void checkRange(AVLTreeWithFastIterator<Integer> tree, TreeSet<Integer> expected,
+                           int lo, int hi, String description) {
+        int correct = expected.subSet(lo, true, hi, false).size();
+        if (tree.countRange(lo, hi) != correct)
+            throw new RuntimeException("countRange(" + lo + ", " + hi + ") after " + description + " returned "
+                    + tree.countRange(lo, hi) + ".  Correct value is " + correct);
+    }
+
+    public static void testBadArguments() {
+        AVLTreeWithFastIterator<Integer> tree = new AVLTreeWithFastIterator<>();
+        for (int i = 0; i < 10; i++)
+            tree.insert(i);
+        for (int index : new int[] {-1, 10})
+            try {
+                tree.get(index);
+                throw new RuntimeException("get did not throw IndexOutOfBoundsException on bad index " + index);
+            }
+            catch (IndexOutOfBoundsException ex) {
+                // Caught IndexOutOfBoundsException:  Good!
+            }
+        try {
+            tree.countRange(5, 4);
+            throw new RuntimeException("countRange did not throw IllegalArgumentException on lo > hi");
+        }
+        catch (IllegalArgumentException ex) {
+            // Caught IllegalArgumentException:  Good!
+        }
+        AVLTreeWithFastIterator<Integer> reversed = new AVLTreeWithFastIterator<>(Comparator.reverseOrder());
+        reversed.insert(3);
+        if (reversed.countRange(5, 4) != 0 || reversed.countRange(4, 2) != 1)
+            throw new RuntimeException("countRange with a reversed comparator does not follow its order");
+    }
+}
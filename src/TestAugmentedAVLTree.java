@@ -0,0 +1,115 @@
+// This program tests AugmentedAVLTree by checking aggregate() and
+// aggregate(lo, hi) against a brute-force fold over a java.util.TreeSet
+// holding the same elements.
+// Three aggregates are tested:  a sum, a minimum whose identity is null, and
+// a string concatenation, which is not commutative and so also checks that
+// values are combined in the order of the elements.
+// The trees are changed by inserts and deletes and by the bulk addAll,
+// removeAll and deleteAll, which rebuild subtrees by joins.
+
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+public class TestAugmentedAVLTree {
+    static final int KEY_RANGE = 5000; // Elements are drawn from 0 .. KEY_RANGE - 1
+
+    public static void main(String[] args) {
+        Random rand = new Random(19);
+        System.out.println("Testing a sum");
+        testAggregate(rand, 0L, e -> (long)e, Long::sum, null);
+        System.out.println("Testing a minimum");
+        testAggregate(rand, null, e -> e, (a, b) -> (a == null) ? b : (b == null) ? a : Math.min(a, b), null);
+        System.out.println("Testing a concatenation");
+        testAggregate(rand, "", e -> e + ",", String::concat, null);
+        System.out.println("Testing a concatenation in reverse order");
+        testAggregate(rand, "", e -> e + ",", String::concat, java.util.Comparator.reverseOrder());
+        System.out.println("End of AugmentedAVLTree tests");
+    }
+
+    // Change a tree at random and compare its aggregates with brute-force folds.
+    public static <A> void testAggregate(Random rand, A identity, Function<Integer, A> measure,
+                                         BinaryOperator<A> combine, java.util.Comparator<Integer> comparator) {
+        AugmentedAVLTree<Integer, A> tree = new AugmentedAVLTree<>(comparator, identity, measure, combine);
+        TreeSet<Integer> expected = new TreeSet<>(comparator);
+        checkAggregates(tree, expected, identity, measure, combine, rand, "an empty tree");
+
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 200; i++) {
+                int value = rand.nextInt(KEY_RANGE);
+                if (rand.nextInt(3) == 0) {
+                    tree.delete(value);
+                    expected.remove(value);
+                }
+                else {
+                    tree.insert(value);
+                    expected.add(value);
+                }
+            }
+            checkAggregates(tree, expected, identity, measure, combine, rand, "inserts and deletes");
+        }
+
+        // Bulk changes relink whole subtrees by joins
+        AugmentedAVLTree<Integer, A> other = new AugmentedAVLTree<>(comparator, identity, measure, combine);
+        for (int i = 0; i < 2000; i++)
+            other.insert(rand.nextInt(KEY_RANGE));
+        tree.addAll(other);
+        expected.addAll(other);
+        checkAggregates(tree, expected, identity, measure, combine, rand, "addAll");
+
+        other.clear();
+        for (int i = 0; i < 1000; i++)
+            other.insert(rand.nextInt(KEY_RANGE));
+        tree.removeAll(other);
+        expected.removeAll(other);
+        checkAggregates(tree, expected, identity, measure, combine, rand, "removeAll");
+
+        Integer[] batch = new Integer[500];
+        for (int i = 0; i < batch.length; i++)
+            batch[i] = rand.nextInt(KEY_RANGE);
+        tree.deleteAll(batch);
+        expected.removeAll(java.util.Arrays.asList(batch));
+        checkAggregates(tree, expected, identity, measure, combine, rand, "deleteAll");
+    }
+
+    // Check the aggregate of the whole tree and of random ranges, including
+    // empty ranges and ranges reaching past either end.
+    static <A> void checkAggregates(AugmentedAVLTree<Integer, A> tree, TreeSet<Integer> expected, A identity,
+                                    Function<Integer, A> measure, BinaryOperator<A> combine,
+                                    Random rand, String description) {
+        A whole = fold(expected, identity, measure, combine);
+        if (!java.util.Objects.equals(tree.aggregate(), whole))
+            throw new RuntimeException("aggregate() after " + description + " returned " + tree.aggregate()
+                    + ".  Correct value is " + whole);
+        for (int i = 0; i < 200; i++) {
+            int a = rand.nextInt(KEY_RANGE + 20) - 10;
+            int b = a + rand.nextInt(KEY_RANGE / 4);
+            // lo must come first in the tree's order
+            int lo = (expected.comparator() == null) ? a : b;
+            int hi = (expected.comparator() == null) ? b : a;
+            A result = tree.aggregate(lo, hi);
+            A correct = fold(expected.subSet(lo, true, hi, false), identity, measure, combine);
+            if (!java.util.Objects.equals(result, correct))
+                throw new RuntimeException("aggregate(" + lo + ", " + hi + ") after " + description
+                        + " returned " + result + ".  Correct value is " + correct);
+        }
+        try {
+            tree.aggregate(1, 0);
+            if (expected.comparator() == null)
+                throw new RuntimeException("aggregate(lo, hi) did not throw IllegalArgumentException when lo > hi");
+        }
+        catch (IllegalArgumentException ex) {
+            // Caught IllegalArgumentException:  Good!
+        }
+    }
+
+    // Combine the measures of the elements one at a time, in order.
+    static <A> A fold(java.util.Set<Integer> elements, A identity,
+                      Function<Integer, A> measure, BinaryOperator<A> combine) {
+        A value = identity;
+        for (Integer e : elements)
+            value = combine.apply(value, measure.apply(e));
+        return value;
+    }
+}
@@ -0,0 +1,144 @@
+// This program tests the bulk builds of BST and its AVL subclasses:  the array
+// constructors, which sort the array, drop duplicates and build a perfectly
+// balanced tree, and BST.addAll, which rebuilds the whole tree when the batch
+// is at least as large as the tree.  Ranges of at least 65536 elements are
+// built by two threads, so both the sequential and the forked builds are run.
+// After each build the elements and getSize() must match a java.util.TreeSet,
+// every node's left and right subtrees must differ in size by at most one,
+// and the AVL nodes must hold their correct heights and sizes.
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class TestBulkBuild {
+    public static void main(String[] args) {
+        Random rand = new Random(10);
+        System.out.println("Testing the array constructors");
+        for (int n : new int[] {0, 1, 2, 3, 1000, 70000, 300000})
+            testArrayConstructors(rand, n);
+        System.out.println("Testing BST.addAll");
+        for (int n : new int[] {0, 1, 1000, 70000})
+            testAddAll(rand, n);
+        System.out.println("End of bulk build tests");
+    }
+
+    // Build each kind of tree from an array with duplicates, then check that
+    // ordinary updates still work on the result.
+    public static void testArrayConstructors(Random rand, int n) {
+        Integer[] array = new Integer[n];
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < n; i++) {
+            array[i] = rand.nextInt(n + 1); // Plenty of duplicates
+            expected.add(array[i]);
+        }
+        Integer[] copy = array.clone();
+        List<BST<Integer>> trees = Arrays.asList(new BST<>(array), new AVLTree<>(array),
+                                                 new AVLTreeWithFastIterator<>(array));
+        if (!Arrays.equals(array, copy))
+            throw new RuntimeException("A constructor changed its argument");
+
+        for (BST<Integer> tree : trees) {
+            String description = "building a " + tree.getClass().getName() + " of " + n + " elements";
+            checkSame(tree, expected, description);
+            checkBuilt(tree.getRoot(), description);
+
+            TreeSet<Integer> updated = new TreeSet<>(expected);
+            for (int i = 0; i < 200; i++) {
+                int e = rand.nextInt(n + 10);
+                if (rand.nextBoolean()) {
+                    tree.insert(e);
+                    updated.add(e);
+                }
+                else {
+                    tree.delete(e);
+                    updated.remove(e);
+                }
+            }
+            checkSame(tree, updated, "updating after " + description);
+        }
+    }
+
+    // Add batches at least as large as the tree, which are merged and rebuilt,
+    // and smaller ones, which are inserted one at a time.
+    public static void testAddAll(Random rand, int n) {
+        BST<Integer> tree = new BST<>();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < n; i++) {
+            int e = rand.nextInt(2 * n + 1);
+            tree.insert(e);
+            expected.add(e);
+        }
+        List<Integer> batch = new ArrayList<>();
+        for (int i = 0; i < n + 10; i++)
+            batch.add(rand.nextInt(3 * n + 10)); // Overlapping the tree and itself
+        if (!tree.addAll(batch) || !expected.addAll(batch))
+            throw new RuntimeException("addAll of new elements returned false");
+        String description = "addAll of " + batch.size() + " elements to " + n;
+        checkSame(tree, expected, description);
+        checkBuilt(tree.getRoot(), description);
+
+        // A large batch of elements already in the tree changes nothing
+        List<Integer> existing = new ArrayList<>(expected);
+        java.util.Collections.shuffle(existing, rand);
+        if (tree.addAll(existing))
+            throw new RuntimeException("addAll of elements already in the tree returned true");
+        checkSame(tree, expected, "addAll of existing elements");
+
+        // A small batch is inserted one at a time
+        List<Integer> small = List.of(-1, -2, -1);
+        tree.addAll(small);
+        expected.addAll(small);
+        checkSame(tree, expected, "addAll of a small batch");
+    }
+
+    static void checkSame(BST<Integer> tree, TreeSet<Integer> expected, String description) {
+        List<Integer> elements = new ArrayList<>();
+        tree.iterator().forEachRemaining(elements::add);
+        if (tree.getSize() != expected.size() || !elements.equals(new ArrayList<>(expected)))
+            throw new RuntimeException("Elements do not match after " + description + ": "
+                    + tree.getSize() + " versus " + expected.size());
+        checkNode(tree.getRoot(), description);
+    }
+
+    // Check that a built tree is perfectly balanced:  the subtrees of every
+    // node differ in size by at most one.  Return the size of the subtree.
+    static int checkBuilt(BST.TreeNode<?> node, String description) {
+        if (node == null)
+            return 0;
+        int leftSize = checkBuilt(node.left, description), rightSize = checkBuilt(node.right, description);
+        if (Math.abs(leftSize - rightSize) > 1)
+            throw new RuntimeException("Node " + node.element + " has subtrees of " + leftSize + " and "
+                    + rightSize + " elements after " + description);
+        return 1 + leftSize + rightSize;
+    }
+
+    // Check the stored heights, the stored sizes and the AVL balance of the
+    // nodes that keep them.  Return the height of the subtree.
+    static int checkNode(BST.TreeNode<?> node, String description) {
+        if (node == null)
+            return -1;
+        int leftHeight = checkNode(node.left, description), rightHeight = checkNode(node.right, description);
+        int height = 1 + Math.max(leftHeight, rightHeight);
+        if (node instanceof AVLTree.AVLTreeNode) {
+            AVLTree.AVLTreeNode<?> avlNode = (AVLTree.AVLTreeNode<?>)node;
+            if (avlNode.height != height || Math.abs(leftHeight - rightHeight) > 1)
+                throw new RuntimeException("Node " + node.element + " has height " + avlNode.height
+                        + " instead of " + height + " after " + description);
+        }
+        if (node instanceof AVLTreeWithFastIterator.AVLTreeNode) {
+            AVLTreeWithFastIterator.AVLTreeNode<?> fastNode = (AVLTreeWithFastIterator.AVLTreeNode<?>)node;
+            int size = 1 + sizeOf(node.left) + sizeOf(node.right);
+            if (fastNode.height != height || fastNode.size != size || Math.abs(leftHeight - rightHeight) > 1)
+                throw new RuntimeException("Node " + node.element + " has height " + fastNode.height + " and size "
+                        + fastNode.size + " instead of " + height + " and " + size + " after " + description);
+        }
+        return height;
+    }
+
+    static int sizeOf(BST.TreeNode<?> node) {
+        return (node == null) ? 0 : 1 + sizeOf(node.left) + sizeOf(node.right);
+    }
+}
@@ -0,0 +1,156 @@
+// This program tests ConcurrentAVLTree, whose readers walk the tree without
+// locking while writers change it, and retry under the read lock only if a
+// writer ran meanwhile.
+// Writer threads insert and delete odd keys while reader threads search for
+// even keys, which are always present, and for keys that are never present,
+// and iterate over the tree.  A reader that accepted the result of a walk
+// through a half-updated tree would miss an even key, find an absent one or
+// see keys out of order.  At the end the tree must hold exactly the keys the
+// writers left in it.
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TestConcurrentAVLTree {
+    static final int KEY_RANGE = 20000; // Keys are 0 .. KEY_RANGE - 1
+    static final int WRITERS = 2;
+    static final int READERS = 3;
+    static final int WRITES_PER_WRITER = 300000;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("Testing single-threaded use against TreeSet");
+        testSingleThreaded(new Random(11), null);
+        testSingleThreaded(new Random(11), java.util.Comparator.reverseOrder());
+        System.out.println("Testing lock-free reads under concurrent writers");
+        testConcurrentReads();
+        System.out.println("End of ConcurrentAVLTree tests");
+    }
+
+    // Apply the same operations to the tree and to a TreeSet from one thread.
+    public static void testSingleThreaded(Random rand, java.util.Comparator<Integer> comparator) {
+        ConcurrentAVLTree<Integer> tree = new ConcurrentAVLTree<>(comparator);
+        TreeSet<Integer> expected = new TreeSet<>(comparator);
+        for (int i = 0; i < 20000; i++) {
+            int key = rand.nextInt(1000);
+            boolean result, correct;
+            switch (rand.nextInt(3)) {
+                case 0:
+                    result = tree.insert(key);
+                    correct = expected.add(key);
+                    break;
+                case 1:
+                    result = tree.delete(key);
+                    correct = expected.remove(key);
+                    break;
+                default:
+                    result = tree.search(key);
+                    correct = expected.contains(key);
+            }
+            if (result != correct)
+                throw new RuntimeException("Operation " + i + " on key " + key + " returned " + result
+                        + ".  Correct value is " + correct);
+        }
+        List<Integer> elements = new ArrayList<>();
+        tree.iterator().forEachRemaining(elements::add);
+        if (tree.getSize() != expected.size() || !elements.equals(new ArrayList<>(expected)))
+            throw new RuntimeException("Elements do not match with comparator " + comparator);
+
+        // Removing through the iterator
+        for (Iterator<Integer> iter = tree.iterator(); iter.hasNext(); )
+            if (iter.next() % 2 == 0)
+                iter.remove();
+        expected.removeIf(key -> key % 2 == 0);
+        elements.clear();
+        tree.iterator().forEachRemaining(elements::add);
+        if (!elements.equals(new ArrayList<>(expected)))
+            throw new RuntimeException("Elements do not match after removing through the iterator");
+    }
+
+    // Run writers and readers at the same time and check every answer the
+    // readers get.
+    public static void testConcurrentReads() throws InterruptedException {
+        ConcurrentAVLTree<Integer> tree = new ConcurrentAVLTree<>();
+        for (int key = 0; key < KEY_RANGE; key += 2)
+            tree.insert(key); // Even keys stay for the whole test
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+        List<TreeSet<Integer>> written = new ArrayList<>(); // Odd keys each writer left in the tree
+        List<Thread> writers = new ArrayList<>(), readers = new ArrayList<>();
+
+        for (int w = 0; w < WRITERS; w++) {
+            TreeSet<Integer> present = new TreeSet<>();
+            written.add(present);
+            int writer = w;
+            writers.add(new Thread(() -> {
+                // Each writer owns the odd keys k with (k / 2) % WRITERS == writer
+                Random rand = new Random(writer);
+                for (int i = 0; i < WRITES_PER_WRITER; i++) {
+                    int key = 2 * (WRITERS * rand.nextInt(KEY_RANGE / (2 * WRITERS)) + writer) + 1;
+                    if (rand.nextBoolean()) {
+                        if (tree.insert(key) != present.add(key))
+                            failure.compareAndSet(null, "insert(" + key + ") returned the wrong value");
+                    }
+                    else if (tree.delete(key) != present.remove(key))
+                        failure.compareAndSet(null, "delete(" + key + ") returned the wrong value");
+                }
+            }));
+        }
+
+        for (int r = 0; r < READERS; r++) {
+            int reader = r;
+            readers.add(new Thread(() -> {
+                Random rand = new Random(100 + reader);
+                long reads = 0;
+                while (writing.get() || reads < 1000) {
+                    reads++;
+                    int key = 2 * rand.nextInt(KEY_RANGE / 2);
+                    if (!tree.search(key))
+                        failure.compareAndSet(null, "search(" + key + ") missed a key that is always present");
+                    int absent = (rand.nextBoolean() ? -1 : 1) * (KEY_RANGE + rand.nextInt(KEY_RANGE));
+                    if (tree.search(absent))
+                        failure.compareAndSet(null, "search(" + absent + ") found a key that was never inserted");
+                    if (rand.nextInt(2000) == 0) {
+                        // A weakly consistent scan sees every even key, in order
+                        int previous = Integer.MIN_VALUE, evens = 0;
+                        for (Integer element : tree) {
+                            if (element <= previous)
+                                failure.compareAndSet(null, "The iterator returned " + element + " after " + previous);
+                            previous = element;
+                            if (element % 2 == 0)
+                                evens++;
+                        }
+                        if (evens != KEY_RANGE / 2)
+                            failure.compareAndSet(null, "The iterator returned " + evens + " of the "
+                                    + (KEY_RANGE / 2) + " even keys");
+                    }
+                }
+            }));
+        }
+
+        readers.forEach(Thread::start);
+        writers.forEach(Thread::start);
+        for (Thread writer : writers)
+            writer.join();
+        writing.set(false);
+        for (Thread reader : readers)
+            reader.join();
+        if (failure.get() != null)
+            throw new RuntimeException(failure.get());
+
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int key = 0; key < KEY_RANGE; key += 2)
+            expected.add(key);
+        written.forEach(expected::addAll);
+        List<Integer> elements = new ArrayList<>();
+        tree.iterator().forEachRemaining(elements::add);
+        if (tree.getSize() != expected.size() || !elements.equals(new ArrayList<>(expected)))
+            throw new RuntimeException("The tree does not hold the keys the writers left: "
+                    + tree.getSize() + " versus " + expected.size());
+    }
+}
@@ -0,0 +1,131 @@
+// This program tests the array copies of the trees against a java.util.List
+// of the same elements:  copyRange(fromIndex, toIndex, dest) of
+// AVLTreeWithFastIterator for every sub-range of a small tree and random
+// ones of a large tree, with its bounds checks, and the traversal-based
+// toArray() and toArray(T[]) of BST, AVLTree and AVLTreeWithFastIterator.
+// toArray(T[]) must fill an array that is large enough, put null after the
+// last element of an oversized one and leave the rest alone, and otherwise
+// allocate an array of the same component type.
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class TestCopyRange {
+    static final String UNTOUCHED = "untouched"; // Fills the slots a copy must not write
+
+    public static void main(String[] args) {
+        Random rand = new Random(25);
+        System.out.println("Testing copyRange");
+        testCopyRange(rand, 40, true);
+        testCopyRange(rand, 100000, false);
+        System.out.println("Testing bad arguments to copyRange");
+        testBadArguments();
+        System.out.println("Testing toArray");
+        for (int n : new int[] {0, 1, 2, 1000}) {
+            testToArray(rand, new BST<>(), n);
+            testToArray(rand, new AVLTree<>(), n);
+            testToArray(rand, new AVLTreeWithFastIterator<>(), n);
+        }
+        System.out.println("End of array copy tests");
+    }
+
+    static List<Integer> fill(Random rand, BST<Integer> tree, int n) {
+        TreeSet<Integer> elements = new TreeSet<>();
+        while (elements.size() < n) {
+            int e = rand.nextInt(4 * n);
+            tree.insert(e);
+            elements.add(e);
+        }
+        return new ArrayList<>(elements);
+    }
+
+    // Copy sub-ranges into arrays with room to spare, and check both the copy
+    // and that nothing after it was written.
+    public static void testCopyRange(Random rand, int n, boolean everyRange) {
+        AVLTreeWithFastIterator<Integer> tree = new AVLTreeWithFastIterator<>();
+        List<Integer> list = fill(rand, tree, n);
+        int ranges = everyRange ? (n + 1) * (n + 1) : 2000;
+        for (int r = 0; r < ranges; r++) {
+            int from, to;
+            if (everyRange) {
+                from = r / (n + 1);
+                to = r % (n + 1);
+                if (from > to)
+                    continue;
+            }
+            else {
+                from = rand.nextInt(n + 1);
+                to = from + rand.nextInt(Math.min(n - from, 500) + 1);
+            }
+            Object[] dest = new Object[to - from + 3];
+            Arrays.fill(dest, UNTOUCHED);
+            tree.copyRange(from, to, dest);
+            if (!Arrays.asList(dest).subList(0, to - from).equals(list.subList(from, to)))
+                throw new RuntimeException("copyRange(" + from + ", " + to + ") copied the wrong elements");
+            for (int i = to - from; i < dest.length; i++)
+                if (dest[i] != UNTOUCHED)
+                    throw new RuntimeException("copyRange(" + from + ", " + to + ") wrote past the range at " + i);
+        }
+    }
+
+    public static void testBadArguments() {
+        AVLTreeWithFastIterator<Integer> tree = new AVLTreeWithFastIterator<>();
+        for (int i = 0; i < 10; i++)
+            tree.insert(i);
+        int[][] badRanges = {{-1, 5}, {0, 11}, {6, 5}, {11, 11}};
+        for (int[] range : badRanges)
+            expectOutOfBounds(() -> tree.copyRange(range[0], range[1], new Object[20]),
+                    "copyRange(" + range[0] + ", " + range[1] + ")");
+        expectOutOfBounds(() -> tree.copyRange(2, 8, new Object[5]), "copyRange into an array too short");
+        tree.copyRange(5, 5, new Object[0]); // An empty range fits anywhere
+        tree.copyRange(10, 10, new Object[0]);
+    }
+
+    static void expectOutOfBounds(Runnable action, String description) {
+        try {
+            action.run();
+            throw new RuntimeException(description + " did not throw IndexOutOfBoundsException");
+        }
+        catch (IndexOutOfBoundsException ex) {
+            // Caught IndexOutOfBoundsException:  Good!
+        }
+    }
+
+    public static void testToArray(Random rand, BST<Integer> tree, int n) {
+        List<Integer> list = fill(rand, tree, n);
+        String description = tree.getClass().getName() + " of " + n + " elements";
+        if (!Arrays.equals(tree.toArray(), list.toArray()))
+            throw new RuntimeException("toArray() does not match for " + description);
+
+        // Too short:  a new array of the same component type
+        Number[] numbers = tree.toArray(new Number[0]);
+        if (numbers.getClass() != Number[].class || !Arrays.equals(numbers, list.toArray()))
+            throw new RuntimeException("toArray of a short array does not match for " + description);
+
+        // Exactly the right size:  filled in place
+        Integer[] exact = new Integer[n];
+        if (tree.toArray(exact) != exact || !Arrays.equals(exact, list.toArray()))
+            throw new RuntimeException("toArray of an exact array does not match for " + description);
+
+        // Oversized:  filled in place, then null, then untouched
+        Object[] oversized = new Object[n + 3];
+        Arrays.fill(oversized, UNTOUCHED);
+        if (tree.toArray(oversized) != oversized
+                || !Arrays.asList(oversized).subList(0, n).equals(list)
+                || oversized[n] != null || oversized[n + 1] != UNTOUCHED || oversized[n + 2] != UNTOUCHED)
+            throw new RuntimeException("toArray of an oversized array does not match for " + description
+                    + ": " + Arrays.toString(Arrays.copyOf(oversized, Math.min(oversized.length, 10))));
+
+        if (n > 0)
+            try {
+                tree.toArray(new String[n]);
+                throw new RuntimeException("toArray into a String[] did not throw ArrayStoreException for " + description);
+            }
+            catch (ArrayStoreException ex) {
+                // Caught ArrayStoreException:  Good!
+            }
+    }
+}
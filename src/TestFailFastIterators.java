@@ -0,0 +1,194 @@
+// This program tests that the tree iterators fail fast and support remove().
+// The iterators tested are those of BST, AVLTree (including its descending and
+// range views) and AVLTreeWithFastIterator (including iterator(int index)).
+// Each iterator must throw ConcurrentModificationException once its tree is
+// changed other than through the iterator, and must keep going correctly when
+// elements are removed through it during a scan.
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+public class TestFailFastIterators {
+    static final int TREE_SIZE = 2000;
+
+    public static void main(String[] args) {
+        Random rand = new Random(21);
+        for (String name : new String[] {"BST", "AVLTree", "AVLTreeWithFastIterator"}) {
+            System.out.println("Testing " + name + " iterators");
+            for (String view : views(name)) {
+                testRemoveDuringScan(rand, name, view);
+                testFailFast(name, view);
+                testIllegalRemove(name, view);
+            }
+        }
+        System.out.println("End of fail-fast iterator tests");
+    }
+
+    // The iterators that each kind of tree offers.
+    static String[] views(String name) {
+        if (name.equals("AVLTree"))
+            return new String[] {"iterator()", "descendingIterator()", "subSet(500, 1500).iterator()"};
+        if (name.equals("AVLTreeWithFastIterator"))
+            return new String[] {"iterator()", "iterator(700)"};
+        return new String[] {"iterator()"};
+    }
+
+    static BST<Integer> newTree(String name) {
+        if (name.equals("AVLTree"))
+            return new AVLTree<>();
+        if (name.equals("AVLTreeWithFastIterator"))
+            return new AVLTreeWithFastIterator<>();
+        return new BST<>();
+    }
+
+    // Obtain an iterator of the given view of the tree.
+    static Iterator<Integer> iterator(BST<Integer> tree, String view) {
+        switch (view) {
+            case "descendingIterator()":
+                return ((AVLTree<Integer>)tree).descendingIterator();
+            case "subSet(500, 1500).iterator()":
+                return ((AVLTree<Integer>)tree).subSet(500, 1500).iterator();
+            case "iterator(700)":
+                return ((AVLTreeWithFastIterator<Integer>)tree).iterator(700);
+            default:
+                return tree.iterator();
+        }
+    }
+
+    // Return the elements the given view of a tree holding set should return.
+    static List<Integer> expectedElements(TreeSet<Integer> set, String view) {
+        switch (view) {
+            case "descendingIterator()":
+                return new ArrayList<>(set.descendingSet());
+            case "subSet(500, 1500).iterator()":
+                return new ArrayList<>(set.subSet(500, 1500));
+            case "iterator(700)":
+                return new ArrayList<>(set).subList(700, set.size());
+            default:
+                return new ArrayList<>(set);
+        }
+    }
+
+    // Fill a tree and a TreeSet with the values 0 .. TREE_SIZE - 1 in random order.
+    static BST<Integer> fill(String name, TreeSet<Integer> expected, Random rand) {
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < TREE_SIZE; i++)
+            values.add(i);
+        java.util.Collections.shuffle(values, rand);
+        BST<Integer> tree = newTree(name);
+        for (Integer value : values) {
+            tree.insert(value);
+            expected.add(value);
+        }
+        return tree;
+    }
+
+    // Remove a random third of the elements through the iterator while scanning.
+    // The scan must still return every element exactly once, in order, and the
+    // tree must end up without exactly the removed elements.
+    public static void testRemoveDuringScan(Random rand, String name, String view) {
+        TreeSet<Integer> expected = new TreeSet<>();
+        BST<Integer> tree = fill(name, expected, rand);
+        List<Integer> expectedScan = expectedElements(expected, view);
+        List<Integer> scan = new ArrayList<>();
+        for (Iterator<Integer> iter = iterator(tree, view); iter.hasNext(); ) {
+            Integer element = iter.next();
+            scan.add(element);
+            if (rand.nextInt(3) == 0) {
+                iter.remove();
+                expected.remove(element);
+            }
+        }
+        String description = name + "." + view;
+        if (!scan.equals(expectedScan))
+            throw new RuntimeException(description + " returned the wrong elements while removing");
+        checkSame(tree, expected, "removing through " + description);
+
+        // Remove everything the iterator returns
+        for (Iterator<Integer> iter = iterator(tree, view); iter.hasNext(); ) {
+            expected.remove(iter.next());
+            iter.remove();
+        }
+        checkSame(tree, expected, "removing all elements through " + description);
+    }
+
+    // Change the tree behind an iterator's back and check that the iterator
+    // notices on its next call to next() or remove().
+    public static void testFailFast(String name, String view) {
+        String description = name + "." + view;
+        Function<BST<Integer>, Iterator<Integer>> started = tree -> {
+            Iterator<Integer> iter = iterator(tree, view);
+            iter.next();
+            return iter;
+        };
+
+        BST<Integer> tree = fill(name, new TreeSet<>(), new Random(1));
+        Iterator<Integer> iter = started.apply(tree);
+        tree.insert(TREE_SIZE + 1);
+        expectConcurrentModification(iter::next, description + ".next() after insert");
+
+        iter = started.apply(tree);
+        tree.delete(1000);
+        expectConcurrentModification(iter::remove, description + ".remove() after delete");
+
+        iter = started.apply(tree);
+        tree.clear();
+        expectConcurrentModification(iter::next, description + ".next() after clear");
+
+        // Failed inserts and deletes change nothing, so they are allowed
+        tree = fill(name, new TreeSet<>(), new Random(1));
+        iter = started.apply(tree);
+        tree.insert(5);
+        tree.delete(-5);
+        iter.next();
+
+        // Removing through one iterator invalidates another
+        Iterator<Integer> other = started.apply(tree);
+        iter.remove();
+        iter.next();
+        expectConcurrentModification(other::next, description + ".next() after another iterator's remove");
+    }
+
+    // remove() is only allowed once after each call to next().
+    public static void testIllegalRemove(String name, String view) {
+        String description = name + "." + view;
+        BST<Integer> tree = fill(name, new TreeSet<>(), new Random(2));
+        Iterator<Integer> iter = iterator(tree, view);
+        expectIllegalState(iter::remove, description + ".remove() before next()");
+        iter.next();
+        iter.remove();
+        expectIllegalState(iter::remove, description + ".remove() twice");
+    }
+
+    static void expectConcurrentModification(Runnable action, String description) {
+        try {
+            action.run();
+            throw new RuntimeException(description + " did not throw ConcurrentModificationException");
+        }
+        catch (ConcurrentModificationException ex) {
+            // Caught ConcurrentModificationException:  Good!
+        }
+    }
+
+    static void expectIllegalState(Runnable action, String description) {
+        try {
+            action.run();
+            throw new RuntimeException(description + " did not throw IllegalStateException");
+        }
+        catch (IllegalStateException ex) {
+            // Caught IllegalStateException:  Good!
+        }
+    }
+
+    static void checkSame(BST<Integer> tree, TreeSet<Integer> expected, String description) {
+        List<Integer> elements = new ArrayList<>();
+        tree.iterator().forEachRemaining(elements::add);
+        if (tree.getSize() != expected.size() || !elements.equals(new ArrayList<>(expected)))
+            throw new RuntimeException("Elements do not match after " + description);
+    }
+}
@@ -0,0 +1,198 @@
+// This program tests IntAVLTree, which stores unboxed int keys, against
+// java.util.TreeSet, with the natural order and with a reversed IntComparator.
+// The methods tested are insert, delete and search, get and rank,
+// iterator(int index), inorder and forEachInRange, including stopping early
+// and keys at the ends of the int range.  After every batch of updates each
+// node must hold its correct height and size and be balanced.
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class TestIntAVLTree {
+    public static void main(String[] args) {
+        Random rand = new Random(6);
+        System.out.println("Testing updates against TreeSet");
+        for (int trial = 0; trial < 30; trial++) {
+            testUpdates(rand, null, null, 1 + rand.nextInt(1000));
+            testUpdates(rand, ((IntComparator)Integer::compare).reversed(), Comparator.reverseOrder(),
+                        1 + rand.nextInt(1000));
+        }
+        System.out.println("Testing extreme keys");
+        testExtremeKeys();
+        System.out.println("Testing inorder and forEachInRange");
+        testTraversals(rand);
+        System.out.println("Testing the array constructor and clear");
+        testArrayConstructorAndClear(rand);
+        System.out.println("End of IntAVLTree tests");
+    }
+
+    // Apply the same random updates to the tree and to a TreeSet with the same
+    // order, then compare every query.
+    public static void testUpdates(Random rand, IntComparator comparator,
+                                   Comparator<Integer> expectedOrder, int range) {
+        IntAVLTree tree = new IntAVLTree(comparator);
+        TreeSet<Integer> expected = new TreeSet<>(expectedOrder);
+        for (int i = 0; i < 3000; i++) {
+            int key = rand.nextInt(range) - range / 2;
+            boolean result, correct;
+            if (rand.nextInt(3) > 0) {
+                result = tree.insert(key);
+                correct = expected.add(key);
+            }
+            else {
+                result = tree.delete(key);
+                correct = expected.remove(key);
+            }
+            if (result != correct)
+                throw new RuntimeException("Update " + i + " on key " + key + " returned " + result
+                        + ".  Correct value is " + correct);
+        }
+        checkSame(tree, expected, "random updates in a range of " + range);
+        for (int key = -range / 2 - 1; key <= range / 2 + 1; key++)
+            if (tree.search(key) != expected.contains(key) || tree.rank(key) != expected.headSet(key).size())
+                throw new RuntimeException("search or rank of " + key + " does not match");
+    }
+
+    // Keys at both ends of the int range, whose differences overflow an int.
+    public static void testExtremeKeys() {
+        IntAVLTree tree = new IntAVLTree();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int key : new int[] {Integer.MAX_VALUE, Integer.MIN_VALUE, 0, -1, 1,
+                                  Integer.MAX_VALUE - 1, Integer.MIN_VALUE + 1}) {
+            tree.insert(key);
+            expected.add(key);
+        }
+        checkSame(tree, expected, "inserting extreme keys");
+        checkRange(tree, expected, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        tree.delete(Integer.MIN_VALUE);
+        expected.remove(Integer.MIN_VALUE);
+        checkSame(tree, expected, "deleting Integer.MIN_VALUE");
+        if (tree.rank(Integer.MAX_VALUE) != expected.size() - 1)
+            throw new RuntimeException("rank(Integer.MAX_VALUE) returned " + tree.rank(Integer.MAX_VALUE));
+    }
+
+    // inorder and forEachInRange visit the keys in order, and stop as soon as
+    // the visitor returns false.  forEachInRange takes lo <= k < hi.
+    public static void testTraversals(Random rand) {
+        IntAVLTree tree = new IntAVLTree();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < 500; i++) {
+            int key = 2 * rand.nextInt(400); // Even keys, so odd bounds miss
+            tree.insert(key);
+            expected.add(key);
+        }
+        for (int i = 0; i < 200; i++) {
+            int lo = rand.nextInt(820) - 10, hi = lo + rand.nextInt(100);
+            checkRange(tree, expected, lo, hi);
+        }
+        checkRange(tree, expected, 10, 10); // An empty range
+
+        for (int limit : new int[] {0, 1, expected.size() / 2, expected.size() - 1}) {
+            List<Integer> visited = new ArrayList<>();
+            boolean all = tree.inorder(key -> {
+                visited.add(key);
+                return visited.size() <= limit;
+            });
+            if (all || !visited.equals(new ArrayList<>(expected).subList(0, limit + 1)))
+                throw new RuntimeException("inorder did not stop after " + (limit + 1) + " keys");
+        }
+        List<Integer> visited = new ArrayList<>();
+        if (!tree.inorder(key -> visited.add(key)) || !visited.equals(new ArrayList<>(expected)))
+            throw new RuntimeException("inorder did not visit every key in order");
+
+        List<Integer> inRange = new ArrayList<>();
+        int lo = expected.first(), hi = expected.last();
+        boolean all = tree.forEachInRange(lo, hi, key -> {
+            inRange.add(key);
+            return inRange.size() < 3;
+        });
+        if (all || !inRange.equals(new ArrayList<>(expected).subList(0, 3)))
+            throw new RuntimeException("forEachInRange did not stop after 3 keys");
+
+        try {
+            tree.forEachInRange(5, 4, key -> true);
+            throw new RuntimeException("forEachInRange did not throw IllegalArgumentException on lo > hi");
+        }
+        catch (IllegalArgumentException ex) {
+            // Caught IllegalArgumentException:  Good!
+        }
+    }
+
+    // Build from an array with duplicates, clear, and reuse the tree.
+    public static void testArrayConstructorAndClear(Random rand) {
+        int[] keys = new int[2000];
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = rand.nextInt(1000);
+            expected.add(keys[i]);
+        }
+        IntAVLTree tree = new IntAVLTree(keys);
+        checkSame(tree, expected, "building from an array");
+
+        tree.clear();
+        expected.clear();
+        checkSame(tree, expected, "clear");
+        for (int i = 0; i < 500; i++) {
+            int key = rand.nextInt(100);
+            tree.insert(key);
+            expected.add(key);
+        }
+        checkSame(tree, expected, "inserting after clear");
+
+        for (int index : new int[] {-1, tree.size()})
+            try {
+                tree.get(index);
+                throw new RuntimeException("get(int) did not throw IndexOutOfBoundsException on bad index " + index);
+            }
+            catch (IndexOutOfBoundsException ex) {
+                // Caught IndexOutOfBoundsException:  Good!
+            }
+    }
+
+    // Check that forEachInRange(lo, hi) visits the keys of the subSet.
+    static void checkRange(IntAVLTree tree, TreeSet<Integer> expected, int lo, int hi) {
+        List<Integer> visited = new ArrayList<>();
+        if (!tree.forEachInRange(lo, hi, key -> visited.add(key))
+                || !visited.equals(new ArrayList<>(expected.subSet(lo, hi))))
+            throw new RuntimeException("forEachInRange(" + lo + ", " + hi + ") returned " + visited);
+    }
+
+    // Check sizes, get(i), iterator(i) for every index, and the nodes.
+    static void checkSame(IntAVLTree tree, TreeSet<Integer> expected, String description) {
+        List<Integer> sorted = new ArrayList<>(expected);
+        if (tree.size() != sorted.size() || tree.getSize() != sorted.size() || tree.isEmpty() != sorted.isEmpty())
+            throw new RuntimeException("Sizes do not match after " + description + ": "
+                    + tree.size() + " versus " + sorted.size());
+        for (int i = 0; i < sorted.size(); i++)
+            if (tree.get(i) != sorted.get(i))
+                throw new RuntimeException("get(" + i + ") after " + description + " returned " + tree.get(i)
+                        + ".  Correct value is " + sorted.get(i));
+        for (int index = 0; index <= sorted.size(); index += 1 + sorted.size() / 20) {
+            PrimitiveIterator.OfInt iter = tree.iterator(index);
+            for (int i = index; i < sorted.size(); i++)
+                if (iter.nextInt() != sorted.get(i))
+                    throw new RuntimeException("iterator(" + index + ") after " + description
+                            + " returned the wrong key at index " + i);
+            if (iter.hasNext())
+                throw new RuntimeException("iterator(" + index + ") after " + description + " returned too many keys");
+        }
+        checkNode(tree.getRoot(), description);
+    }
+
+    // Check the stored height and size of every node and the AVL balance.
+    // Return the height of the subtree.
+    static int checkNode(IntAVLTree.AVLTreeNode node, String description) {
+        if (node == null)
+            return -1;
+        int leftHeight = checkNode(node.left, description), rightHeight = checkNode(node.right, description);
+        int leftSize = (node.left == null) ? 0 : node.left.size, rightSize = (node.right == null) ? 0 : node.right.size;
+        if (node.height != 1 + Math.max(leftHeight, rightHeight) || node.size != 1 + leftSize + rightSize
+                || Math.abs(leftHeight - rightHeight) > 1)
+            throw new RuntimeException("Node " + node.element + " is wrong after " + description);
+        return node.height;
+    }
+}
@@ -0,0 +1,213 @@
+// This program tests IntervalTree by checking stabbingIterator, overlapIterator,
+// stabbing and overlapping against a brute-force filter over a java.util.TreeSet
+// holding the same intervals.  Results must come back in order.
+// The tree is changed by inserts and deletes and by the bulk addAll and
+// removeAll, and after every batch each node must hold the greatest end of
+// its subtree, whatever rotations and joins have moved it.
+// A query's iterator must throw ConcurrentModificationException once the tree
+// has been changed.
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+public class TestIntervalTree {
+    static final int POINT_RANGE = 1000; // Interval starts are drawn from 0 .. POINT_RANGE - 1
+
+    public static void main(String[] args) {
+        Random rand = new Random(20);
+        System.out.println("Testing queries against a brute-force filter");
+        testQueries(rand);
+        System.out.println("Testing bad arguments");
+        testBadArguments();
+        System.out.println("Testing fail-fast queries");
+        testFailFast();
+        System.out.println("End of IntervalTree tests");
+    }
+
+    // Change the tree at random and compare every kind of query with a filter.
+    public static void testQueries(Random rand) {
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        TreeSet<IntervalTree.Interval<Integer>> expected = new TreeSet<>();
+        checkQueries(tree, expected, rand, "an empty tree");
+
+        for (int round = 0; round < 30; round++) {
+            for (int i = 0; i < 300; i++) {
+                IntervalTree.Interval<Integer> interval = randomInterval(rand);
+                boolean result, correct;
+                if (rand.nextInt(3) > 0) {
+                    result = tree.insert(interval.getStart(), interval.getEnd());
+                    correct = expected.add(interval);
+                }
+                else {
+                    result = tree.delete(interval.getStart(), interval.getEnd());
+                    correct = expected.remove(interval);
+                }
+                if (result != correct)
+                    throw new RuntimeException("Update on " + interval + " returned " + result
+                            + ".  Correct value is " + correct);
+            }
+            if (round % 3 == 0) { // Bulk changes, which join subtrees
+                List<IntervalTree.Interval<Integer>> batch = new ArrayList<>();
+                for (int i = 0; i < 200; i++)
+                    batch.add(randomInterval(rand));
+                if (round % 2 == 0) {
+                    tree.addAll(batch);
+                    expected.addAll(batch);
+                }
+                else {
+                    batch.addAll(new ArrayList<>(expected).subList(0, expected.size() / 4));
+                    tree.removeAll(batch);
+                    expected.removeAll(batch);
+                }
+            }
+            checkQueries(tree, expected, rand, "round " + round);
+        }
+
+        // Deleting every interval in a random order keeps the ends right too
+        List<IntervalTree.Interval<Integer>> intervals = new ArrayList<>(expected);
+        java.util.Collections.shuffle(intervals, rand);
+        for (int i = 0; i < intervals.size(); i++) {
+            tree.delete(intervals.get(i));
+            expected.remove(intervals.get(i));
+            if (i % 100 == 0)
+                checkQueries(tree, expected, rand, "deleting " + i + " intervals");
+        }
+        checkQueries(tree, expected, rand, "deleting every interval");
+    }
+
+    // Mostly short intervals, and a few long ones that span many others.
+    static IntervalTree.Interval<Integer> randomInterval(Random rand) {
+        int start = rand.nextInt(POINT_RANGE);
+        int length = (rand.nextInt(20) == 0) ? rand.nextInt(POINT_RANGE / 2) : rand.nextInt(20);
+        return new IntervalTree.Interval<>(start, start + length);
+    }
+
+    // A query range with lo > hi, and an interval with start > end, are refused.
+    public static void testBadArguments() {
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        tree.insert(1, 5);
+        try {
+            tree.overlapIterator(5, 4);
+            throw new RuntimeException("overlapIterator did not throw IllegalArgumentException on lo > hi");
+        }
+        catch (IllegalArgumentException ex) {
+            // Caught IllegalArgumentException:  Good!
+        }
+        try {
+            tree.insert(5, 4);
+            throw new RuntimeException("insert did not throw IllegalArgumentException on start > end");
+        }
+        catch (IllegalArgumentException ex) {
+            // Caught IllegalArgumentException:  Good!
+        }
+        Iterator<IntervalTree.Interval<Integer>> iter = tree.stabbingIterator(0);
+        if (iter.hasNext())
+            throw new RuntimeException("stabbingIterator(0) found " + iter.next());
+        try {
+            iter.next();
+            throw new RuntimeException("next() at the end did not throw NoSuchElementException");
+        }
+        catch (java.util.NoSuchElementException ex) {
+            // Caught NoSuchElementException:  Good!
+        }
+    }
+
+    // Change the tree while a query is in progress.
+    public static void testFailFast() {
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        for (int i = 0; i < 50; i++)
+            tree.insert(i, i + 10);
+
+        Iterator<IntervalTree.Interval<Integer>> iter = tree.stabbingIterator(20);
+        iter.next();
+        tree.insert(15, 26);
+        expectConcurrentModification(iter::next, "stabbingIterator next() after insert");
+
+        iter = tree.overlapIterator(5, 30);
+        iter.next();
+        tree.delete(40, 50); // Outside the query range, but still a change
+        expectConcurrentModification(iter::next, "overlapIterator next() after delete");
+
+        Iterator<IntervalTree.Interval<Integer>> stream = tree.overlapping(0, 100).iterator();
+        stream.next();
+        tree.addAll(java.util.List.of(new IntervalTree.Interval<>(200, 300)));
+        expectConcurrentModification(stream::next, "overlapping stream after addAll");
+
+        // Failed updates change nothing, so they are allowed
+        iter = tree.overlapIterator(5, 30);
+        iter.next();
+        tree.insert(15, 25);
+        tree.delete(1000, 2000);
+        iter.next();
+    }
+
+    static void expectConcurrentModification(Runnable action, String description) {
+        try {
+            action.run();
+            throw new RuntimeException(description + " did not throw ConcurrentModificationException");
+        }
+        catch (java.util.ConcurrentModificationException ex) {
+            // Caught ConcurrentModificationException:  Good!
+        }
+    }
+
+    // Check the greatest ends, then stabbing and overlap queries at points
+    // and ranges in and around the intervals.
+    static void checkQueries(IntervalTree<Integer> tree, TreeSet<IntervalTree.Interval<Integer>> expected,
+                             Random rand, String description) {
+        if (tree.getSize() != expected.size() || !new ArrayList<>(tree).equals(new ArrayList<>(expected)))
+            throw new RuntimeException("Intervals do not match after " + description);
+        Integer maxEnd = checkMaxEnd(tree.getRoot(), description);
+        Integer expectedMaxEnd = expected.stream().map(IntervalTree.Interval::getEnd).max(Integer::compare).orElse(null);
+        if (!java.util.Objects.equals(maxEnd, expectedMaxEnd) || !java.util.Objects.equals(tree.aggregate(), expectedMaxEnd))
+            throw new RuntimeException("The greatest end is " + tree.aggregate() + " after " + description
+                    + ".  Correct value is " + expectedMaxEnd);
+
+        for (int i = 0; i < 100; i++) {
+            int point = rand.nextInt(POINT_RANGE + 40) - 20;
+            List<IntervalTree.Interval<Integer>> correct = filter(expected, interval -> interval.contains(point));
+            check(tree.stabbingIterator(point), correct, "stabbingIterator(" + point + ") after " + description);
+            check(tree.stabbing(point).iterator(), correct, "stabbing(" + point + ") after " + description);
+
+            int lo = rand.nextInt(POINT_RANGE + 40) - 20, hi = lo + rand.nextInt(50);
+            correct = filter(expected, interval -> interval.overlaps(lo, hi));
+            check(tree.overlapIterator(lo, hi), correct, "overlapIterator(" + lo + ", " + hi + ") after " + description);
+            if (!tree.overlapping(lo, hi).collect(Collectors.toList()).equals(correct))
+                throw new RuntimeException("overlapping(" + lo + ", " + hi + ") does not match after " + description);
+        }
+    }
+
+    static List<IntervalTree.Interval<Integer>> filter(TreeSet<IntervalTree.Interval<Integer>> intervals,
+                                                      Predicate<IntervalTree.Interval<Integer>> predicate) {
+        return intervals.stream().filter(predicate).collect(Collectors.toList());
+    }
+
+    static void check(Iterator<IntervalTree.Interval<Integer>> iter, List<IntervalTree.Interval<Integer>> correct,
+                      String description) {
+        List<IntervalTree.Interval<Integer>> result = new ArrayList<>();
+        iter.forEachRemaining(result::add);
+        if (!result.equals(correct))
+            throw new RuntimeException(description + " returned " + result + ".  Correct value is " + correct);
+    }
+
+    // Check that every node holds the greatest end in its subtree, or null for
+    // an empty subtree.  Return that end.
+    static Integer checkMaxEnd(BST.TreeNode<IntervalTree.Interval<Integer>> node, String description) {
+        if (node == null)
+            return null;
+        Integer maxEnd = node.element.getEnd();
+        for (Integer end : new Integer[] {checkMaxEnd(node.left, description), checkMaxEnd(node.right, description)})
+            if (end != null && end > maxEnd)
+                maxEnd = end;
+        Object stored = ((AugmentedAVLTree.AugmentedNode<?, ?>)node).aggregate;
+        if (!maxEnd.equals(stored))
+            throw new RuntimeException("Node " + node.element + " holds the greatest end " + stored
+                    + " after " + description + ".  Correct value is " + maxEnd);
+        return maxEnd;
+    }
+}
@@ -0,0 +1,239 @@
+// This program tests OffHeapLongAVLTree, which keeps its nodes in direct
+// ByteBuffers, against java.util.TreeSet.
+// The methods tested are insert, delete and search, get and rank,
+// iterator(int index), clear and close, including keys at the ends of the
+// long range.
+// A tree opened on a file must hold the same keys when the file is reopened
+// after close(), across several sessions and chunks, and open() must refuse a
+// file that is still being changed, truncated or not a tree file at all.
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class TestOffHeapLongAVLTree {
+    public static void main(String[] args) throws Exception {
+        Random rand = new Random(8);
+        System.out.println("Testing updates against TreeSet");
+        for (int trial = 0; trial < 20; trial++)
+            try (OffHeapLongAVLTree tree = new OffHeapLongAVLTree()) {
+                testUpdates(tree, new TreeSet<>(), rand, 1 + rand.nextInt(2000));
+            }
+        System.out.println("Testing extreme keys");
+        testExtremeKeys();
+        System.out.println("Testing clear and close");
+        testClearAndClose(rand);
+        Path file = Files.createTempFile("TestOffHeapLongAVLTree", ".avl");
+        try {
+            System.out.println("Testing reopening a file");
+            testReopen(file, rand);
+            System.out.println("Testing files that open() refuses");
+            testBadFiles(file);
+            System.out.println("Testing a file of more than one chunk");
+            testTwoChunks(file);
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+        System.out.println("End of OffHeapLongAVLTree tests");
+    }
+
+    // Apply the same random updates to the tree and to a TreeSet, then compare
+    // every query.  Keys are spread over the whole long range.
+    public static void testUpdates(OffHeapLongAVLTree tree, TreeSet<Long> expected, Random rand, int range) {
+        for (int i = 0; i < 3000; i++) {
+            long key = toKey(rand.nextInt(range) - range / 2);
+            boolean result, correct;
+            if (rand.nextInt(3) > 0) {
+                result = tree.insert(key);
+                correct = expected.add(key);
+            }
+            else {
+                result = tree.delete(key);
+                correct = expected.remove(key);
+            }
+            if (result != correct)
+                throw new RuntimeException("Update " + i + " on key " + key + " returned " + result
+                        + ".  Correct value is " + correct);
+        }
+        checkSame(tree, expected, "random updates in a range of " + range);
+        for (int i = -range / 2 - 1; i <= range / 2 + 1; i++) {
+            long key = toKey(i);
+            if (tree.search(key) != expected.contains(key) || tree.rank(key) != expected.headSet(key).size())
+                throw new RuntimeException("search or rank of " + key + " does not match");
+        }
+    }
+
+    // Map small ints onto keys that use all 64 bits, in the same order.
+    static long toKey(int i) {
+        return i * 4_000_000_000_000_000L / 2000;
+    }
+
+    // Keys at both ends of the long range, whose differences overflow a long.
+    public static void testExtremeKeys() {
+        try (OffHeapLongAVLTree tree = new OffHeapLongAVLTree()) {
+            TreeSet<Long> expected = new TreeSet<>();
+            for (long key : new long[] {Long.MAX_VALUE, Long.MIN_VALUE, 0, -1, 1,
+                                        Long.MAX_VALUE - 1, Long.MIN_VALUE + 1}) {
+                tree.insert(key);
+                expected.add(key);
+            }
+            checkSame(tree, expected, "inserting extreme keys");
+            tree.delete(Long.MIN_VALUE);
+            expected.remove(Long.MIN_VALUE);
+            checkSame(tree, expected, "deleting Long.MIN_VALUE");
+            if (tree.rank(Long.MAX_VALUE) != expected.size() - 1)
+                throw new RuntimeException("rank(Long.MAX_VALUE) returned " + tree.rank(Long.MAX_VALUE));
+        }
+    }
+
+    // A cleared tree is reusable; a closed tree refuses every call.
+    public static void testClearAndClose(Random rand) {
+        OffHeapLongAVLTree tree = new OffHeapLongAVLTree();
+        TreeSet<Long> expected = new TreeSet<>();
+        testUpdates(tree, expected, rand, 500);
+        tree.clear();
+        expected.clear();
+        checkSame(tree, expected, "clear");
+        testUpdates(tree, expected, rand, 500);
+
+        tree.close();
+        if (!tree.isClosed())
+            throw new RuntimeException("isClosed() is false after close()");
+        tree.close(); // A second close does nothing
+        for (Runnable call : new Runnable[] {() -> tree.search(1), () -> tree.insert(1),
+                                             () -> tree.delete(1), () -> tree.iterator()})
+            try {
+                call.run();
+                throw new RuntimeException("A closed tree did not throw IllegalStateException");
+            }
+            catch (IllegalStateException ex) {
+                // Caught IllegalStateException:  Good!
+            }
+    }
+
+    // Check sizes, get(i) and iterator(i) for every index.
+    static void checkSame(OffHeapLongAVLTree tree, TreeSet<Long> expected, String description) {
+        List<Long> sorted = new ArrayList<>(expected);
+        if (tree.size() != sorted.size() || tree.getSize() != sorted.size() || tree.isEmpty() != sorted.isEmpty())
+            throw new RuntimeException("Sizes do not match after " + description + ": "
+                    + tree.size() + " versus " + sorted.size());
+        for (int i = 0; i < sorted.size(); i++)
+            if (tree.get(i) != sorted.get(i))
+                throw new RuntimeException("get(" + i + ") after " + description + " returned " + tree.get(i)
+                        + ".  Correct value is " + sorted.get(i));
+        for (int index = 0; index <= sorted.size(); index += 1 + sorted.size() / 20) {
+            PrimitiveIterator.OfLong iter = tree.iterator(index);
+            for (int i = index; i < sorted.size(); i++)
+                if (iter.nextLong() != sorted.get(i))
+                    throw new RuntimeException("iterator(" + index + ") after " + description
+                            + " returned the wrong key at index " + i);
+            if (iter.hasNext())
+                throw new RuntimeException("iterator(" + index + ") after " + description + " returned too many keys");
+        }
+    }
+
+    // Change the tree over several sessions, closing and reopening the file
+    // between them, and check that each session starts with the keys the
+    // last one left.
+    public static void testReopen(Path file, Random rand) throws IOException {
+        Files.deleteIfExists(file);
+        TreeSet<Long> expected = new TreeSet<>();
+        for (int session = 0; session < 5; session++)
+            try (OffHeapLongAVLTree tree = OffHeapLongAVLTree.open(file)) {
+                if (!tree.isFileBacked())
+                    throw new RuntimeException("A tree opened on a file is not file-backed");
+                checkSame(tree, expected, "reopening for session " + session);
+                testUpdates(tree, expected, rand, 1000 * (session + 1));
+                if (session % 2 == 0) {
+                    tree.flush();
+                    testUpdates(tree, expected, rand, 1000);
+                }
+            }
+        try (OffHeapLongAVLTree tree = OffHeapLongAVLTree.open(file)) {
+            checkSame(tree, expected, "the last session");
+            tree.clear();
+        }
+        try (OffHeapLongAVLTree tree = OffHeapLongAVLTree.open(file)) {
+            checkSame(tree, new TreeSet<>(), "reopening a cleared tree");
+        }
+    }
+
+    // open() refuses a file with unsaved changes, a truncated file and files
+    // that are not tree files.
+    public static void testBadFiles(Path file) throws IOException {
+        Files.deleteIfExists(file);
+        try (OffHeapLongAVLTree tree = OffHeapLongAVLTree.open(file)) {
+            tree.insert(1);
+            tree.flush();
+            OffHeapLongAVLTree.open(file).close(); // Still open elsewhere, but flushed, so clean
+            tree.insert(2);
+            expectOpenFailure(file, "not closed cleanly", "opening a file with unsaved changes");
+        }
+        try (OffHeapLongAVLTree tree = OffHeapLongAVLTree.open(file)) {
+            checkSame(tree, new TreeSet<>(List.of(1L, 2L)), "closing the changed file");
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        expectOpenFailure(file, "is truncated", "opening a truncated file");
+
+        byte[] garbage = new byte[2 * OffHeapLongAVLTree.HEADER_BYTES];
+        new Random(9).nextBytes(garbage);
+        Files.write(file, garbage);
+        expectOpenFailure(file, "is not an AVL tree file", "opening a file of random bytes");
+        Files.write(file, new byte[100]);
+        expectOpenFailure(file, "is not an AVL tree file", "opening a file shorter than the header");
+
+        // The magic number is right but the format is not
+        ByteBuffer header = ByteBuffer.allocate(2 * OffHeapLongAVLTree.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(0, 0x31454552544c5641L); // "AVLTREE1"
+        Files.write(file, header.array());
+        expectOpenFailure(file, "unsupported format version", "opening a file of the wrong format");
+    }
+
+    static void expectOpenFailure(Path file, String message, String description) {
+        try {
+            OffHeapLongAVLTree.open(file).close();
+            throw new RuntimeException(description + " did not throw IOException");
+        }
+        catch (IOException ex) {
+            if (!ex.getMessage().contains(message))
+                throw new RuntimeException(description + " threw the wrong IOException: " + ex.getMessage());
+            // Caught IOException:  Good!
+        }
+    }
+
+    // Store more keys than fit in one chunk, so reopening maps two chunks.
+    public static void testTwoChunks(Path file) throws IOException {
+        Files.deleteIfExists(file);
+        int n = OffHeapLongAVLTree.CHUNK_NODES + 1000;
+        try (OffHeapLongAVLTree tree = OffHeapLongAVLTree.open(file)) {
+            for (int i = 0; i < n; i++)
+                tree.insert(3L * i);
+            if (tree.offHeapBytes() < 2L * OffHeapLongAVLTree.CHUNK_NODES * OffHeapLongAVLTree.NODE_BYTES)
+                throw new RuntimeException(n + " keys fit in one chunk");
+        }
+        try (OffHeapLongAVLTree tree = OffHeapLongAVLTree.open(file)) {
+            if (tree.size() != n)
+                throw new RuntimeException("Reopened tree has " + tree.size() + " keys instead of " + n);
+            for (int i = 0; i < n; i += 997)
+                if (tree.get(i) != 3L * i || !tree.search(3L * i) || tree.search(3L * i + 1) || tree.rank(3L * i) != i)
+                    throw new RuntimeException("Reopened tree does not match at index " + i);
+            PrimitiveIterator.OfLong iter = tree.iterator();
+            for (int i = 0; i < n; i++)
+                if (iter.nextLong() != 3L * i)
+                    throw new RuntimeException("Reopened tree iterates wrongly at index " + i);
+        }
+    }
+}
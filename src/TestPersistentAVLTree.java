@@ -0,0 +1,227 @@
+// This program tests PersistentAVLTree, whose updates copy the path to the
+// change and leave every earlier version intact.
+// The methods tested are insert, delete, search and iterator(int index)
+// against java.util.TreeSet, and snapshot():  a snapshot, and an iterator,
+// must keep seeing exactly the elements present when it was taken, however
+// the tree changes afterwards, while changes to a snapshot stay out of the tree.
+// toArray must copy one whole version even while another thread writes.
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class TestPersistentAVLTree {
+    static final int KEY_RANGE = 2000; // Keys are drawn from 0 .. KEY_RANGE - 1
+
+    public static void main(String[] args) throws InterruptedException {
+        Random rand = new Random(12);
+        System.out.println("Testing updates against TreeSet");
+        testUpdates(rand, null);
+        testUpdates(rand, java.util.Comparator.reverseOrder());
+        System.out.println("Testing snapshots");
+        testSnapshots(rand);
+        System.out.println("Testing iterators while the tree changes");
+        testIterators(rand);
+        System.out.println("Testing a reader of a snapshot while a writer runs");
+        testConcurrentSnapshotReader();
+        System.out.println("Testing toArray while a writer runs");
+        testConcurrentToArray();
+        System.out.println("End of PersistentAVLTree tests");
+    }
+
+    // Apply the same random updates to the tree and to a TreeSet.
+    public static void testUpdates(Random rand, java.util.Comparator<Integer> comparator) {
+        PersistentAVLTree<Integer> tree = new PersistentAVLTree<>(comparator);
+        TreeSet<Integer> expected = new TreeSet<>(comparator);
+        for (int i = 0; i < 20000; i++) {
+            int key = rand.nextInt(KEY_RANGE);
+            boolean result, correct;
+            switch (rand.nextInt(3)) {
+                case 0:
+                    result = tree.insert(key);
+                    correct = expected.add(key);
+                    break;
+                case 1:
+                    result = tree.delete(key);
+                    correct = expected.remove(key);
+                    break;
+                default:
+                    result = tree.search(key);
+                    correct = expected.contains(key);
+            }
+            if (result != correct)
+                throw new RuntimeException("Operation " + i + " on key " + key + " returned " + result
+                        + ".  Correct value is " + correct);
+        }
+        checkSame(tree, expected, "random updates with comparator " + comparator);
+
+        // iterator(index) starts at the element with that index
+        List<Integer> sorted = new ArrayList<>(expected);
+        for (int index = 0; index <= sorted.size(); index += 37) {
+            Iterator<Integer> iter = tree.iterator(index);
+            for (int i = index; i < Math.min(index + 5, sorted.size()); i++)
+                if (!iter.next().equals(sorted.get(i)))
+                    throw new RuntimeException("iterator(" + index + ") returned the wrong element at " + i);
+        }
+        for (int index : new int[] {-1, sorted.size() + 1})
+            try {
+                tree.iterator(index);
+                throw new RuntimeException("iterator(int) did not throw IndexOutOfBoundsException on bad index " + index);
+            }
+            catch (IndexOutOfBoundsException ex) {
+                // Caught IndexOutOfBoundsException:  Good!
+            }
+    }
+
+    // Take a snapshot after every batch of updates, keep changing both the tree
+    // and some of the snapshots, and check that every version keeps its own
+    // elements.
+    public static void testSnapshots(Random rand) {
+        PersistentAVLTree<Integer> tree = new PersistentAVLTree<>();
+        TreeSet<Integer> expected = new TreeSet<>();
+        List<PersistentAVLTree<Integer>> snapshots = new ArrayList<>();
+        List<TreeSet<Integer>> expectedSnapshots = new ArrayList<>();
+        for (int round = 0; round < 30; round++) {
+            for (int i = 0; i < 200; i++) {
+                int key = rand.nextInt(KEY_RANGE);
+                if (rand.nextBoolean()) {
+                    tree.insert(key);
+                    expected.add(key);
+                }
+                else {
+                    tree.delete(key);
+                    expected.remove(key);
+                }
+            }
+            snapshots.add(tree.snapshot());
+            expectedSnapshots.add(new TreeSet<>(expected));
+
+            // Change an older snapshot, which must not affect the tree or other snapshots
+            int which = rand.nextInt(snapshots.size());
+            int key = rand.nextInt(KEY_RANGE);
+            snapshots.get(which).insert(key);
+            expectedSnapshots.get(which).add(key);
+            snapshots.get(which).delete(key + 1);
+            expectedSnapshots.get(which).remove(key + 1);
+        }
+        checkSame(tree, expected, "all rounds");
+        for (int i = 0; i < snapshots.size(); i++)
+            checkSame(snapshots.get(i), expectedSnapshots.get(i), "snapshot " + i);
+
+        // A snapshot of a snapshot is independent too
+        PersistentAVLTree<Integer> copy = snapshots.get(0).snapshot();
+        copy.clear();
+        checkSame(snapshots.get(0), expectedSnapshots.get(0), "clearing a snapshot of snapshot 0");
+    }
+
+    // An iterator sees the version of the tree it was created on.
+    public static void testIterators(Random rand) {
+        PersistentAVLTree<Integer> tree = new PersistentAVLTree<>();
+        for (int i = 0; i < 1000; i++)
+            tree.insert(rand.nextInt(KEY_RANGE));
+        List<Integer> before = new ArrayList<>();
+        tree.iterator().forEachRemaining(before::add);
+
+        Iterator<Integer> iter = tree.iterator();
+        List<Integer> seen = new ArrayList<>();
+        while (iter.hasNext()) {
+            seen.add(iter.next());
+            // Change the tree under the iterator, which must not notice
+            tree.insert(rand.nextInt(KEY_RANGE));
+            tree.delete(rand.nextInt(KEY_RANGE));
+        }
+        if (!seen.equals(before))
+            throw new RuntimeException("An iterator saw changes made after it was created");
+    }
+
+    // A reader walks a snapshot while another thread changes the tree it came from.
+    public static void testConcurrentSnapshotReader() throws InterruptedException {
+        PersistentAVLTree<Integer> tree = new PersistentAVLTree<>();
+        for (int key = 0; key < KEY_RANGE; key += 2)
+            tree.insert(key);
+        PersistentAVLTree<Integer> snapshot = tree.snapshot();
+        Thread writer = new Thread(() -> {
+            Random rand = new Random(3);
+            for (int i = 0; i < 200000; i++) {
+                int key = rand.nextInt(KEY_RANGE);
+                if (rand.nextBoolean())
+                    tree.insert(key);
+                else
+                    tree.delete(key);
+            }
+        });
+        writer.start();
+        int scans = 0;
+        while (writer.isAlive() || scans == 0) {
+            int count = 0, expectedKey = 0;
+            for (Integer key : snapshot) {
+                if (key != expectedKey)
+                    throw new RuntimeException("The snapshot returned " + key + " instead of " + expectedKey);
+                expectedKey += 2;
+                count++;
+            }
+            if (count != KEY_RANGE / 2 || snapshot.getSize() != KEY_RANGE / 2)
+                throw new RuntimeException("The snapshot changed size while the tree was written");
+            scans++;
+        }
+        writer.join();
+    }
+
+    // Copy the tree with toArray while another thread inserts and deletes.
+    // Even keys stay in the tree, so every copy must be sorted, hold every
+    // even key and have no unused slots.
+    public static void testConcurrentToArray() throws InterruptedException {
+        PersistentAVLTree<Integer> tree = new PersistentAVLTree<>();
+        for (int key = 0; key < KEY_RANGE; key += 2)
+            tree.insert(key);
+        java.util.concurrent.atomic.AtomicBoolean writing = new java.util.concurrent.atomic.AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            Random rand = new Random(4);
+            for (int i = 0; i < 300000; i++) {
+                int key = 2 * rand.nextInt(KEY_RANGE / 2) + 1;
+                if (rand.nextBoolean())
+                    tree.insert(key);
+                else
+                    tree.delete(key);
+            }
+            writing.set(false);
+        });
+        writer.start();
+        int copies = 0;
+        while (writing.get() || copies == 0) {
+            Object[] objects = tree.toArray();
+            Integer[] integers = tree.toArray(new Integer[copies % 2 == 0 ? 0 : KEY_RANGE + 1]);
+            checkCopy(objects, objects.length, "toArray()");
+            int length = 0;
+            while (length < integers.length && integers[length] != null)
+                length++;
+            checkCopy(integers, length, "toArray(T[])");
+            copies++;
+        }
+        writer.join();
+    }
+
+    // Check a copy of a tree that always holds the even keys.
+    static void checkCopy(Object[] array, int length, String description) {
+        int evens = 0, previous = -1;
+        for (int i = 0; i < length; i++) {
+            int key = (Integer)array[i];
+            if (key <= previous)
+                throw new RuntimeException(description + " returned " + key + " after " + previous);
+            previous = key;
+            if (key % 2 == 0)
+                evens++;
+        }
+        if (evens != KEY_RANGE / 2)
+            throw new RuntimeException(description + " returned " + evens + " of the " + (KEY_RANGE / 2) + " even keys");
+    }
+
+    static void checkSame(PersistentAVLTree<Integer> tree, TreeSet<Integer> expected, String description) {
+        List<Integer> elements = new ArrayList<>();
+        tree.iterator().forEachRemaining(elements::add);
+        if (tree.getSize() != expected.size() || !elements.equals(new ArrayList<>(expected)))
+            throw new RuntimeException("Elements do not match after " + description);
+    }
+}
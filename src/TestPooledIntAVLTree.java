@@ -0,0 +1,120 @@
+// This program tests PooledIntAVLTree, which keeps its nodes in parallel
+// arrays and reuses the slots of deleted nodes, against java.util.TreeSet.
+// The methods tested are insert, delete and search, get and rank,
+// iterator(int index), trimToSize and clear, including keys at the ends of
+// the int range and trees that grow from a capacity of 0.
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class TestPooledIntAVLTree {
+    public static void main(String[] args) {
+        Random rand = new Random(7);
+        System.out.println("Testing updates against TreeSet");
+        for (int trial = 0; trial < 50; trial++)
+            testUpdates(rand, rand.nextInt(4), 1 + rand.nextInt(1000));
+        System.out.println("Testing extreme keys");
+        testExtremeKeys();
+        System.out.println("Testing the array constructor and clear");
+        testArrayConstructorAndClear(rand);
+        System.out.println("End of PooledIntAVLTree tests");
+    }
+
+    // Apply the same random updates to the tree and to a TreeSet, with
+    // occasional trimToSize calls between them, then compare every query.
+    public static void testUpdates(Random rand, int initialCapacity, int range) {
+        PooledIntAVLTree tree = new PooledIntAVLTree(initialCapacity);
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < 3000; i++) {
+            int key = rand.nextInt(range) - range / 2;
+            boolean result, correct;
+            if (rand.nextInt(3) > 0) {
+                result = tree.insert(key);
+                correct = expected.add(key);
+            }
+            else {
+                result = tree.delete(key);
+                correct = expected.remove(key);
+            }
+            if (result != correct)
+                throw new RuntimeException("Update " + i + " on key " + key + " returned " + result
+                        + ".  Correct value is " + correct);
+            if (rand.nextInt(200) == 0)
+                tree.trimToSize(); // Freed slots must stay usable
+        }
+        checkSame(tree, expected, "random updates in a range of " + range);
+        for (int key = -range / 2 - 1; key <= range / 2 + 1; key++)
+            if (tree.search(key) != expected.contains(key) || tree.rank(key) != expected.headSet(key).size())
+                throw new RuntimeException("search or rank of " + key + " does not match");
+    }
+
+    // Keys at both ends of the int range, whose differences overflow an int.
+    public static void testExtremeKeys() {
+        PooledIntAVLTree tree = new PooledIntAVLTree();
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int key : new int[] {Integer.MAX_VALUE, Integer.MIN_VALUE, 0, -1, 1,
+                                  Integer.MAX_VALUE - 1, Integer.MIN_VALUE + 1}) {
+            tree.insert(key);
+            expected.add(key);
+        }
+        checkSame(tree, expected, "inserting extreme keys");
+        tree.delete(Integer.MIN_VALUE);
+        expected.remove(Integer.MIN_VALUE);
+        checkSame(tree, expected, "deleting Integer.MIN_VALUE");
+    }
+
+    // Build from an array with duplicates, clear, and reuse the tree.
+    public static void testArrayConstructorAndClear(Random rand) {
+        int[] keys = new int[2000];
+        TreeSet<Integer> expected = new TreeSet<>();
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = rand.nextInt(1000);
+            expected.add(keys[i]);
+        }
+        PooledIntAVLTree tree = new PooledIntAVLTree(keys);
+        checkSame(tree, expected, "building from an array");
+
+        tree.clear();
+        expected.clear();
+        checkSame(tree, expected, "clear");
+        for (int i = 0; i < 500; i++) {
+            int key = rand.nextInt(100);
+            tree.insert(key);
+            expected.add(key);
+        }
+        checkSame(tree, expected, "inserting after clear");
+
+        for (int index : new int[] {-1, tree.size() + 1})
+            try {
+                tree.iterator(index);
+                throw new RuntimeException("iterator(int) did not throw IndexOutOfBoundsException on bad index " + index);
+            }
+            catch (IndexOutOfBoundsException ex) {
+                // Caught IndexOutOfBoundsException:  Good!
+            }
+    }
+
+    // Check sizes, get(i) and iterator(i) for every index.
+    static void checkSame(PooledIntAVLTree tree, TreeSet<Integer> expected, String description) {
+        List<Integer> sorted = new ArrayList<>(expected);
+        if (tree.size() != sorted.size() || tree.getSize() != sorted.size() || tree.isEmpty() != sorted.isEmpty())
+            throw new RuntimeException("Sizes do not match after " + description + ": "
+                    + tree.size() + " versus " + sorted.size());
+        for (int i = 0; i < sorted.size(); i++)
+            if (tree.get(i) != sorted.get(i))
+                throw new RuntimeException("get(" + i + ") after " + description + " returned " + tree.get(i)
+                        + ".  Correct value is " + sorted.get(i));
+        for (int index = 0; index <= sorted.size(); index += 1 + sorted.size() / 20) {
+            PrimitiveIterator.OfInt iter = tree.iterator(index);
+            for (int i = index; i < sorted.size(); i++)
+                if (iter.nextInt() != sorted.get(i))
+                    throw new RuntimeException("iterator(" + index + ") after " + description
+                            + " returned the wrong key at index " + i);
+            if (iter.hasNext())
+                throw new RuntimeException("iterator(" + index + ") after " + description + " returned too many keys");
+        }
+    }
+}
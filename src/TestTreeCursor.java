@@ -0,0 +1,213 @@
+// This program tests the TreeCursor of AVLTreeWithFastIterator by running the
+// same moves on it and on an ArrayList's ListIterator over the same elements.
+// The methods tested are next and previous, including previous() from the
+// end, seek to keys in and out of the tree, seekIndex, skip clamping at both
+// ends, and remove() after next() and after previous().  After every move the
+// two must agree on the position and on what may be removed, and a cursor must
+// throw ConcurrentModificationException once its tree is changed other than
+// through the cursor.
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class TestTreeCursor {
+    static final int KEY_RANGE = 1000; // Keys are even numbers from 0 .. 2 * KEY_RANGE - 2
+
+    public static void main(String[] args) {
+        Random rand = new Random(22);
+        System.out.println("Testing cursor moves against ListIterator");
+        for (int trial = 0; trial < 20; trial++) {
+            testMoves(rand, null);
+            testMoves(rand, Comparator.reverseOrder());
+        }
+        System.out.println("Testing cursor ends");
+        testEnds();
+        System.out.println("Testing fail-fast cursors");
+        testFailFast();
+        System.out.println("End of TreeCursor tests");
+    }
+
+    // Make random moves with a cursor and with a ListIterator over a copy of
+    // the elements.  Seeks and skips, which a ListIterator does not have, move
+    // the ListIterator by recreating it at the expected index.
+    public static void testMoves(Random rand, Comparator<Integer> comparator) {
+        AVLTreeWithFastIterator<Integer> tree = new AVLTreeWithFastIterator<>(comparator);
+        TreeSet<Integer> elements = new TreeSet<>(comparator);
+        int n = rand.nextInt(300);
+        while (elements.size() < n) {
+            int key = 2 * rand.nextInt(KEY_RANGE); // Even keys, so odd keys miss
+            tree.insert(key);
+            elements.add(key);
+        }
+        List<Integer> list = new ArrayList<>(elements);
+        int start = rand.nextInt(list.size() + 1);
+        TreeCursor<Integer> cursor = tree.cursor(start);
+        ListIterator<Integer> expected = list.listIterator(start);
+
+        for (int i = 0; i < 2000; i++) {
+            String move;
+            switch (rand.nextInt(6)) {
+                case 0:
+                    move = "next()";
+                    if (expected.hasNext())
+                        check(cursor.next(), expected.next(), move);
+                    else
+                        expectNoSuchElement(cursor::next, move);
+                    break;
+                case 1:
+                    move = "previous()";
+                    if (expected.hasPrevious())
+                        check(cursor.previous(), expected.previous(), move);
+                    else
+                        expectNoSuchElement(cursor::previous, move);
+                    break;
+                case 2: {
+                    int key = rand.nextInt(2 * KEY_RANGE + 2) - 1;
+                    move = "seek(" + key + ")";
+                    check(cursor.seek(key), elements.contains(key), move);
+                    expected = list.listIterator(elements.headSet(key).size());
+                    break;
+                }
+                case 3: {
+                    int index = rand.nextInt(list.size() + 1);
+                    move = "seekIndex(" + index + ")";
+                    cursor.seekIndex(index);
+                    expected = list.listIterator(index);
+                    break;
+                }
+                case 4: {
+                    int distance = rand.nextInt(2 * list.size() + 21) - list.size() - 10;
+                    move = "skip(" + distance + ")";
+                    int index = Math.max(0, Math.min(list.size(), expected.nextIndex() + distance));
+                    check(cursor.skip(distance), index - expected.nextIndex(), move);
+                    expected = list.listIterator(index);
+                    break;
+                }
+                default: {
+                    move = "remove()";
+                    boolean removed = true;
+                    try {
+                        expected.remove();
+                    }
+                    catch (IllegalStateException ex) {
+                        removed = false;
+                    }
+                    if (removed) {
+                        cursor.remove();
+                        elements = new TreeSet<>(comparator);
+                        elements.addAll(list);
+                    }
+                    else
+                        try {
+                            cursor.remove();
+                            throw new RuntimeException("remove() with nothing to remove did not throw IllegalStateException");
+                        }
+                        catch (IllegalStateException ex) {
+                            // Caught IllegalStateException:  Good!
+                        }
+                }
+            }
+            if (cursor.nextIndex() != expected.nextIndex() || cursor.previousIndex() != expected.previousIndex()
+                    || cursor.hasNext() != expected.hasNext() || cursor.hasPrevious() != expected.hasPrevious())
+                throw new RuntimeException("After move " + i + ", " + move + ", the cursor is at "
+                        + cursor.nextIndex() + " instead of " + expected.nextIndex());
+        }
+        if (tree.getSize() != list.size() || !new ArrayList<>(tree).equals(list))
+            throw new RuntimeException("Elements do not match after removing through the cursor");
+    }
+
+    // Moves at and past both ends, on an empty tree and a full one.
+    public static void testEnds() {
+        AVLTreeWithFastIterator<Integer> tree = new AVLTreeWithFastIterator<>();
+        TreeCursor<Integer> cursor = tree.cursor();
+        expectNoSuchElement(cursor::next, "next() on an empty tree");
+        expectNoSuchElement(cursor::previous, "previous() on an empty tree");
+        check(cursor.seek(5), false, "seek(5) on an empty tree");
+        check(cursor.skip(3), 0, "skip(3) on an empty tree");
+
+        for (int i = 0; i < 100; i++)
+            tree.insert(2 * i);
+        cursor = tree.cursor(tree.size());
+        check(cursor.previous(), 198, "previous() from the end");
+        check(cursor.next(), 198, "next() after previous() from the end");
+        check(cursor.skip(-1000), -100, "skip(-1000) from the end");
+        check(cursor.skip(1000), 100, "skip(1000) from the start");
+        check(cursor.seek(-1), false, "seek(-1)");
+        check(cursor.nextIndex(), 0, "seek(-1)");
+        check(cursor.seek(199), false, "seek(199)");
+        check(cursor.hasNext(), false, "seek(199)");
+        check(cursor.seek(198), true, "seek(198)");
+        check(cursor.next(), 198, "next() after seek(198)");
+        for (int index : new int[] {-1, tree.size() + 1})
+            try {
+                cursor.seekIndex(index);
+                throw new RuntimeException("seekIndex did not throw IndexOutOfBoundsException on bad index " + index);
+            }
+            catch (IndexOutOfBoundsException ex) {
+                // Caught IndexOutOfBoundsException:  Good!
+            }
+        for (Runnable unsupported : new Runnable[] {() -> tree.cursor().set(1), () -> tree.cursor().add(1)})
+            try {
+                unsupported.run();
+                throw new RuntimeException("set or add did not throw UnsupportedOperationException");
+            }
+            catch (UnsupportedOperationException ex) {
+                // Caught UnsupportedOperationException:  Good!
+            }
+    }
+
+    // A cursor must fail fast when its tree is changed behind it, but keep
+    // working after its own remove().
+    public static void testFailFast() {
+        AVLTreeWithFastIterator<Integer> tree = new AVLTreeWithFastIterator<>();
+        for (int i = 0; i < 50; i++)
+            tree.insert(i);
+
+        TreeCursor<Integer> cursor = tree.cursor(10);
+        cursor.next();
+        cursor.remove();
+        cursor.next();
+        tree.insert(100);
+        expectConcurrentModification(cursor::next, "next() after insert");
+        expectConcurrentModification(cursor::previous, "previous() after insert");
+        expectConcurrentModification(() -> cursor.seek(5), "seek() after insert");
+        expectConcurrentModification(() -> cursor.seekIndex(5), "seekIndex() after insert");
+        expectConcurrentModification(() -> cursor.skip(5), "skip() after insert");
+
+        TreeCursor<Integer> other = tree.cursor(20);
+        other.previous();
+        tree.delete(30);
+        expectConcurrentModification(other::remove, "remove() after delete");
+    }
+
+    static void check(Object result, Object correct, String description) {
+        if (!result.equals(correct))
+            throw new RuntimeException(description + " returned " + result + ".  Correct value is " + correct);
+    }
+
+    static void expectNoSuchElement(Runnable action, String description) {
+        try {
+            action.run();
+            throw new RuntimeException(description + " did not throw NoSuchElementException");
+        }
+        catch (NoSuchElementException ex) {
+            // Caught NoSuchElementException:  Good!
+        }
+    }
+
+    static void expectConcurrentModification(Runnable action, String description) {
+        try {
+            action.run();
+            throw new RuntimeException(description + " did not throw ConcurrentModificationException");
+        }
+        catch (ConcurrentModificationException ex) {
+            // Caught ConcurrentModificationException:  Good!
+        }
+    }
+}
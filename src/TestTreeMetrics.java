@@ -0,0 +1,120 @@
+// This program tests TreeMetrics.  Run it twice:
+//     java -Davltree.metrics=true TestTreeMetrics
+//     java TestTreeMetrics
+// With the property set, searches, inserts, deletes, each of the four
+// rotations and the two histograms must count what the trees do, and reset()
+// must set every counter and histogram bucket back to zero.  Without it,
+// every counter must stay at zero however the trees are used.
+// Either way the counters must be registered as an MBean exactly once and
+// readable through the platform MBean server.
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class TestTreeMetrics {
+    public static void main(String[] args) throws Exception {
+        boolean enabled = Boolean.getBoolean("avltree.metrics");
+        TreeMetricsMXBean metrics = TreeMetrics.get();
+        if (metrics.isEnabled() != enabled || TreeMetrics.ENABLED != enabled)
+            throw new RuntimeException("isEnabled() is " + metrics.isEnabled() + " with avltree.metrics=" + enabled);
+        System.out.println("Testing the counters with avltree.metrics=" + enabled);
+        testCounters(metrics, enabled);
+        System.out.println("Testing reset");
+        metrics.reset();
+        checkAllZero(metrics, "reset()");
+        System.out.println("Testing registerMBean");
+        testRegisterMBean(enabled);
+        System.out.println("End of TreeMetrics tests");
+    }
+
+    // Use the trees in ways that count known amounts.
+    public static void testCounters(TreeMetricsMXBean metrics, boolean enabled) {
+        metrics.reset();
+        checkAllZero(metrics, "the first reset()");
+
+        AVLTree<Integer> ascending = new AVLTree<>();
+        for (int i = 0; i < 1000; i++)
+            ascending.insert(i); // RR rotations
+        AVLTree<Integer> descending = new AVLTree<>();
+        for (int i = 1000; i > 0; i--)
+            descending.insert(i); // LL rotations
+        for (Integer[] zigzag : new Integer[][] {{3, 1, 2}, {1, 3, 2}}) { // An LR, then an RL rotation
+            AVLTree<Integer> tree = new AVLTree<>();
+            for (int e : zigzag)
+                tree.insert(e);
+        }
+        for (int i = 0; i < 500; i++)
+            ascending.search(2 * i); // Half of them present
+        for (int i = 0; i < 300; i++)
+            ascending.delete(3 * i);
+
+        if (!enabled) {
+            checkAllZero(metrics, "using the trees without avltree.metrics");
+            return;
+        }
+        check(metrics.getInserts(), 2006, "getInserts()");
+        check(metrics.getSearches(), 500, "getSearches()");
+        check(metrics.getDeletes(), 300, "getDeletes()");
+        check(Arrays.stream(metrics.getSearchDepthHistogram()).sum(), 500, "the search depth histogram");
+        // 1000 keys are ten levels deep, so every insert and search compares at least a few times
+        for (long[] counter : new long[][] {{metrics.getInsertCompares(), 2006}, {metrics.getSearchCompares(), 500},
+                                            {metrics.getDeleteCompares(), 300}})
+            if (counter[0] < 2 * counter[1])
+                throw new RuntimeException("Only " + counter[0] + " comparisons were counted for "
+                        + counter[1] + " operations");
+        for (long rotations : new long[] {metrics.getRotationsLL(), metrics.getRotationsLR(),
+                                          metrics.getRotationsRR(), metrics.getRotationsRL()})
+            if (rotations == 0)
+                throw new RuntimeException("A rotation was not counted: LL " + metrics.getRotationsLL()
+                        + ", LR " + metrics.getRotationsLR() + ", RR " + metrics.getRotationsRR()
+                        + ", RL " + metrics.getRotationsRL());
+        if (Arrays.stream(metrics.getBalancePathLengthHistogram()).sum() == 0)
+            throw new RuntimeException("No rebalancing pass was counted");
+        if (metrics.getSearchDepthHistogram().length != TreeMetrics.BUCKETS
+                || metrics.getBalancePathLengthHistogram().length != TreeMetrics.BUCKETS)
+            throw new RuntimeException("A histogram does not have " + TreeMetrics.BUCKETS + " buckets");
+    }
+
+    // Register the counters and read one through the MBean server.
+    public static void testRegisterMBean(boolean enabled) throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = TreeMetrics.registerMBean();
+        try {
+            if (!server.isRegistered(name))
+                throw new RuntimeException(name + " is not registered");
+            new AVLTree<Integer>().insert(1);
+            Object inserts = server.getAttribute(name, "Inserts");
+            if (!inserts.equals(enabled ? 1L : 0L) || !server.getAttribute(name, "Enabled").equals(enabled))
+                throw new RuntimeException("The MBean reports " + inserts + " inserts");
+            try {
+                TreeMetrics.registerMBean();
+                throw new RuntimeException("A second registerMBean did not throw InstanceAlreadyExistsException");
+            }
+            catch (InstanceAlreadyExistsException ex) {
+                // Caught InstanceAlreadyExistsException:  Good!
+            }
+        }
+        finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    static void checkAllZero(TreeMetricsMXBean metrics, String description) {
+        long[] counters = {metrics.getSearches(), metrics.getSearchCompares(), metrics.getInserts(),
+                           metrics.getInsertCompares(), metrics.getDeletes(), metrics.getDeleteCompares(),
+                           metrics.getRotationsLL(), metrics.getRotationsLR(), metrics.getRotationsRR(),
+                           metrics.getRotationsRL()};
+        if (Arrays.stream(counters).anyMatch(c -> c != 0)
+                || Arrays.stream(metrics.getSearchDepthHistogram()).anyMatch(c -> c != 0)
+                || Arrays.stream(metrics.getBalancePathLengthHistogram()).anyMatch(c -> c != 0))
+            throw new RuntimeException("A counter is not zero after " + description + ": " + Arrays.toString(counters));
+    }
+
+    static void check(long result, long correct, String description) {
+        if (result != correct)
+            throw new RuntimeException(description + " is " + result + ".  Correct value is " + correct);
+    }
+}
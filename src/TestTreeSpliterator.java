@@ -0,0 +1,183 @@
+// This program tests the spliterator of AVLTreeWithFastIterator, which splits
+// the tree by position.
+// Sequential and parallel streams must return the elements in order, as a
+// List does.  Splitting again and again must give halves whose sizes are
+// exact and whose elements, taken in order, are the whole tree.  The reported
+// characteristics and comparator must match the tree, and a spliterator must
+// throw ConcurrentModificationException if the tree changes after it was
+// created, whether or not it has started traversing.
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+public class TestTreeSpliterator {
+    public static void main(String[] args) {
+        Random rand = new Random(13);
+        System.out.println("Testing sequential and parallel streams");
+        for (int size : new int[] {0, 1, 2, 3, 100, 1000, 200000}) {
+            testStreams(rand, size, null);
+            testStreams(rand, size, Comparator.reverseOrder());
+        }
+        System.out.println("Testing trySplit");
+        for (int size : new int[] {0, 1, 2, 7, 1000})
+            testSplits(rand, size);
+        System.out.println("Testing characteristics");
+        testCharacteristics();
+        System.out.println("Testing fail-fast spliterators");
+        testFailFast();
+        System.out.println("End of spliterator tests");
+    }
+
+    static AVLTreeWithFastIterator<Integer> randomTree(Random rand, int size, Comparator<Integer> comparator,
+                                                      List<Integer> elements) {
+        AVLTreeWithFastIterator<Integer> tree = new AVLTreeWithFastIterator<>(comparator);
+        TreeSet<Integer> expected = new TreeSet<>(comparator);
+        while (expected.size() < size) {
+            int e = rand.nextInt(4 * size);
+            tree.insert(e);
+            expected.add(e);
+        }
+        elements.addAll(expected);
+        return tree;
+    }
+
+    // Compare sequential and parallel streams of the tree with streams of a
+    // List holding the same elements in order.
+    public static void testStreams(Random rand, int size, Comparator<Integer> comparator) {
+        List<Integer> list = new ArrayList<>();
+        AVLTreeWithFastIterator<Integer> tree = randomTree(rand, size, comparator, list);
+        String description = size + " elements with comparator " + comparator;
+
+        if (!tree.stream().collect(Collectors.toList()).equals(list))
+            throw new RuntimeException("The sequential stream does not match for " + description);
+        if (!tree.parallelStream().collect(Collectors.toList()).equals(list))
+            throw new RuntimeException("The parallel stream does not match for " + description);
+        if (!tree.parallelStream().map(e -> 3 * e).filter(e -> e % 2 == 0).collect(Collectors.toList())
+                .equals(list.stream().map(e -> 3 * e).filter(e -> e % 2 == 0).collect(Collectors.toList())))
+            throw new RuntimeException("The parallel map and filter do not match for " + description);
+        if (tree.parallelStream().skip(size / 3).limit(size / 3 + 1).mapToLong(e -> e).sum()
+                != list.stream().skip(size / 3).limit(size / 3 + 1).mapToLong(e -> e).sum())
+            throw new RuntimeException("The parallel skip and limit do not match for " + description);
+        List<Integer> ordered = new ArrayList<>();
+        tree.parallelStream().forEachOrdered(ordered::add);
+        if (!ordered.equals(list))
+            throw new RuntimeException("The parallel forEachOrdered does not match for " + description);
+        if (tree.parallelStream().count() != size)
+            throw new RuntimeException("The parallel count does not match for " + description);
+    }
+
+    // Split a spliterator down to single elements, traversing the halves with a
+    // mix of tryAdvance and forEachRemaining.
+    public static void testSplits(Random rand, int size) {
+        List<Integer> list = new ArrayList<>();
+        AVLTreeWithFastIterator<Integer> tree = randomTree(rand, size, null, list);
+        List<Integer> traversed = new ArrayList<>();
+        traverse(tree.spliterator(), traversed, rand);
+        if (!traversed.equals(list))
+            throw new RuntimeException("Split spliterators returned " + traversed + " for " + list);
+
+        // A spliterator that has started can still split what is left
+        Spliterator<Integer> spliterator = tree.spliterator();
+        traversed.clear();
+        for (int i = 0; i < size / 2; i++)
+            spliterator.tryAdvance(traversed::add);
+        traverse(spliterator, traversed, rand);
+        if (!traversed.equals(list))
+            throw new RuntimeException("Splitting a started spliterator returned " + traversed + " for " + list);
+    }
+
+    // Traverse a spliterator by splitting it, checking that the sizes of the
+    // halves add up and that each half returns exactly its estimated size.
+    static void traverse(Spliterator<Integer> spliterator, List<Integer> traversed, Random rand) {
+        long size = spliterator.estimateSize();
+        Spliterator<Integer> prefix = spliterator.trySplit();
+        if (prefix == null) {
+            if (size > 1)
+                throw new RuntimeException("A spliterator of " + size + " elements did not split");
+            int before = traversed.size();
+            if (rand.nextBoolean())
+                spliterator.forEachRemaining(traversed::add);
+            else
+                while (spliterator.tryAdvance(traversed::add)) { }
+            if (traversed.size() - before != size || spliterator.tryAdvance(traversed::add))
+                throw new RuntimeException("A spliterator of estimated size " + size + " returned "
+                        + (traversed.size() - before) + " elements");
+            return;
+        }
+        if (prefix.estimateSize() + spliterator.estimateSize() != size
+                || Math.abs(prefix.estimateSize() - spliterator.estimateSize()) > 1)
+            throw new RuntimeException("Splitting " + size + " elements gave halves of " + prefix.estimateSize()
+                    + " and " + spliterator.estimateSize());
+        traverse(prefix, traversed, rand);
+        traverse(spliterator, traversed, rand);
+    }
+
+    public static void testCharacteristics() {
+        AVLTreeWithFastIterator<Integer> tree = new AVLTreeWithFastIterator<>();
+        for (int i = 0; i < 10; i++)
+            tree.insert(i);
+        Spliterator<Integer> spliterator = tree.spliterator();
+        for (int characteristic : new int[] {Spliterator.ORDERED, Spliterator.SORTED, Spliterator.DISTINCT,
+                                             Spliterator.SIZED, Spliterator.SUBSIZED, Spliterator.NONNULL})
+            if (!spliterator.hasCharacteristics(characteristic))
+                throw new RuntimeException("The spliterator does not report characteristic " + characteristic);
+        if (spliterator.getExactSizeIfKnown() != 10 || spliterator.getComparator() != null)
+            throw new RuntimeException("The spliterator reports the wrong size or comparator");
+        Spliterator<Integer> prefix = spliterator.trySplit();
+        if (prefix.characteristics() != spliterator.characteristics() || prefix.getExactSizeIfKnown() != 5)
+            throw new RuntimeException("A split spliterator reports different characteristics or size");
+
+        Comparator<Integer> reverse = Comparator.reverseOrder();
+        AVLTreeWithFastIterator<Integer> reversed = new AVLTreeWithFastIterator<>(reverse);
+        if (reversed.spliterator().getComparator() != reverse)
+            throw new RuntimeException("The spliterator does not report the tree's comparator");
+    }
+
+    // Change the tree before and during traversal.
+    public static void testFailFast() {
+        AVLTreeWithFastIterator<Integer> tree = new AVLTreeWithFastIterator<>();
+        for (int i = 0; i < 100; i++)
+            tree.insert(i);
+
+        Spliterator<Integer> spliterator = tree.spliterator();
+        tree.insert(100);
+        expectConcurrentModification(() -> spliterator.tryAdvance(e -> { }), "tryAdvance after insert");
+
+        Spliterator<Integer> whole = tree.spliterator();
+        Spliterator<Integer> prefix = whole.trySplit();
+        tree.delete(0);
+        expectConcurrentModification(() -> prefix.forEachRemaining(e -> { }), "forEachRemaining of a prefix after delete");
+        expectConcurrentModification(() -> whole.forEachRemaining(e -> { }), "forEachRemaining of a suffix after delete");
+
+        java.util.stream.Stream<Integer> stream = tree.stream();
+        tree.insert(-1);
+        expectConcurrentModification(() -> stream.collect(Collectors.toList()), "a stream created before insert");
+
+        Spliterator<Integer> started = tree.spliterator();
+        started.tryAdvance(e -> { });
+        tree.insert(-2);
+        expectConcurrentModification(() -> started.tryAdvance(e -> { }), "tryAdvance during traversal after insert");
+
+        // A spliterator of an empty range fails fast too
+        AVLTreeWithFastIterator<Integer> empty = new AVLTreeWithFastIterator<>();
+        Spliterator<Integer> none = empty.spliterator();
+        empty.insert(1);
+        expectConcurrentModification(() -> none.forEachRemaining(e -> { }), "forEachRemaining of an empty tree after insert");
+    }
+
+    static void expectConcurrentModification(Runnable action, String description) {
+        try {
+            action.run();
+            throw new RuntimeException(description + " did not throw ConcurrentModificationException");
+        }
+        catch (ConcurrentModificationException ex) {
+            // Caught ConcurrentModificationException:  Good!
+        }
+    }
+}
@@ -0,0 +1,130 @@
+// This program tests the visitor traversals of BST, which AVLTree and
+// AVLTreeWithFastIterator inherit:  inorder, preorder and postorder with a
+// Predicate, and forEachInRange over lo <= e < hi.
+// The traversals are compared with recursive ones over the same nodes, and
+// the ranges with java.util.TreeSet.subSet, with bounds on and between the
+// elements.  A visitor that returns false must stop the traversal right
+// after that element, and the traversal must then return false.
+// A degenerate BST, built from sorted inserts, checks that the traversals do
+// not recurse.  IntAVLTree.forEachInRange is tested by TestIntAVLTree.
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+public class TestTreeTraversals {
+    static final int KEY_RANGE = 1000; // Elements are even numbers from 0 .. 2 * KEY_RANGE - 2
+
+    public static void main(String[] args) {
+        Random rand = new Random(24);
+        System.out.println("Testing traversal orders and early stops");
+        for (Comparator<Integer> comparator : java.util.Arrays.<Comparator<Integer>>asList(null, Comparator.reverseOrder())) {
+            testTraversals(rand, new BST<>(comparator), comparator);
+            testTraversals(rand, new AVLTree<>(comparator), comparator);
+            testTraversals(rand, new AVLTreeWithFastIterator<>(comparator), comparator);
+        }
+        System.out.println("Testing a degenerate tree");
+        testDegenerateTree();
+        System.out.println("End of traversal tests");
+    }
+
+    public static void testTraversals(Random rand, BST<Integer> tree, Comparator<Integer> comparator) {
+        TreeSet<Integer> expected = new TreeSet<>(comparator);
+        for (int i = 0; i < 600; i++) {
+            int e = 2 * rand.nextInt(KEY_RANGE); // Even elements, so odd bounds fall between them
+            tree.insert(e);
+            expected.add(e);
+        }
+        String description = tree.getClass().getName() + " with comparator " + comparator;
+
+        List<Integer> inorder = new ArrayList<>(), preorder = new ArrayList<>(), postorder = new ArrayList<>();
+        walk(tree.getRoot(), inorder, preorder, postorder);
+        if (!inorder.equals(new ArrayList<>(expected)))
+            throw new RuntimeException("The recursive walk does not match the elements of " + description);
+        checkTraversal(tree::inorder, inorder, "inorder of " + description);
+        checkTraversal(tree::preorder, preorder, "preorder of " + description);
+        checkTraversal(tree::postorder, postorder, "postorder of " + description);
+
+        List<Integer> sorted = new ArrayList<>(expected);
+        for (int i = 0; i < 300; i++) {
+            // Bounds on elements, between them and beyond both ends
+            int a = rand.nextInt(2 * KEY_RANGE + 4) - 2, b = rand.nextInt(2 * KEY_RANGE + 4) - 2;
+            if (rand.nextInt(4) == 0)
+                b = a; // An empty range
+            if (expected.comparator() == null ? a > b : a < b) {
+                int swap = a;
+                a = b;
+                b = swap;
+            }
+            int lo = a, hi = b;
+            List<Integer> range = new ArrayList<>(expected.subSet(lo, true, hi, false));
+            checkTraversal(visitor -> tree.forEachInRange(lo, hi, visitor), range,
+                    "forEachInRange(" + lo + ", " + hi + ") of " + description);
+        }
+        // The range of two neighbouring elements holds only the first
+        List<Integer> first = List.of(sorted.get(10));
+        checkTraversal(visitor -> tree.forEachInRange(sorted.get(10), sorted.get(11), visitor), first,
+                "forEachInRange between neighbours of " + description);
+
+        try {
+            tree.forEachInRange(sorted.get(1), sorted.get(0), e -> true);
+            throw new RuntimeException("forEachInRange did not throw IllegalArgumentException on lo > hi");
+        }
+        catch (IllegalArgumentException ex) {
+            // Caught IllegalArgumentException:  Good!
+        }
+    }
+
+    // Sorted inserts make a BST a single chain, as deep as it is large.
+    public static void testDegenerateTree() {
+        int n = 30000;
+        BST<Integer> tree = new BST<>();
+        List<Integer> ascending = new ArrayList<>(), descending = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            tree.insert(i);
+            ascending.add(i);
+            descending.add(n - 1 - i);
+        }
+        checkTraversal(tree::inorder, ascending, "inorder of a chain");
+        checkTraversal(tree::preorder, ascending, "preorder of a chain"); // Each node's only child is on its right
+        checkTraversal(tree::postorder, descending, "postorder of a chain");
+        checkTraversal(visitor -> tree.forEachInRange(100, n - 100, visitor), ascending.subList(100, n - 100),
+                "forEachInRange of a chain");
+    }
+
+    interface Traversal {
+        boolean visit(Predicate<Integer> visitor);
+    }
+
+    // Run a traversal to the end, then stopping after each of a few positions.
+    static void checkTraversal(Traversal traversal, List<Integer> correct, String description) {
+        List<Integer> visited = new ArrayList<>();
+        if (!traversal.visit(visited::add) || !visited.equals(correct))
+            throw new RuntimeException(description + " visited " + visited + ".  Correct order is " + correct);
+        for (int stop : new int[] {0, 1, correct.size() / 2, correct.size() - 1}) {
+            if (stop < 0 || stop >= correct.size())
+                continue;
+            visited.clear();
+            boolean all = traversal.visit(e -> {
+                visited.add(e);
+                return visited.size() <= stop;
+            });
+            if (all || !visited.equals(correct.subList(0, stop + 1)))
+                throw new RuntimeException(description + " did not stop after " + (stop + 1) + " elements");
+        }
+    }
+
+    // The recursive traversals, for comparison.
+    static void walk(BST.TreeNode<Integer> node, List<Integer> inorder, List<Integer> preorder, List<Integer> postorder) {
+        if (node == null)
+            return;
+        preorder.add(node.element);
+        walk(node.left, inorder, preorder, postorder);
+        inorder.add(node.element);
+        walk(node.right, inorder, preorder, postorder);
+        postorder.add(node.element);
+    }
+}
@@ -55,37 +55,61 @@ public interface Tree<E> extends java.util.Collection<E> {
 
     @Override
     public default boolean containsAll(Collection<?> c) {
-        // Left as an exercise
-        return false;
+        for (Object e : c)
+            if (!contains(e))
+                return false;
+        return true;
     }
 
     @Override
     public default boolean addAll(Collection<? extends E> c) {
-        // Left as an exercise
-        return false;
+        boolean changed = false;
+        for (E e : c)
+            changed |= add(e);
+        return changed;
     }
 
     @Override
     public default boolean removeAll(Collection<?> c) {
-        // Left as an exercise
-        return false;
+        boolean changed = false;
+        for (Object e : c)
+            changed |= remove(e);
+        return changed;
     }
 
     @Override
     public default boolean retainAll(Collection<?> c) {
-        // Left as an exercise
-        return false;
+        // Collect first:  the tree must not change while it is being iterated
+        java.util.ArrayList<E> toDelete = new java.util.ArrayList<>();
+        for (E e : this)
+            if (!c.contains(e))
+                toDelete.add(e);
+        for (E e : toDelete)
+            delete(e);
+        return !toDelete.isEmpty();
     }
 
     @Override
     public default Object[] toArray() {
-        // Left as an exercise
-        return null;
+        Object[] array = new Object[size()];
+        int i = 0;
+        for (E e : this)
+            array[i++] = e;
+        return array;
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public default <T> T[] toArray(T[] array) {
-        // Left as an exercise
-        return null;
+        int size = size();
+        if (array.length < size)
+            array = (T[])java.lang.reflect.Array.newInstance(
+                    array.getClass().getComponentType(), size);
+        int i = 0;
+        for (E e : this)
+            array[i++] = (T)e;
+        if (array.length > size)
+            array[size] = null; // Mark the end, as the Collection contract asks
+        return array;
     }
 }
@@ -0,0 +1,18 @@
+/** A position between two elements of a sorted tree, which moves in either
+ * direction like a ListIterator and can also jump by key or by index.
+ * The index of the position is nextIndex():  0 before the first element,
+ * size after the last */
+public interface TreeCursor<E> extends java.util.ListIterator<E> {
+    /** Move before the first element that is not less than key.
+     * Return true if that element is key */
+    boolean seek(E key);
+
+    /** Move before the element at the specified index, or to the end if
+     * index is the size of the tree.  Not an overload of seek, which would
+     * take an int key in a tree of Integers */
+    void seekIndex(int index);
+
+    /** Move n elements forward, or back if n is negative, stopping at either end.
+     * Return the number of elements moved over, negative when moving back */
+    int skip(int n);
+}
@@ -0,0 +1,165 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/** Counters for the hot paths of BST, AVLTree and AVLTreeWithFastIterator:
+ * comparisons per search, insert and delete, rotations by type, search depths
+ * and the lengths of the rebalancing passes.  The counters are shared by all
+ * trees and are safe to update from many threads.
+ *
+ * Counting is off unless the JVM is started with -Davltree.metrics=true.
+ * The trees test the static final ENABLED before touching a counter, so when
+ * it is false the JIT treats the test as a constant and removes the counting
+ * code from the compiled hot paths. */
+public final class TreeMetrics implements TreeMetricsMXBean {
+    /** Whether the trees count anything, read once from the avltree.metrics property */
+    public static final boolean ENABLED = Boolean.getBoolean("avltree.metrics");
+    /** Number of histogram buckets.  Longer than any AVL path, but a plain
+     * BST can be deeper, so the last bucket counts everything beyond */
+    static final int BUCKETS = 64;
+
+    /** The four AVL rotations, named as in balanceLL, balanceLR, balanceRR and balanceRL */
+    public enum Rotation { LL, LR, RR, RL }
+
+    private static final LongAdder searches = new LongAdder();
+    private static final LongAdder searchCompares = new LongAdder();
+    private static final LongAdder inserts = new LongAdder();
+    private static final LongAdder insertCompares = new LongAdder();
+    private static final LongAdder deletes = new LongAdder();
+    private static final LongAdder deleteCompares = new LongAdder();
+    private static final LongAdder[] rotations = adders(Rotation.values().length);
+    private static final LongAdder[] searchDepths = adders(BUCKETS);
+    private static final LongAdder[] balancePathLengths = adders(BUCKETS);
+
+    private static final TreeMetrics INSTANCE = new TreeMetrics();
+
+    private TreeMetrics() {
+    }
+
+    private static LongAdder[] adders(int n) {
+        LongAdder[] a = new LongAdder[n];
+        for (int i = 0; i < n; i++)
+            a[i] = new LongAdder();
+        return a;
+    }
+
+    /** Return the counters, for polling by a metrics system */
+    public static TreeMetricsMXBean get() {
+        return INSTANCE;
+    }
+
+    /** Register the counters with the platform MBean server and return their name */
+    public static javax.management.ObjectName registerMBean() throws javax.management.JMException {
+        javax.management.ObjectName name = new javax.management.ObjectName("AVLTree:type=TreeMetrics");
+        java.lang.management.ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, name);
+        return name;
+    }
+
+    /** Record a search that made the specified number of comparisons */
+    static void recordSearch(int compares) {
+        searches.increment();
+        searchCompares.add(compares);
+        searchDepths[Math.min(compares, BUCKETS - 1)].increment();
+    }
+
+    /** Record an insert that made the specified number of comparisons */
+    static void recordInsert(int compares) {
+        inserts.increment();
+        insertCompares.add(compares);
+    }
+
+    /** Record a delete that made the specified number of comparisons */
+    static void recordDelete(int compares) {
+        deletes.increment();
+        deleteCompares.add(compares);
+    }
+
+    static void recordRotation(Rotation rotation) {
+        rotations[rotation.ordinal()].increment();
+    }
+
+    /** Record a rebalancing pass that visited the specified number of nodes */
+    static void recordBalancePath(int length) {
+        balancePathLengths[Math.min(length, BUCKETS - 1)].increment();
+    }
+
+    private static long[] sums(LongAdder[] adders) {
+        long[] a = new long[adders.length];
+        for (int i = 0; i < a.length; i++)
+            a[i] = adders[i].sum();
+        return a;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    @Override
+    public long getSearches() {
+        return searches.sum();
+    }
+
+    @Override
+    public long getSearchCompares() {
+        return searchCompares.sum();
+    }
+
+    @Override
+    public long getInserts() {
+        return inserts.sum();
+    }
+
+    @Override
+    public long getInsertCompares() {
+        return insertCompares.sum();
+    }
+
+    @Override
+    public long getDeletes() {
+        return deletes.sum();
+    }
+
+    @Override
+    public long getDeleteCompares() {
+        return deleteCompares.sum();
+    }
+
+    @Override
+    public long getRotationsLL() {
+        return rotations[Rotation.LL.ordinal()].sum();
+    }
+
+    @Override
+    public long getRotationsLR() {
+        return rotations[Rotation.LR.ordinal()].sum();
+    }
+
+    @Override
+    public long getRotationsRR() {
+        return rotations[Rotation.RR.ordinal()].sum();
+    }
+
+    @Override
+    public long getRotationsRL() {
+        return rotations[Rotation.RL.ordinal()].sum();
+    }
+
+    @Override
+    public long[] getSearchDepthHistogram() {
+        return sums(searchDepths);
+    }
+
+    @Override
+    public long[] getBalancePathLengthHistogram() {
+        return sums(balancePathLengths);
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder a : new LongAdder[] {searches, searchCompares, inserts, insertCompares,
+                                            deletes, deleteCompares})
+            a.reset();
+        for (LongAdder[] adders : new LongAdder[][] {rotations, searchDepths, balancePathLengths})
+            for (LongAdder a : adders)
+                a.reset();
+    }
+}
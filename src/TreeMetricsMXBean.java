@@ -0,0 +1,40 @@
+/** The counters kept by TreeMetrics, as exported through JMX.  Metrics
+ * systems other than JMX can poll the same interface from TreeMetrics.get() */
+public interface TreeMetricsMXBean {
+    /** Return true if the trees are counting, which is fixed at startup */
+    boolean isEnabled();
+
+    long getSearches();
+
+    /** Comparisons made by searches, one per node visited */
+    long getSearchCompares();
+
+    long getInserts();
+
+    /** Comparisons made by inserts while locating the parent of the new node */
+    long getInsertCompares();
+
+    long getDeletes();
+
+    /** Comparisons made by deletes while locating the node to delete */
+    long getDeleteCompares();
+
+    long getRotationsLL();
+
+    long getRotationsLR();
+
+    long getRotationsRR();
+
+    long getRotationsRL();
+
+    /** Element d is the number of searches that visited d nodes.
+     * The last element also counts all deeper searches */
+    long[] getSearchDepthHistogram();
+
+    /** Element k is the number of rebalancing passes that visited k nodes
+     * on their way back to the root.  The last element also counts longer passes */
+    long[] getBalancePathLengthHistogram();
+
+    /** Set every counter to zero */
+    void reset();
+}